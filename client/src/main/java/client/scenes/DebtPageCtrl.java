@@ -90,8 +90,8 @@ public class DebtPageCtrl extends TextPage
      */
     public void refresh() {
 
-        Set<Debt> debts = server
-                .simplifyDebts(event, UserConfig.get().getPreferredCurrency());
+        Set<Debt> debts = server.getSummary(event,
+                UserConfig.get().getPreferredCurrency()).settlement();
         openDebtsList.getPanes().clear();
         for (Debt debt : debts) {
             populateAccordion(event, debt);
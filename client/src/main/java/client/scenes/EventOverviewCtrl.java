@@ -271,17 +271,17 @@ public class EventOverviewCtrl extends TextPage implements Initializable {
     }
 
     /**
-     * Refreshes the page.
+     * Refreshes the page. The sum of the expenses and the shares and balances
+     * of the participants are requested at once.
      */
     public void refresh() {
         Platform.runLater(() -> {
-            refreshText();
+            EventSummary summary = event == null ? null : server.getSummary(
+                    event, UserConfig.get().getPreferredCurrency());
+            refreshText(summary);
             if (event != null) {
-                Currency currency = UserConfig.get().getPreferredCurrency();
-                setParticipantShares(
-                        server.getSharesOfParticipants(event, currency));
-                setParticipantBalances(
-                        server.getBalanceOfParticipants(event, currency));
+                setParticipantShares(summary.shares());
+                setParticipantBalances(summary.balances());
                 ObservableList<Participant> observableParticipants =
                         FXCollections.observableArrayList(
                                 event.getParticipants());
@@ -529,9 +529,19 @@ public class EventOverviewCtrl extends TextPage implements Initializable {
     /**
      * Refreshes the text of EventOverview
      */
-    @SuppressWarnings("checkstyle:MethodLength")
     @Override
     public void refreshText() {
+        refreshText(null);
+    }
+
+    /**
+     * Refreshes the text of EventOverview
+     *
+     * @param summary the summary of the event to show the sum of, if
+     *                {@code null} the sum is requested from the server
+     */
+    @SuppressWarnings("checkstyle:MethodLength")
+    private void refreshText(EventSummary summary) {
         languageMenu.setText(
                 Translator.getTranslation(Text.Menu.Languages));
         participantsLabel.setText(Translator
@@ -567,10 +577,11 @@ public class EventOverviewCtrl extends TextPage implements Initializable {
             refreshIcon(Translator.getCurrentLanguage().getLanguageCode(),
                 languageMenu, Language.languages);
 
+            Money sum = summary != null ? summary.sum()
+                    : server.getSumOfAllExpenses(event,
+                            UserConfig.get().getPreferredCurrency());
             HashMap<String, String> params = new HashMap<>();
-            params.put("sum", server.getSumOfAllExpenses(event,
-                UserConfig.get().getPreferredCurrency())
-                    .format(Translator.getLocale()));
+            params.put("sum", sum.format(Translator.getLocale()));
             sumOfExpenses.setText(Formatter.format(
                 Translator.getTranslation(
                         Text.EventOverview.sumOfExpenses),
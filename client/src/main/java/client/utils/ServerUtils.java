@@ -344,6 +344,30 @@ public class ServerUtils {
                 .get(new GenericType<>() {});
     }
 
+    /**
+     * Simplify debts of an event in a certain currency, optionally with the
+     * fewest payments possible. The server falls back to the default payment
+     * instructions if finding the fewest takes too long.
+     *
+     * @param   event
+     *          The event of which the debts need to be simplified.
+     * @param   currency
+     *          The currency of the resulting payment instructions.
+     * @param   optimal
+     *          Whether to search for the fewest payments.
+     *
+     * @return  The payment instructions.
+     */
+    public Set<Debt> simplifyDebts(Event event, Currency currency,
+                                   boolean optimal) {
+        return client.target(server)
+                .path("api/event/" + event.getId() + "/simplify/" + currency)
+                .queryParam("optimal", optimal)
+                .request(APPLICATION_JSON)
+                .accept(APPLICATION_JSON)
+                .get(new GenericType<>() {});
+    }
+
     /**
      * Gets the sum of all expenses of the event in a certain currency.
      *
@@ -402,6 +426,26 @@ public class ServerUtils {
                 .get(new GenericType<>() {});
     }
 
+    /**
+     * Gets the sum of all expenses, the shares and balances of the
+     * participants and the simplified debts of the specified event in the
+     * specified currency, in a single request.
+     *
+     * @param   event
+     *          The event.
+     * @param   currency
+     *          The currency of the summary.
+     *
+     * @return  The summary of the event.
+     */
+    public EventSummary getSummary(Event event, Currency currency) {
+        return client.target(server)
+                .path("api/event/" + event.getId() + "/summary/" + currency)
+                .request(APPLICATION_JSON)
+                .accept(APPLICATION_JSON)
+                .get(new GenericType<>() {});
+    }
+
     /**
      * Get the amount of a transaction in a certain currency.
      *
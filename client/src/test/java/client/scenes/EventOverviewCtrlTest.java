@@ -137,8 +137,8 @@ public class EventOverviewCtrlTest extends ApplicationTest {
         Set<ParticipantValuePair> map = new HashSet<>();
         map.add(new ParticipantValuePair(participant1, amount));
         map.add(new ParticipantValuePair(participant2, amount));
-        when(server.getBalanceOfParticipants(any(Event.class), any(Currency.class))).thenReturn(map);
-        when(server.getSharesOfParticipants(any(Event.class), any(Currency.class))).thenReturn(map);
+        when(server.getSummary(any(Event.class), any(Currency.class)))
+                .thenReturn(new EventSummary(amount, map, map, Set.of()));
         Transaction transaction = addExpenseCtrlMock.getExpense();
         server.saveEvent(event);
         sut.refresh();
@@ -0,0 +1,32 @@
+package commons;
+
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Everything the overview and the debt page of an event show, computed in a
+ * single currency from a single state of the event.
+ *
+ * @param   sum
+ *          The sum of all expenses of the event.
+ * @param   shares
+ *          The share of the expenses paid by each participant.
+ * @param   balances
+ *          The balance of each participant.
+ * @param   settlement
+ *          The debts that settle all balances.
+ */
+public record EventSummary(Money sum, Set<ParticipantValuePair> shares,
+                           Set<ParticipantValuePair> balances,
+                           Set<Debt> settlement) {
+
+    /**
+     * Creates an object storing the summary of an event.
+     */
+    public EventSummary {
+        Objects.requireNonNull(sum, "sum is null");
+        Objects.requireNonNull(shares, "shares is null");
+        Objects.requireNonNull(balances, "balances is null");
+        Objects.requireNonNull(settlement, "settlement is null");
+    }
+}
@@ -0,0 +1,210 @@
+package commons;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Currency;
+import java.util.Objects;
+
+/**
+ * Mutable running total of {@link Money} in a single currency. The total is
+ * kept as a {@code long} in minor units (cents) of the currency, so adding
+ * amounts in minor units doesn't allocate at all, and adding {@link Money}
+ * doesn't create a new total and rescale it like {@link
+ * Money#setAmount(BigDecimal)} does. Only if the total no longer fits in a
+ * {@code long} it switches to a {@link BigDecimal}, so the result is always
+ * exact.<br/>
+ * Not safe for use by multiple threads.
+ */
+public final class MoneyAccumulator {
+
+    private final Currency currency;
+
+    private final int fractionDigits;
+
+    /**
+     * The total in minor units, while {@link MoneyAccumulator#overflow} is
+     * {@code null}.
+     */
+    private long cents;
+
+    /**
+     * The total, once it doesn't fit in {@link MoneyAccumulator#cents}
+     * anymore.
+     */
+    private BigDecimal overflow;
+
+    /**
+     * Creates a new {@code MoneyAccumulator} with a total of zero.
+     *
+     * @param   currency
+     *          The currency of the amounts.
+     */
+    public MoneyAccumulator(Currency currency) {
+        this.currency = Objects.requireNonNull(currency, "currency is null");
+        this.fractionDigits = currency.getDefaultFractionDigits();
+    }
+
+    /**
+     * Gets the currency of the amounts.
+     *
+     * @return  The currency.
+     */
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    /**
+     * Adds an amount of money to the total.
+     *
+     * @param   amount
+     *          The amount, in the currency of this accumulator.
+     *
+     * @throws  IllegalArgumentException
+     *          If the amount is in another currency.
+     */
+    public void add(Money amount) {
+        BigDecimal value = valueOf(amount);
+        // the unscaled value of a scaled Money amount is its minor units, it
+        // is read as is instead of rescaling the amount to a new BigDecimal
+        BigInteger minorUnits = value.unscaledValue();
+        if (overflow == null && value.scale() == fractionDigits
+                && minorUnits.bitLength() < Long.SIZE) {
+            add(minorUnits.longValue());
+        } else {
+            addExact(value);
+        }
+    }
+
+    /**
+     * Subtracts an amount of money from the total.
+     *
+     * @param   amount
+     *          The amount, in the currency of this accumulator.
+     *
+     * @throws  IllegalArgumentException
+     *          If the amount is in another currency.
+     */
+    public void subtract(Money amount) {
+        BigDecimal value = valueOf(amount);
+        BigInteger minorUnits = value.unscaledValue();
+        if (overflow == null && value.scale() == fractionDigits
+                && minorUnits.bitLength() < Long.SIZE) {
+            subtract(minorUnits.longValue());
+        } else {
+            addExact(value.negate());
+        }
+    }
+
+    private BigDecimal valueOf(Money amount) {
+        Objects.requireNonNull(amount, "amount is null");
+        if (!currency.equals(amount.getCurrency()))
+            throw new IllegalArgumentException("currency of " + amount
+                    + " is not " + currency);
+        return amount.getAmount();
+    }
+
+    /**
+     * Adds an amount in minor units of the currency to the total.
+     *
+     * @param   minorUnits
+     *          The amount in minor units, may be negative.
+     */
+    public void add(long minorUnits) {
+        if (overflow == null) {
+            long sum = cents + minorUnits;
+            // overflow iff both operands have the opposite sign of the sum
+            if (((cents ^ sum) & (minorUnits ^ sum)) >= 0) {
+                cents = sum;
+                return;
+            }
+            overflow = BigDecimal.valueOf(cents, fractionDigits);
+        }
+        overflow = overflow.add(BigDecimal.valueOf(minorUnits,
+                fractionDigits));
+    }
+
+    /**
+     * Subtracts an amount in minor units of the currency from the total.
+     *
+     * @param   minorUnits
+     *          The amount in minor units, may be negative.
+     */
+    public void subtract(long minorUnits) {
+        if (minorUnits == Long.MIN_VALUE) {
+            add(Long.MAX_VALUE);
+            add(1);
+        } else {
+            add(-minorUnits);
+        }
+    }
+
+    /**
+     * Adds the total of another accumulator to the total, for example to
+     * merge totals that were summed in parallel.
+     *
+     * @param   other
+     *          The other accumulator, in the currency of this accumulator.
+     *
+     * @throws  IllegalArgumentException
+     *          If the other accumulator is in another currency.
+     */
+    public void merge(MoneyAccumulator other) {
+        Objects.requireNonNull(other, "other is null");
+        if (!currency.equals(other.currency))
+            throw new IllegalArgumentException("currency of " + other
+                    + " is not " + currency);
+
+        if (other.overflow == null)
+            add(other.cents);
+        else
+            addExact(other.overflow);
+    }
+
+    private void addExact(BigDecimal value) {
+        BigDecimal total = overflow != null ? overflow
+                : BigDecimal.valueOf(cents, fractionDigits);
+        total = total.add(value);
+
+        // go back to the fast path if possible
+        try {
+            cents = total.movePointRight(fractionDigits).longValueExact();
+            overflow = null;
+        } catch (ArithmeticException e) {
+            overflow = total;
+        }
+    }
+
+    /**
+     * Gets the sign of the total.
+     *
+     * @return  -1, 0 or 1 if the total is negative, zero or positive.
+     */
+    public int signum() {
+        return overflow != null ? overflow.signum() : Long.signum(cents);
+    }
+
+    /**
+     * Checks whether the total fell back to a {@link BigDecimal} because it
+     * doesn't fit in a {@code long} of minor units.
+     *
+     * @return  Whether the total overflowed.
+     */
+    public boolean isOverflowed() {
+        return overflow != null;
+    }
+
+    /**
+     * Gets the total.
+     *
+     * @return  A new {@link Money} object holding the total.
+     */
+    public Money toMoney() {
+        return new Money(overflow != null ? overflow
+                : BigDecimal.valueOf(cents, fractionDigits), currency);
+    }
+
+    @Override
+    public String toString() {
+        return "MoneyAccumulator { " + toMoney() + " }";
+    }
+}
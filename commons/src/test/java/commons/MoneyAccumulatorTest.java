@@ -0,0 +1,109 @@
+package commons;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyAccumulatorTest {
+
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Currency JPY = Currency.getInstance("JPY");
+
+    private MoneyAccumulator accumulator;
+
+    @BeforeEach
+    void setup() {
+        accumulator = new MoneyAccumulator(EUR);
+    }
+
+    @Test
+    void constructor() {
+        assertThrows(NullPointerException.class, () -> new MoneyAccumulator(null));
+        assertEquals(EUR, accumulator.getCurrency());
+        assertEquals(new Money(BigDecimal.ZERO, EUR), accumulator.toMoney());
+        assertEquals(0, accumulator.signum());
+    }
+
+    @Test
+    void add() {
+        accumulator.add(new Money(new BigDecimal("10.25"), EUR));
+        accumulator.add(new Money(new BigDecimal("0.75"), EUR));
+        accumulator.add(150);
+        assertEquals(new Money(new BigDecimal("12.50"), EUR), accumulator.toMoney());
+
+        accumulator.subtract(new Money(new BigDecimal("20"), EUR));
+        accumulator.subtract(-50);
+        assertEquals(new Money(new BigDecimal("-7.00"), EUR), accumulator.toMoney());
+        assertEquals(-1, accumulator.signum());
+        assertFalse(accumulator.isOverflowed());
+    }
+
+    @Test
+    void merge() {
+        accumulator.add(new Money(new BigDecimal("10.25"), EUR));
+        MoneyAccumulator other = new MoneyAccumulator(EUR);
+        other.subtract(300);
+        accumulator.merge(other);
+        assertEquals(new Money(new BigDecimal("7.25"), EUR), accumulator.toMoney());
+
+        other.add(Long.MAX_VALUE);
+        other.add(Long.MAX_VALUE);
+        accumulator.merge(other);
+        accumulator.subtract(Long.MAX_VALUE);
+        accumulator.subtract(Long.MAX_VALUE);
+        assertEquals(new Money(new BigDecimal("4.25"), EUR), accumulator.toMoney());
+
+        assertThrows(IllegalArgumentException.class, () -> accumulator.merge(new MoneyAccumulator(JPY)));
+        assertThrows(NullPointerException.class, () -> accumulator.merge(null));
+    }
+
+    @Test
+    void otherCurrency() {
+        assertThrows(IllegalArgumentException.class, () -> accumulator.add(new Money(BigDecimal.ONE, JPY)));
+        assertThrows(IllegalArgumentException.class, () -> accumulator.subtract(new Money(BigDecimal.ONE, JPY)));
+        assertThrows(NullPointerException.class, () -> accumulator.add(null));
+    }
+
+    @Test
+    void longLimits() {
+        Money max = new Money(BigDecimal.valueOf(Long.MAX_VALUE, 2), EUR);
+        Money min = new Money(BigDecimal.valueOf(Long.MIN_VALUE, 2), EUR);
+
+        accumulator.add(max);
+        assertFalse(accumulator.isOverflowed());
+        assertEquals(max, accumulator.toMoney());
+
+        accumulator.subtract(min);
+        assertTrue(accumulator.isOverflowed());
+        accumulator.add(min);
+        accumulator.add(min);
+        assertEquals(new Money(new BigDecimal("-0.01"), EUR), accumulator.toMoney());
+        assertFalse(accumulator.isOverflowed());
+    }
+
+    @Test
+    void overflow() {
+        accumulator.add(Long.MAX_VALUE);
+        accumulator.add(1);
+        assertTrue(accumulator.isOverflowed());
+        assertEquals(new Money(BigDecimal.valueOf(Long.MAX_VALUE, 2).add(new BigDecimal("0.01")), EUR),
+                accumulator.toMoney());
+
+        accumulator.add(new Money(new BigDecimal("100000000000000000000"), EUR));
+        accumulator.subtract(new Money(new BigDecimal("100000000000000000000"), EUR));
+        accumulator.subtract(Long.MIN_VALUE);
+        assertEquals(1, accumulator.signum());
+
+        // back in range
+        MoneyAccumulator other = new MoneyAccumulator(EUR);
+        other.add(new Money(new BigDecimal("100000000000000000000"), EUR));
+        assertTrue(other.isOverflowed());
+        other.subtract(new Money(new BigDecimal("99999999999999999999"), EUR));
+        assertFalse(other.isOverflowed());
+        assertEquals(new Money(BigDecimal.ONE, EUR), other.toMoney());
+    }
+}
@@ -0,0 +1,169 @@
+package server.financial;
+
+import commons.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time it takes to simplify the debts of an event against the
+ * amount of transactions in it. The transactions are spread over a few
+ * currencies and a month of days, like the expenses of a trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DebtSimplifierBenchmark {
+
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    private static final List<Currency> CURRENCIES = List.of(EUR,
+            Currency.getInstance("USD"), Currency.getInstance("GBP"),
+            Currency.getInstance("CHF"));
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    private static final int DAYS = 30;
+
+    /**
+     * The amount of transactions in the event.
+     */
+    @Param({"1000", "10000"})
+    private int transactions;
+
+    /**
+     * The amount of participants in the event.
+     */
+    @Param({"10"})
+    private int participants;
+
+    private DebtSimplifier debtSimplifier;
+    private Event event;
+
+    /**
+     * Creates an event with {@code transactions} random expenses and payoffs
+     * between {@code participants} participants, and a factory that knows the
+     * rates of all days.
+     */
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        debtSimplifier = new DebtSimplifier(createExchangeRateFactory(random));
+        event = createEvent(random);
+    }
+
+    /**
+     * Creates a factory with random rates from each currency to EUR on each
+     * day.
+     *
+     * @param   random
+     *          The source of the rates.
+     *
+     * @return  The factory.
+     */
+    private static ExchangeRateFactory createExchangeRateFactory(
+            Random random) {
+        ExchangeRateFactory factory = new ExchangeRateFactory(null, null);
+        List<ExchangeRate> exchangeRates = new ArrayList<>();
+        for (int day = 0; day < DAYS; day++) {
+            for (Currency from : CURRENCIES) {
+                exchangeRates.add(new ExchangeRate(START.plusDays(day), from,
+                        EUR, from.equals(EUR) ? 1d
+                        : 0.5 + random.nextDouble()));
+            }
+        }
+        factory.addExchangeRates(exchangeRates);
+        return factory;
+    }
+
+    /**
+     * Creates an event with {@code transactions} random transactions between
+     * {@code participants} participants, every tenth of which is a payoff.
+     *
+     * @param   random
+     *          The source of the transactions.
+     *
+     * @return  The event.
+     */
+    private Event createEvent(Random random) {
+        Event result = new Event("benchmark");
+        for (int i = 0; i < participants; i++)
+            result.addParticipant("participant " + i)
+                    .setParticipantId((long) i);
+        List<Participant> all = new ArrayList<>(result.getParticipants());
+
+        for (int i = 0; i < transactions; i++) {
+            Transaction transaction = createTransaction(result, all,
+                    i % 10 == 0, random);
+            transaction.setTransactionId((long) i);
+            result.addTransaction(transaction);
+        }
+        return result;
+    }
+
+    /**
+     * Creates a random transaction of an event.
+     *
+     * @param   event
+     *          The event of the transaction.
+     * @param   all
+     *          The participants of the event, shuffled by expenses.
+     * @param   payoff
+     *          Whether to create a payoff rather than an expense.
+     * @param   random
+     *          The source of the transaction.
+     *
+     * @return  The transaction, which isn't added to the event yet.
+     */
+    private static Transaction createTransaction(Event event,
+                                                 List<Participant> all,
+                                                 boolean payoff,
+                                                 Random random) {
+        Participant payer = all.get(random.nextInt(all.size()));
+        Money amount = new Money(BigDecimal.valueOf(
+                1 + random.nextInt(100_000), 2),
+                CURRENCIES.get(random.nextInt(CURRENCIES.size())));
+        LocalDate date = START.plusDays(random.nextInt(DAYS));
+
+        if (payoff) {
+            Participant receiver = all.get((all.indexOf(payer) + 1)
+                    % all.size());
+            return Transaction.createPayoff(payer, amount, receiver, event,
+                    date);
+        }
+        Collections.shuffle(all, random);
+        return Transaction.createDebt(payer, "expense", amount,
+                new ArrayList<>(all.subList(0, 1 + random.nextInt(all.size()))),
+                event, date, null);
+    }
+
+    /**
+     * Simplifies the debts of the event, adding the transactions one by one.
+     *
+     * @return  The simplified debts.
+     */
+    @Benchmark
+    public Set<Debt> simplify() {
+        DebtSimplifier.Session session = debtSimplifier.newSession(EUR,
+                event.getParticipants());
+        session.addDebts(event, false);
+        return session.simplify();
+    }
+
+    /**
+     * Simplifies the debts of the event, converting and summing the
+     * transactions in parallel.
+     *
+     * @return  The simplified debts.
+     */
+    @Benchmark
+    public Set<Debt> simplifyInParallel() {
+        DebtSimplifier.Session session = debtSimplifier.newSession(EUR,
+                event.getParticipants());
+        session.addDebts(event, true);
+        return session.simplify();
+    }
+}
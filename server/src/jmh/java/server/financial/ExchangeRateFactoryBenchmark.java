@@ -0,0 +1,98 @@
+package server.financial;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of looking up an {@link ExchangeRate} in an {@link
+ * ExchangeRateFactory} against the size of the rate history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExchangeRateFactoryBenchmark {
+
+    private static final List<Currency> CURRENCIES = List.of(
+            Currency.getInstance("EUR"), Currency.getInstance("USD"),
+            Currency.getInstance("GBP"), Currency.getInstance("JPY"),
+            Currency.getInstance("CHF"), Currency.getInstance("AUD"),
+            Currency.getInstance("CAD"), Currency.getInstance("SEK"),
+            Currency.getInstance("NOK"), Currency.getInstance("PLN"));
+
+    private static final LocalDate START = LocalDate.of(2000, 1, 1);
+
+    /**
+     * The amount of days in the rate history.
+     */
+    @Param({"10", "100", "1000"})
+    private int days;
+
+    private ExchangeRateFactory factory;
+    private LocalDate middle;
+    private LocalDate missing;
+    private Currency from;
+    private Currency to;
+
+    /**
+     * Fills the factory with {@code days} days of rates between all {@link
+     * ExchangeRateFactoryBenchmark#CURRENCIES}, skipping every other day such
+     * that closest-date lookups have something to look for.
+     */
+    @Setup
+    public void setup() {
+        factory = new ExchangeRateFactory(null, null);
+        Random random = new Random(42);
+        List<ExchangeRate> exchangeRates = new ArrayList<>();
+
+        for (int day = 0; day < days * 2; day += 2) {
+            Map<Currency, Double> rates = new HashMap<>();
+            for (Currency currency : CURRENCIES)
+                rates.put(currency, 0.5 + random.nextDouble());
+
+            for (Currency f : CURRENCIES)
+                for (Currency t : CURRENCIES)
+                    exchangeRates.add(new ExchangeRate(
+                            START.plusDays(day), f, t,
+                            f.equals(t) ? 1d : rates.get(t) / rates.get(f)));
+        }
+        factory.addExchangeRates(exchangeRates);
+
+        middle = START.plusDays(days);
+        missing = middle.plusDays(1);
+        from = CURRENCIES.get(1);
+        to = CURRENCIES.get(3);
+    }
+
+    /**
+     * Looks up a rate on a date that is present.
+     *
+     * @return  The rate.
+     */
+    @Benchmark
+    public ExchangeRate exact() {
+        return factory.getExchangeRate(middle, from, to);
+    }
+
+    /**
+     * Looks up the closest rate for a date that is not present.
+     *
+     * @return  The rate.
+     */
+    @Benchmark
+    public ExchangeRate closest() {
+        return factory.getClosest(missing, from, to);
+    }
+
+    /**
+     * Looks up the most recent rate of a pair.
+     *
+     * @return  The rate.
+     */
+    @Benchmark
+    public ExchangeRate mostRecent() {
+        return factory.getMostRecent(from, to);
+    }
+}
@@ -0,0 +1,111 @@
+package server.financial;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of a single fetch from a {@link
+ * FrankfurterExchangeRateAPI} against a local stub server, compared to the
+ * previous approach of opening a new connection for every request, reading
+ * the whole body into a string and parsing it with a new mapper. Run with the
+ * {@code gc} profiler to compare the allocation per fetch as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrankfurterExchangeRateAPIBenchmark {
+
+    private static final LocalDate DATE = LocalDate.of(2024, 1, 5);
+
+    private HttpServer server;
+    private String url;
+    private FrankfurterExchangeRateAPI api;
+
+    /**
+     * Starts a stub server that answers every request with the rates of about
+     * thirty currencies, like the real api does.
+     *
+     * @throws  IOException
+     *          If the server can't be started.
+     */
+    @Setup
+    public void setup() throws IOException {
+        StringBuilder json = new StringBuilder("{\"amount\":1.0,"
+                + "\"base\":\"EUR\",\"date\":\"" + DATE + "\",\"rates\":{");
+        Random random = new Random(42);
+        String separator = "";
+        for (Currency currency : Currency.getAvailableCurrencies()) {
+            if (json.length() > 800)
+                break;
+            json.append(separator).append('"')
+                    .append(currency.getCurrencyCode()).append("\":")
+                    .append(0.5 + random.nextDouble());
+            separator = ",";
+        }
+        byte[] body = json.append("}}").toString()
+                .getBytes(StandardCharsets.UTF_8);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type",
+                    "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        url = "http://localhost:" + server.getAddress().getPort() + "/";
+        api = new FrankfurterExchangeRateAPI(null, url);
+    }
+
+    /**
+     * Stops the stub server.
+     */
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Fetches the rates of a day with the shared client.
+     *
+     * @return  The rates.
+     */
+    @Benchmark
+    public Optional<Map<Currency, Double>> sharedClient() {
+        return api.getExchangeRates(DATE);
+    }
+
+    /**
+     * Fetches the rates of a day the way it was done before the client was
+     * shared.
+     *
+     * @return  The rates.
+     *
+     * @throws  IOException
+     *          If the request fails.
+     */
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> newConnection() throws IOException {
+        URLConnection con = URI.create(url + DATE + "?from=EUR").toURL()
+                .openConnection();
+        con.setConnectTimeout(5_000);
+        con.setReadTimeout(5_000);
+        String body = new String(con.getInputStream().readAllBytes());
+        return new ObjectMapper().readValue(body, Map.class);
+    }
+}
@@ -0,0 +1,90 @@
+package server.financial;
+
+import commons.Money;
+import commons.MoneyAccumulator;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares summing amounts of {@link Money} with a {@link MoneyAccumulator}
+ * against summing them with {@link BigDecimal BigDecimals} through {@link
+ * Money#setAmount(BigDecimal)}, as the sums and balances of an event used to
+ * be computed. Run with the {@code gc} profiler to compare the allocation as
+ * well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MoneyAccumulatorBenchmark {
+
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    /**
+     * The amount of amounts to sum.
+     */
+    @Param({"1000", "10000"})
+    private int amounts;
+
+    private Money[] money;
+    private long[] cents;
+
+    /**
+     * Creates random amounts between 0.01 and 1000.00 EUR.
+     */
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        money = new Money[amounts];
+        cents = new long[amounts];
+        for (int i = 0; i < amounts; i++) {
+            cents[i] = 1 + random.nextInt(100_000);
+            money[i] = new Money(BigDecimal.valueOf(cents[i], 2), EUR);
+        }
+    }
+
+    /**
+     * Sums the amounts like {@code shareOfExpenses} used to.
+     *
+     * @return  The sum.
+     */
+    @Benchmark
+    public Money money() {
+        Money sum = new Money(BigDecimal.ZERO.setScale(2, RoundingMode.HALF_UP),
+                EUR);
+        for (Money amount : money)
+            sum.setAmount(sum.getAmount().add(amount.getAmount()));
+        return sum;
+    }
+
+    /**
+     * Sums the amounts with an accumulator.
+     *
+     * @return  The sum.
+     */
+    @Benchmark
+    public Money accumulator() {
+        MoneyAccumulator sum = new MoneyAccumulator(EUR);
+        for (Money amount : money)
+            sum.add(amount);
+        return sum.toMoney();
+    }
+
+    /**
+     * Sums amounts that are already in cents with an accumulator, like the
+     * shares in the balances of the debt simplifier.
+     *
+     * @return  The sum.
+     */
+    @Benchmark
+    public Money accumulatorCents() {
+        MoneyAccumulator sum = new MoneyAccumulator(EUR);
+        for (long amount : cents)
+            sum.add(amount);
+        return sum.toMoney();
+    }
+}
@@ -0,0 +1,85 @@
+package server.financial;
+
+import commons.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time it takes to find the settlement with the fewest
+ * transfers against the amount of participants with a balance, compared to
+ * the greedy settlement. The search takes exponential time, so the budget is
+ * set high enough that it never falls back to the greedy settlement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SettlementBenchmark {
+
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    private static final LocalDate DAY = LocalDate.of(2024, 1, 1);
+
+    private static final Duration BUDGET = Duration.ofMinutes(1);
+
+    /**
+     * The amount of participants in the event.
+     */
+    @Param({"8", "12", "16", "20"})
+    private int participants;
+
+    private DebtSimplifier.Session session;
+
+    /**
+     * Creates a session with three random debts per participant, so nearly
+     * every participant ends up with a balance.
+     */
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+
+        ExchangeRateFactory factory = new ExchangeRateFactory(null, null);
+        factory.addExchangeRate(new ExchangeRate(DAY, EUR, EUR, 1d));
+        DebtSimplifier debtSimplifier = new DebtSimplifier(factory);
+
+        Event event = new Event("benchmark");
+        for (int i = 0; i < participants; i++)
+            event.addParticipant("participant " + i)
+                    .setParticipantId((long) i);
+        List<Participant> all = event.getParticipants();
+
+        session = debtSimplifier.newSession(EUR, all);
+        for (int i = 0; i < 3 * participants; i++) {
+            Participant from = all.get(random.nextInt(all.size()));
+            Participant to = all.get(random.nextInt(all.size()));
+            if (from.equals(to))
+                continue;
+            session.addDebt(new Debt(from, to, new Money(BigDecimal.valueOf(
+                    1 + random.nextInt(10_000), 2), EUR)), DAY);
+        }
+    }
+
+    /**
+     * Settles the balances greedily.
+     *
+     * @return  The simplified debts.
+     */
+    @Benchmark
+    public Set<Debt> greedy() {
+        return session.simplify();
+    }
+
+    /**
+     * Settles the balances with the fewest transfers.
+     *
+     * @return  The simplified debts.
+     */
+    @Benchmark
+    public Set<Debt> optimal() {
+        return session.simplify(BUDGET);
+    }
+}
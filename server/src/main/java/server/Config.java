@@ -15,20 +15,58 @@
  */
 package server;
 
+import java.io.File;
+import java.io.IOException;
+import java.time.Period;
 import java.util.Random;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import server.database.EventRepository;
+import server.database.ExchangeRateRepository;
+import server.database.ParticipantRepository;
+import server.database.TransactionRepository;
+import server.financial.BalanceLedger;
+import server.financial.DailyFileExchangeRateStore;
+import server.financial.DatabaseExchangeRateStore;
 import server.financial.DebtSimplifier;
+import server.financial.ExchangeRateAPI;
 import server.financial.ExchangeRateFactory;
+import server.financial.ExchangeRateStore;
 import server.financial.FrankfurterExchangeRateAPI;
+import server.financial.MappedExchangeRateArchive;
+import server.financial.ResilientExchangeRateAPI;
 
 
 @Configuration
+@EnableScheduling
 public class Config {
 
+    private final ExchangeRateRepository exchangeRateRepository;
+    private final Period maxStaleness;
+
+    /**
+     * Creates the configuration of the server.
+     *
+     * @param   exchangeRateRepository
+     *          The repository in which the exchange rates are saved.
+     * @param   maxStaleness
+     *          The {@code rates.max-staleness} property, the maximum distance
+     *          between the date of a conversion and the date of the rate it
+     *          uses as an ISO-8601 period such as {@code P14D}, empty if there
+     *          is none.
+     */
+    public Config(ExchangeRateRepository exchangeRateRepository,
+                  @Value("${rates.max-staleness:}") String maxStaleness) {
+        this.exchangeRateRepository = exchangeRateRepository;
+        this.maxStaleness = maxStaleness.isBlank() ? null
+                : Period.parse(maxStaleness.trim());
+    }
+
     /**
      * @return no description was provided in the template.
      */
@@ -38,26 +76,103 @@ public class Config {
     }
 
     /**
-     * Gets the global {@link ExchangeRateFactory} instance.
+     * Gets the global {@link ExchangeRateAPI} instance, which is guarded
+     * against outages of the upstream api.
+     *
+     * @return  The global {@code ExchangeRateAPI} instance.
+     */
+    @Bean
+    public ExchangeRateAPI getExchangeRateAPI() {
+        return new ResilientExchangeRateAPI(new FrankfurterExchangeRateAPI());
+    }
+
+    /**
+     * Gets the global {@link ExchangeRateStore} in which the exchange rates
+     * are saved, which is the exchange rate table of the database. If it is
+     * still empty, the rates saved by older versions in {@link
+     * ExchangeRateFactory#DEFAULT_DIR} are imported into it.
+     *
+     * @return  The global {@code ExchangeRateStore} instance.
+     *
+     * @throws  IOException
+     *          If the old rates couldn't be imported.
+     */
+    @Bean
+    public ExchangeRateStore getExchangeRateStore() throws IOException {
+        DatabaseExchangeRateStore store =
+                new DatabaseExchangeRateStore(exchangeRateRepository);
+        if (!store.isEmpty())
+            return store;
+
+        File archive = new File(ExchangeRateFactory.DEFAULT_DIR, "rates.bin");
+        if (archive.isFile()) {
+            try (MappedExchangeRateArchive old = new MappedExchangeRateArchive(
+                    archive, getExchangeRateAPI().getBase())) {
+                store.importFrom(old);
+            }
+        } else {
+            store.importFrom(new DailyFileExchangeRateStore(
+                    ExchangeRateFactory.DEFAULT_DIR));
+        }
+        return store;
+    }
+
+    /**
+     * Gets the global {@link ExchangeRateFactory} instance, which uses the
+     * maximum staleness set by the {@code rates.max-staleness} property.
      *
      * @return  The global {@code ExchangeRateFactory} instance.
+     *
+     * @throws  IOException
+     *          If the old rates couldn't be imported.
      */
     @Bean
-    public ExchangeRateFactory getExchangeRateFactory() {
-        return new ExchangeRateFactory(ExchangeRateFactory.DEFAULT_DIR,
-                new FrankfurterExchangeRateAPI());
+    public ExchangeRateFactory getExchangeRateFactory() throws IOException {
+        ExchangeRateFactory factory = new ExchangeRateFactory(
+                getExchangeRateStore(), getExchangeRateAPI(), true);
+        factory.setMaxStaleness(maxStaleness);
+        return factory;
     }
 
     /**
      * Gets the global {@link DebtSimplifier} instance.
      *
      * @return  The global {@code DebtSimplifier} instance.
+     *
+     * @throws  IOException
+     *          If the old rates couldn't be imported.
      */
     @Bean
-    public DebtSimplifier getDebtSimplifier() {
+    public DebtSimplifier getDebtSimplifier() throws IOException {
         return new DebtSimplifier(getExchangeRateFactory());
     }
 
+    /**
+     * Gets the global {@link BalanceLedger} instance.
+     *
+     * @param   eventRepository
+     *          The repository of the events the ledger keeps the balances of.
+     * @param   transactionRepository
+     *          The repository the transactions of the events are streamed
+     *          from.
+     * @param   participantRepository
+     *          The repository of the participants of the events.
+     *
+     * @return  The global {@code BalanceLedger} instance.
+     *
+     * @throws  IOException
+     *          If the old rates couldn't be imported.
+     */
+    @Bean
+    public BalanceLedger getBalanceLedger(
+            EventRepository eventRepository,
+            TransactionRepository transactionRepository,
+            ParticipantRepository participantRepository) throws IOException {
+        return new BalanceLedger(getDebtSimplifier(), eventRepository,
+                transactionRepository, participantRepository,
+                BalanceLedger.DEFAULT_MAX_EVENTS);
+    }
+
     /**
      * Automatically converts entity classes to JSON format
      * @return the object mapper
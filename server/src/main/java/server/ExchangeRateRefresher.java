@@ -0,0 +1,70 @@
+package server;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import server.financial.ExchangeRateFactory;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the saved exchange rates in the background once the server is ready,
+ * refreshes the exchange rates, and with them the known currencies, once a
+ * day and backfills the days of the past year that are missing, such that
+ * requests rarely have to wait for the exchange rate api.
+ */
+@Component
+public class ExchangeRateRefresher {
+
+    /**
+     * The amount of days before today that are backfilled.
+     */
+    static final int BACKFILL_DAYS = 365;
+
+    private final ExchangeRateFactory exchangeRateFactory;
+
+    /**
+     * Creates a new {@code ExchangeRateRefresher}.
+     *
+     * @param   exchangeRateFactory
+     *          The factory to refresh.
+     */
+    public ExchangeRateRefresher(ExchangeRateFactory exchangeRateFactory) {
+        this.exchangeRateFactory = exchangeRateFactory;
+    }
+
+    /**
+     * Starts loading the saved exchange rates in the background once the
+     * server is ready. Days that are needed before the background load
+     * reaches them are loaded on demand.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        exchangeRateFactory.loadInBackground();
+    }
+
+    /**
+     * Refreshes today's exchange rates. The ECB publishes its reference rates
+     * around 16:00 CET, this runs half an hour later to give the api some
+     * time to pick them up.
+     */
+    @Scheduled(cron = "0 30 16 * * *", zone = "Europe/Berlin")
+    public void refresh() {
+        exchangeRateFactory.refresh();
+    }
+
+    /**
+     * Fetches the rates of the days in the past {@link
+     * ExchangeRateRefresher#BACKFILL_DAYS} days that are missing, in as few
+     * requests as possible. Runs shortly after startup and then once a day.
+     */
+    @Scheduled(initialDelay = 1, fixedDelay = 24 * 60,
+            timeUnit = TimeUnit.MINUTES)
+    public void backfill() {
+        LocalDate today = LocalDate.now();
+        exchangeRateFactory.retrieveExchangeRates(
+                today.minusDays(BACKFILL_DAYS), today);
+    }
+}
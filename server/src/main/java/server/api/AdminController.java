@@ -6,6 +6,7 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 import server.database.EventRepository;
+import server.financial.BalanceLedger;
 
 import java.util.List;
 import java.util.Random;
@@ -15,17 +16,21 @@ import java.util.Random;
 public class AdminController {
     private static final String password = generatePassword();
     private EventRepository eventRepo;
+    private BalanceLedger balanceLedger;
     private SimpMessagingTemplate messagingTemplate;
 
 
     /**
      * Constructor
      * @param eventRepo the event repository
+     * @param balanceLedger the ledger keeping the balances of the events
      * @param messagingTemplate the messaging template
      */
     public AdminController(EventRepository eventRepo,
+                           BalanceLedger balanceLedger,
                            SimpMessagingTemplate messagingTemplate) {
         this.eventRepo = eventRepo;
+        this.balanceLedger = balanceLedger;
         this.messagingTemplate = messagingTemplate;
     }
 
@@ -55,6 +60,16 @@ public class AdminController {
         return ResponseEntity.ok(events);
     }
     public static String getPassword() { return password;}
+
+    /**
+     * Get the hits, misses and evictions of the cache of balances
+     * @return The statistics of the cache
+     */
+    @GetMapping(path = { "/ledger" })
+    @ResponseBody
+    public ResponseEntity<BalanceLedger.Statistics> ledgerStatistics() {
+        return ResponseEntity.ok(balanceLedger.getStatistics());
+    }
     /**
      * Delete an event
      * @param eventId The event to delete
@@ -68,6 +83,7 @@ public class AdminController {
             return ResponseEntity.notFound().build();
         }
         eventRepo.delete(event);
+        balanceLedger.eventChanged(eventId);
         messagingTemplate.convertAndSend("/topic/admin/delete", event);
         return ResponseEntity.ok(event);
     }
@@ -1,14 +1,19 @@
 package server.api;
 
 import commons.*;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.*;
 import server.database.EventRepository;
 
+import server.financial.BalanceLedger;
 import server.financial.ExchangeRateFactory;
 import server.financial.DebtSimplifier;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.*;
 
@@ -19,8 +24,12 @@ public class EventController {
 
     private final EventRepository eventRepository;
     private final DebtSimplifier debtSimplifier;
+    private final BalanceLedger balanceLedger;
     private final SimpMessagingTemplate messagingTemplate;
 
+    private static final CacheControl CURRENCIES_CACHE_CONTROL =
+            CacheControl.maxAge(Duration.ofHours(1)).cachePublic();
+
 
     /**
      * Constructor for the EventController.
@@ -29,23 +38,19 @@ public class EventController {
      *          The event repository.
      * @param   debtSimplifier
      *          The debt simplifier.
+     * @param   balanceLedger
+     *          The ledger keeping the balances of the events.
      * @param   messagingTemplate
      *          The messaging template
      */
     public EventController(EventRepository eventRepository,
                            DebtSimplifier debtSimplifier,
+                           BalanceLedger balanceLedger,
                            SimpMessagingTemplate messagingTemplate) {
         this.eventRepository = eventRepository;
         this.debtSimplifier = debtSimplifier;
+        this.balanceLedger = balanceLedger;
         this.messagingTemplate = messagingTemplate;
-
-        if (debtSimplifier != null) {
-            try {
-                this.debtSimplifier.getExchangeRateFactory().loadAll();
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to load exchange rates", e);
-            }
-        }
     }
 
 
@@ -95,6 +100,7 @@ public class EventController {
         }
 
         Event dbEvent = eventRepository.save(event);
+        balanceLedger.eventChanged(dbEvent.getId());
         messagingTemplate.convertAndSend("/topic/admin", dbEvent);
         return ResponseEntity.ok(dbEvent);
     }
@@ -165,7 +171,7 @@ public class EventController {
         }
 
         return ResponseEntity.ok(
-                exchangeRateFactory.getExchangeRate(
+                exchangeRateFactory.getExchangeRateOrClosest(
                         date,
                         money.getCurrency(),
                         currency
@@ -180,33 +186,33 @@ public class EventController {
      *          The id of the event.
      * @param   currency
      *          The currency of the result.
+     * @param   optimal
+     *          Whether to search for the settlement with the fewest
+     *          transfers, which falls back to the default one if it takes too
+     *          long.
+     * @param   ifNoneMatch
+     *          The ETag of the result the client has cached, if any.
      *
-     * @return  The simplified version of the debts of the event.
+     * @return  The simplified version of the debts of the event, or 304 Not
+     *          Modified if the client's result is still up to date.
      */
     @GetMapping("/{id}/simplify/{currency}")
     @ResponseBody
     public ResponseEntity<Set<Debt>> getSimplification(
             @PathVariable("id") Long id,
-            @PathVariable("currency") Currency currency) {
+            @PathVariable("currency") Currency currency,
+            @RequestParam(value = "optimal", defaultValue = "false")
+            boolean optimal,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+            String ifNoneMatch) {
 
         if (currency == null || !debtSimplifier.getExchangeRateFactory()
                 .getKnownCurrencies().contains(currency)) {
             return ResponseEntity.badRequest().build();
         }
 
-        Event event = eventRepository.findById(id).orElse(null);
-
-        if (event == null) {
-            return ResponseEntity.notFound().build();
-        }
-
-        debtSimplifier.setup(currency, event.getParticipants());
-
-        debtSimplifier.addDebts(event);
-
-        Set<Debt> result = debtSimplifier.simplify();
-
-        return ResponseEntity.ok(result);
+        return cached(balanceLedger.simplify(id, currency, optimal),
+                ifNoneMatch);
     }
 
     /**
@@ -216,28 +222,26 @@ public class EventController {
      *          The id of the event.
      * @param   currency
      *          The currency of the result.
+     * @param   ifNoneMatch
+     *          The ETag of the result the client has cached, if any.
      *
-     * @return  The sum of the debts of an event.
+     * @return  The sum of the debts of an event, or 304 Not
+     *          Modified if the client's result is still up to date.
      */
     @GetMapping("/{id}/sum/{currency}")
     @ResponseBody
     public ResponseEntity<Money> getSumOfExpenses(
             @PathVariable("id") Long id,
-            @PathVariable("currency") Currency currency) {
+            @PathVariable("currency") Currency currency,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+            String ifNoneMatch) {
 
         if (currency == null || !debtSimplifier.getExchangeRateFactory()
                 .getKnownCurrencies().contains(currency)) {
             return ResponseEntity.badRequest().build();
         }
 
-        Optional<Event> event = eventRepository.findById(id);
-
-        if (event.isEmpty()) {
-            return ResponseEntity.notFound().build();
-        }
-
-        return ResponseEntity.ok(
-                debtSimplifier.sumOfExpenses(event.get(), currency));
+        return cached(balanceLedger.sumOfExpenses(id, currency), ifNoneMatch);
     }
 
     /**
@@ -247,32 +251,26 @@ public class EventController {
      *          The id of the event.
      * @param   currency
      *          The currency of the result.
+     * @param   ifNoneMatch
+     *          The ETag of the result the client has cached, if any.
      *
-     * @return  The balances of the participants of the event.
+     * @return  The balances of the participants of the event, or 304 Not
+     *          Modified if the client's result is still up to date.
      */
     @GetMapping("/{id}/balance/{currency}")
     @ResponseBody
     public ResponseEntity<Set<ParticipantValuePair>> getBalanceOfParticipants(
             @PathVariable("id") Long id,
-            @PathVariable("currency") Currency currency) {
+            @PathVariable("currency") Currency currency,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+            String ifNoneMatch) {
 
         if (currency == null || !debtSimplifier.getExchangeRateFactory()
                 .getKnownCurrencies().contains(currency)) {
             return ResponseEntity.badRequest().build();
         }
 
-        Optional<Event> event = eventRepository.findById(id);
-
-        if (event.isEmpty()) {
-            return ResponseEntity.notFound().build();
-        }
-
-        debtSimplifier.setup(currency, event.get().getParticipants());
-
-        debtSimplifier.addDebts(event.get());
-
-        return ResponseEntity.ok(
-                debtSimplifier.toBalances());
+        return cached(balanceLedger.toBalances(id, currency), ifNoneMatch);
     }
 
     /**
@@ -282,42 +280,163 @@ public class EventController {
      *          The id of the event.
      * @param   currency
      *          The currency of the result.
+     * @param   ifNoneMatch
+     *          The ETag of the result the client has cached, if any.
      *
-     * @return  The shares of the participants of the event.
+     * @return  The shares of the participants of the event, or 304 Not
+     *          Modified if the client's result is still up to date.
      */
     @GetMapping("/{id}/share/{currency}")
     @ResponseBody
     public ResponseEntity<Set<ParticipantValuePair>> getShareOfParticipants(
             @PathVariable("id") Long id,
-            @PathVariable("currency") Currency currency) {
+            @PathVariable("currency") Currency currency,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+            String ifNoneMatch) {
 
         if (currency == null || !debtSimplifier.getExchangeRateFactory()
                 .getKnownCurrencies().contains(currency)) {
             return ResponseEntity.badRequest().build();
         }
 
-        Optional<Event> event = eventRepository.findById(id);
+        return cached(balanceLedger.shareOfExpenses(id, currency), ifNoneMatch);
+    }
 
-        if (event.isEmpty()) {
+    /**
+     * Get the sum, shares, balances and settlement of an event in one
+     * request. The event is loaded and its transactions are converted only
+     * once for all four results.
+     *
+     * @param   id
+     *          The id of the event.
+     * @param   currency
+     *          The currency of the result.
+     * @param   ifNoneMatch
+     *          The ETag of the result the client has cached, if any.
+     *
+     * @return  The summary of the event, or 304 Not Modified if the client's
+     *          result is still up to date.
+     */
+    @GetMapping("/{id}/summary/{currency}")
+    @ResponseBody
+    public ResponseEntity<EventSummary> getSummary(
+            @PathVariable("id") Long id,
+            @PathVariable("currency") Currency currency,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+            String ifNoneMatch) {
+
+        if (currency == null || !debtSimplifier.getExchangeRateFactory()
+                .getKnownCurrencies().contains(currency)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return cached(balanceLedger.summary(id, currency), ifNoneMatch);
+    }
+
+
+    /**
+     * Builds the response of a result of the {@link BalanceLedger}. The
+     * result changes with every change of the event, so clients have to
+     * revalidate it every time, which costs nothing if it is cached.
+     *
+     * @param   result
+     *          The result, empty if the event doesn't exist.
+     * @param   ifNoneMatch
+     *          The ETag of the result the client has cached, if any.
+     *
+     * @return  The result with its ETag, 304 Not Modified if the client's
+     *          result is still up to date or 404 Not Found if the event
+     *          doesn't exist.
+     *
+     * @param   <T>
+     *          The type of the result.
+     */
+    private static <T> ResponseEntity<T> cached(
+            Optional<BalanceLedger.Cached<T>> result, String ifNoneMatch) {
+        if (result.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
 
-        return ResponseEntity.ok(
-                debtSimplifier.shareOfExpenses(event.get(), currency));
+        String eTag = result.get().eTag();
+        if (matches(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag)
+                    .cacheControl(CacheControl.noCache()).build();
+        }
+
+        return ResponseEntity.ok().eTag(eTag)
+                .cacheControl(CacheControl.noCache())
+                .body(result.get().value());
     }
 
+    /**
+     * Checks whether an If-None-Match header matches an ETag.
+     *
+     * @param   ifNoneMatch
+     *          The header, a list of ETags or {@code *}, may be {@code null}.
+     * @param   eTag
+     *          The quoted ETag.
+     *
+     * @return  Whether the header matches.
+     */
+    private static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null)
+            return false;
+
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            // weak comparison, as for any GET request
+            if (candidate.startsWith("W/"))
+                candidate = candidate.substring(2);
+            if (candidate.equals("*") || candidate.equals(eTag))
+                return true;
+        }
+        return false;
+    }
 
     /**
-     * Returns all available currencies.
+     * Returns all available currencies. The set only changes when the exchange
+     * rates are refreshed, so clients may cache it for an hour and revalidate
+     * it with its ETag afterward.
      *
-     * @return  All available currencies.
+     * @param   ifNoneMatch
+     *          The ETag of the set the client has cached, if any.
+     *
+     * @return  All available currencies, or 304 Not Modified if the client's
+     *          set is still up to date.
      */
     @GetMapping("/currencies")
     @ResponseBody
-    public ResponseEntity<Set<Currency>> getCurrencies() {
-        debtSimplifier.getExchangeRateFactory().retrieveExchangeRates();
-        return ResponseEntity.ok(debtSimplifier.getExchangeRateFactory()
-                .getKnownCurrencies());
+    public ResponseEntity<Set<Currency>> getCurrencies(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+            String ifNoneMatch) {
+        Set<Currency> currencies = debtSimplifier.getExchangeRateFactory()
+                .getKnownCurrencies();
+        String eTag = currenciesETag(currencies);
+
+        if (matches(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag).cacheControl(CURRENCIES_CACHE_CONTROL).build();
+        }
+
+        return ResponseEntity.ok().eTag(eTag)
+                .cacheControl(CURRENCIES_CACHE_CONTROL).body(currencies);
+    }
+
+    /**
+     * Computes the ETag of a set of currencies, which doesn't depend on the
+     * order of the set and stays the same across restarts.
+     *
+     * @param   currencies
+     *          The currencies.
+     *
+     * @return  The quoted ETag.
+     */
+    private static String currenciesETag(Set<Currency> currencies) {
+        List<String> codes = new ArrayList<>();
+        for (Currency currency : currencies)
+            codes.add(currency.getCurrencyCode());
+        Collections.sort(codes);
+        return "\"" + Integer.toHexString(codes.hashCode()) + "\"";
     }
 
 }
@@ -13,6 +13,7 @@ import commons.Event;
 
 import server.database.EventRepository;
 import server.database.ParticipantRepository;
+import server.financial.BalanceLedger;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -23,6 +24,7 @@ public class ParticipantController {
     private final ParticipantRepository repo;
     private final EventRepository eventRepo;
     private final TransactionController transactionController;
+    private final BalanceLedger balanceLedger;
 
     private SimpMessagingTemplate messagingTemplate;
     /**
@@ -31,15 +33,18 @@ public class ParticipantController {
      * @param repo              the repository
      * @param eventRepo         the event repository
      * @param transactionController the transaction controller
+     * @param balanceLedger     the ledger keeping the balances of the events
      * @param messagingTemplate the messaging template
      */
     public ParticipantController(ParticipantRepository repo,
                                  EventRepository eventRepo,
                                  TransactionController transactionController,
+                                 BalanceLedger balanceLedger,
                                  SimpMessagingTemplate messagingTemplate) {
         this.repo = repo;
         this.eventRepo = eventRepo;
         this.transactionController = transactionController;
+        this.balanceLedger = balanceLedger;
         this.messagingTemplate = messagingTemplate;
     }
 
@@ -64,6 +69,7 @@ public class ParticipantController {
         if (event.isEmpty()) return ResponseEntity.badRequest().build();
 
         repo.save(participant);
+        balanceLedger.eventChanged(eventId);
         messagingTemplate.convertAndSend("/topic/admin", event.get());
         return ResponseEntity.ok(participant);
     }
@@ -112,6 +118,7 @@ public class ParticipantController {
 
         }
         eventRepo.save(event);
+        balanceLedger.eventChanged(eventId);
         messagingTemplate.convertAndSend("/topic/admin", event);
         return ResponseEntity.ok(participant);
     }
@@ -9,6 +9,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.context.request.async.DeferredResult;
 import server.database.EventRepository;
 import server.database.TransactionRepository;
+import server.financial.BalanceLedger;
 import server.financial.ExchangeRateFactory;
 
 import java.util.*;
@@ -22,6 +23,7 @@ public class TransactionController {
     private final EventRepository eventRepository;
 
     private final ExchangeRateFactory exchangeRateFactory;
+    private final BalanceLedger balanceLedger;
 
     private Map<Object, Consumer<Transaction>> listeners;
     private SimpMessagingTemplate messagingTemplate;
@@ -36,6 +38,8 @@ public class TransactionController {
      *          The event repository.
      * @param   exchangeRateFactory
      *          The {@link ExchangeRateFactory} used in this controller.
+     * @param   balanceLedger
+     *          The ledger keeping the balances of the events.
      *
      * @param  messagingTemplate
      *         The messaging template used in this controller.
@@ -43,10 +47,12 @@ public class TransactionController {
     public TransactionController(TransactionRepository repo,
                                  EventRepository eventRepository,
                                  ExchangeRateFactory exchangeRateFactory,
+                                 BalanceLedger balanceLedger,
                                  SimpMessagingTemplate messagingTemplate) {
         this.eventRepository = eventRepository;
         this.repo = repo;
         this.exchangeRateFactory = exchangeRateFactory;
+        this.balanceLedger = balanceLedger;
         this.listeners = new ConcurrentHashMap<>();
         this.messagingTemplate = messagingTemplate;
     }
@@ -114,6 +120,7 @@ public class TransactionController {
         Transaction response = repo.save(transaction);
         event.addTransaction(response);
         eventRepository.save(event);
+        balanceLedger.transactionAdded(eventId, response);
         listeners.forEach((k, l) -> l.accept(response));
         return ResponseEntity.ok(response);
     }
@@ -155,6 +162,7 @@ public class TransactionController {
         }
         transaction.setLongPollingEventId(eventId);
         Transaction response = repo.save(transaction);
+        balanceLedger.eventChanged(eventId);
         messagingTemplate.convertAndSend("/topic/undoDelete", transaction);
         return ResponseEntity.ok(response);
     }
@@ -188,6 +196,7 @@ public class TransactionController {
         repo.delete(transaction);
         event.removeTransaction(transaction);
         Event test = eventRepository.save(event);
+        balanceLedger.eventChanged(eventId);
 
         messagingTemplate.convertAndSend("/topic/transaction/delete",
                 transaction);
@@ -0,0 +1,73 @@
+package server.database;
+
+import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import server.financial.StoredExchangeRate;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface ExchangeRateRepository
+        extends JpaRepository<StoredExchangeRate, StoredExchangeRate.Key> {
+
+    /**
+     * Finds the dates for which exchange rates are stored.
+     * @return the dates in ascending order
+     */
+    @Query("select distinct r.date from StoredExchangeRate r order by r.date")
+    List<LocalDate> findDates();
+
+    /**
+     * Finds the codes of all currencies exchange rates are stored from.
+     * @return the currency codes
+     */
+    @Query("select distinct r.fromCurrency from StoredExchangeRate r")
+    List<String> findFromCurrencies();
+
+    /**
+     * Finds the codes of all currencies exchange rates are stored to.
+     * @return the currency codes
+     */
+    @Query("select distinct r.toCurrency from StoredExchangeRate r")
+    List<String> findToCurrencies();
+
+    /**
+     * Finds the exchange rates of a day.
+     * @param date the day
+     * @return the exchange rates
+     */
+    List<StoredExchangeRate> findByDate(LocalDate date);
+
+    /**
+     * Finds the exchange rates of multiple days in a single query.
+     * @param dates the days
+     * @return the exchange rates
+     */
+    List<StoredExchangeRate> findByDateIn(Collection<LocalDate> dates);
+
+    /**
+     * Deletes the exchange rates of a day in a single statement.
+     * @param date the day
+     * @return the amount of deleted exchange rates
+     */
+    @Modifying
+    @Query("delete from StoredExchangeRate r where r.date = :date")
+    int deleteByDate(@Param("date") LocalDate date);
+
+    /**
+     * Replaces the exchange rates of a day in a single transaction. The new
+     * rows are inserted in batches.
+     * @param date the day
+     * @param exchangeRates the new exchange rates of the day
+     */
+    @Transactional
+    default void replaceDate(LocalDate date,
+                             List<StoredExchangeRate> exchangeRates) {
+        deleteByDate(date);
+        saveAll(exchangeRates);
+    }
+}
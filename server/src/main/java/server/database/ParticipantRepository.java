@@ -3,7 +3,10 @@ package server.database;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import commons.Participant;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface ParticipantRepository
@@ -14,5 +17,14 @@ public interface ParticipantRepository
      * @return The participant
      */
     Optional<Participant> findByParticipantId(Long id);
+
+    /**
+     * Finds the participants of an event, without loading the event itself
+     * @param eventId The id of the event
+     * @return The participants
+     */
+    @Query("select p from Event e join e.participants p"
+            + " where e.id = :eventId")
+    List<Participant> findByEventId(@Param("eventId") Long eventId);
 }
 
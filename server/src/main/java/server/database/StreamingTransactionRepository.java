@@ -0,0 +1,27 @@
+package server.database;
+
+import commons.Transaction;
+
+import java.util.function.Consumer;
+
+/**
+ * Reads the transactions of an event one at a time, instead of loading the
+ * event with all its transactions at once.
+ */
+public interface StreamingTransactionRepository {
+
+    /**
+     * The amount of transactions fetched from the database at a time.
+     */
+    int FETCH_SIZE = 256;
+
+    /**
+     * Passes the transactions of an event to an action in order of id. Every
+     * transaction is detached after the action, so the memory used doesn't
+     * depend on the amount of transactions of the event.
+     * @param eventId the id of the event
+     * @param action the action, which shouldn't keep the transactions
+     * @return the amount of transactions
+     */
+    long forEachOfEvent(Long eventId, Consumer<Transaction> action);
+}
@@ -0,0 +1,56 @@
+package server.database;
+
+import commons.Transaction;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Transactional;
+
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of {@link StreamingTransactionRepository}, which Spring Data
+ * adds to {@link TransactionRepository}.
+ */
+public class StreamingTransactionRepositoryImpl
+        implements StreamingTransactionRepository {
+
+    private static final String QUERY = "select t from Event e"
+            + " join e.transactions t where e.id = :eventId"
+            + " order by t.transactionId";
+
+    private static final String HINT_FETCH_SIZE = "org.hibernate.fetchSize";
+    private static final String HINT_READ_ONLY = "org.hibernate.readOnly";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Streams the transactions of an event in a single read. The results are
+     * read only, so no snapshots are kept to check them for changes.
+     * @param eventId the id of the event
+     * @param action the action, which shouldn't keep the transactions
+     * @return the amount of transactions
+     */
+    @Override
+    @Transactional
+    public long forEachOfEvent(Long eventId, Consumer<Transaction> action) {
+        long count = 0;
+        try (Stream<Transaction> transactions = entityManager
+                .createQuery(QUERY, Transaction.class)
+                .setParameter("eventId", eventId)
+                .setHint(HINT_FETCH_SIZE, FETCH_SIZE)
+                .setHint(HINT_READ_ONLY, true)
+                .getResultStream()) {
+            Iterator<Transaction> iterator = transactions.iterator();
+            while (iterator.hasNext()) {
+                Transaction transaction = iterator.next();
+                action.accept(transaction);
+                entityManager.detach(transaction);
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -2,11 +2,16 @@ package server.database;
 
 import commons.Transaction;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 
 public interface TransactionRepository
-        extends JpaRepository<Transaction, Long> {
+        extends JpaRepository<Transaction, Long>,
+        StreamingTransactionRepository {
 
     /**
      * Finds a transaction by its transactionId
@@ -15,5 +20,14 @@ public interface TransactionRepository
      */
     Optional<Transaction> findByTransactionId(Long id);
 
+    /**
+     * Finds the dates on which the transactions of an event took place.
+     * @param eventId the id of the event
+     * @return the distinct dates
+     */
+    @Query("select distinct t.date from Event e join e.transactions t"
+            + " where e.id = :eventId and t.date is not null")
+    List<LocalDate> findDatesByEventId(@Param("eventId") Long eventId);
+
 
 }
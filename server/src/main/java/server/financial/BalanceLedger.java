@@ -0,0 +1,655 @@
+package server.financial;
+
+import commons.*;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import server.database.EventRepository;
+import server.database.ParticipantRepository;
+import server.database.TransactionRepository;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Keeps the balances, sum and shares of the expenses of events, so reading
+ * them doesn't load the event and convert all its transactions again. The
+ * results of an event are kept per currency in a {@link
+ * DebtSimplifier.Session}, which is built from the stored event on the first
+ * read and afterward updated by the controllers that change the event. If
+ * the ledger has a {@link TransactionRepository}, the transactions are
+ * streamed into the session one at a time in order of id, so building it
+ * doesn't need memory for all of them:
+ * <ul>
+ *     <li>{@link BalanceLedger#transactionAdded(Long, Transaction)} adds a
+ *     new transaction to the sessions of its event, as long as it comes after
+ *     all transactions they contain.</li>
+ *     <li>{@link BalanceLedger#eventChanged(Long)} drops the sessions of an
+ *     event that was changed in any other way. The extra cents of a divided
+ *     expense depend on all expenses before it, so removing a transaction or
+ *     participant can't be undone in place.</li>
+ * </ul>
+ * The sessions are also rebuilt once the {@link
+ * ExchangeRateFactory#getVersion() rates} they were converted with change,
+ * which doesn't happen when the rates of new days are loaded.
+ * Only the {@link BalanceLedger#getMaxEvents() most recently read events} are
+ * kept.<br/>
+ * Every state of an event gets a new version, which is part of the ETag of
+ * its results, so clients can revalidate them without anything being
+ * computed. Concurrent reads of an event that isn't cached build it once.
+ * <br/>
+ * Safe for use by multiple threads.
+ */
+public class BalanceLedger {
+
+    /**
+     * The default amount of events to keep the results of.
+     */
+    public static final int DEFAULT_MAX_EVENTS = 256;
+
+    /**
+     * Distinguishes the versions of this ledger from those of earlier runs
+     * of the server, which clients may still have cached.
+     */
+    private static final String EPOCH = Long.toHexString(
+            ThreadLocalRandom.current().nextLong());
+
+    /**
+     * The results that can be read, each computed at most once per state of
+     * a session.
+     */
+    private static final Function<Entry, Set<Debt>> SIMPLIFY =
+            entry -> Collections.unmodifiableSet(entry.session.simplify());
+
+    private static final Function<Entry, Set<Debt>> SETTLE =
+            entry -> Collections.unmodifiableSet(entry.session.simplify(
+                    DebtSimplifier.SETTLEMENT_BUDGET));
+
+    private static final Function<Entry, Set<ParticipantValuePair>> BALANCES =
+            entry -> Collections.unmodifiableSet(entry.session.toBalances());
+
+    private static final Function<Entry, Money> SUM =
+            entry -> entry.session.sumOfExpenses();
+
+    private static final Function<Entry, Set<ParticipantValuePair>> SHARES =
+            entry -> Collections.unmodifiableSet(
+                    entry.session.shareOfExpenses());
+
+    /**
+     * Composes the summary of the other results of the entry, such that they
+     * are shared with the reads of the separate results.
+     */
+    private static final Function<Entry, EventSummary> SUMMARY =
+            entry -> new EventSummary(entry.get(SUM), entry.get(SHARES),
+                    entry.get(BALANCES), entry.get(SIMPLIFY));
+
+    private final DebtSimplifier debtSimplifier;
+    private final EventRepository eventRepository;
+    private final TransactionRepository transactionRepository;
+    private final ParticipantRepository participantRepository;
+    private final int maxEvents;
+
+    /**
+     * The ledgers of the events, in order of access. Guarded by its own
+     * lock, which is never held while taking the lock of a ledger.
+     */
+    private final LinkedHashMap<Long, EventLedger> ledgers;
+
+    /**
+     * Hands out the versions of all events, so a version is never reused
+     * after a ledger was dropped.
+     */
+    private final AtomicLong versions = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * The sessions of a single event. All fields are guarded by the lock of
+     * the {@code EventLedger}, as sessions aren't safe for use by multiple
+     * threads.
+     */
+    private static final class EventLedger {
+
+        private long version;
+
+        private final HashMap<Currency, Entry> entries = new HashMap<>();
+
+        private EventLedger(long version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * The results of an event in a single currency. The results are computed
+     * when they are first read, and cleared when the session changes.
+     */
+    private static final class Entry {
+
+        /**
+         * The calculation containing all transactions of the event.
+         */
+        private final DebtSimplifier.Session session;
+
+        /**
+         * The version of the rates the session was converted with.
+         */
+        private final long ratesVersion;
+
+        /**
+         * The greatest id of the transactions in the session, or {@code null}
+         * if there are none.
+         */
+        private Long lastTransactionId;
+
+        private final HashMap<Function<Entry, ?>, Object> results =
+                new HashMap<>();
+
+        private Entry(DebtSimplifier.Session session, long ratesVersion,
+                      Long lastTransactionId) {
+            this.session = session;
+            this.ratesVersion = ratesVersion;
+            this.lastTransactionId = lastTransactionId;
+        }
+
+        /**
+         * Gets a result, computing it if it wasn't read yet. Readers may get
+         * other results of the entry.
+         *
+         * @param   reader
+         *          Reads the result, one of the constants of {@link
+         *          BalanceLedger}.
+         *
+         * @return  The result.
+         *
+         * @param   <T>
+         *          The type of the result.
+         */
+        private <T> T get(Function<Entry, T> reader) {
+            @SuppressWarnings("unchecked")
+            T result = (T) results.get(reader);
+            if (result == null) {
+                // not computeIfAbsent, which can't be nested
+                result = reader.apply(this);
+                results.put(reader, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A result of an event, and the ETag of the state it was computed from.
+     *
+     * @param   value
+     *          The result, which must not be modified.
+     * @param   eTag
+     *          The quoted ETag of the result.
+     *
+     * @param   <T>
+     *          The type of the result.
+     */
+    public record Cached<T>(T value, String eTag) {
+    }
+
+    /**
+     * The statistics of a {@code BalanceLedger}.
+     *
+     * @param   hits
+     *          The amount of reads that were answered from the cache.
+     * @param   misses
+     *          The amount of reads that had to load the event.
+     * @param   evictions
+     *          The amount of events dropped because the cache was full.
+     * @param   events
+     *          The amount of events currently cached.
+     */
+    public record Statistics(long hits, long misses, long evictions,
+                             int events) {
+    }
+
+    /**
+     * Creates a new {@code BalanceLedger} keeping the results of at most
+     * {@link BalanceLedger#DEFAULT_MAX_EVENTS} events.
+     *
+     * @param   debtSimplifier
+     *          The {@link DebtSimplifier} that builds the sessions.
+     * @param   eventRepository
+     *          The repository to load events from.
+     */
+    public BalanceLedger(DebtSimplifier debtSimplifier,
+                         EventRepository eventRepository) {
+        this(debtSimplifier, eventRepository, DEFAULT_MAX_EVENTS);
+    }
+
+    /**
+     * Creates a new {@code BalanceLedger}.
+     *
+     * @param   debtSimplifier
+     *          The {@link DebtSimplifier} that builds the sessions.
+     * @param   eventRepository
+     *          The repository to load events from.
+     * @param   maxEvents
+     *          The amount of events to keep the results of, the least
+     *          recently read ones are dropped first.
+     *
+     * @throws  IllegalArgumentException
+     *          If {@code maxEvents} isn't positive.
+     */
+    public BalanceLedger(DebtSimplifier debtSimplifier,
+                         EventRepository eventRepository, int maxEvents) {
+        this(debtSimplifier, eventRepository, null, null, maxEvents);
+    }
+
+    /**
+     * Creates a new {@code BalanceLedger} that streams the transactions of
+     * events instead of loading the events at once.
+     *
+     * @param   debtSimplifier
+     *          The {@link DebtSimplifier} that builds the sessions.
+     * @param   eventRepository
+     *          The repository of the events.
+     * @param   transactionRepository
+     *          The repository to stream the transactions from, or {@code
+     *          null} to load the events at once.
+     * @param   participantRepository
+     *          The repository to load the participants from, must be given
+     *          if {@code transactionRepository} is.
+     * @param   maxEvents
+     *          The amount of events to keep the results of, the least
+     *          recently read ones are dropped first.
+     *
+     * @throws  IllegalArgumentException
+     *          If {@code maxEvents} isn't positive.
+     */
+    public BalanceLedger(DebtSimplifier debtSimplifier,
+                         EventRepository eventRepository,
+                         TransactionRepository transactionRepository,
+                         ParticipantRepository participantRepository,
+                         int maxEvents) {
+        this.debtSimplifier = Objects.requireNonNull(debtSimplifier,
+                "debtSimplifier is null");
+        this.eventRepository = Objects.requireNonNull(eventRepository,
+                "eventRepository is null");
+        if (transactionRepository != null)
+            Objects.requireNonNull(participantRepository,
+                    "participantRepository is null");
+        this.transactionRepository = transactionRepository;
+        this.participantRepository = participantRepository;
+        if (maxEvents <= 0)
+            throw new IllegalArgumentException("maxEvents is not positive");
+
+        this.maxEvents = maxEvents;
+        this.ledgers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Long, EventLedger> eldest) {
+                if (size() <= BalanceLedger.this.maxEvents)
+                    return false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gets the amount of events of which the results are kept.
+     *
+     * @return  The maximum amount of events.
+     */
+    public int getMaxEvents() {
+        return maxEvents;
+    }
+
+    /**
+     * Gets the statistics of this ledger.
+     *
+     * @return  The hits, misses and evictions so far, and the amount of
+     *          events currently cached.
+     */
+    public Statistics getStatistics() {
+        int events;
+        synchronized (ledgers) {
+            events = ledgers.size();
+        }
+        return new Statistics(hits.get(), misses.get(), evictions.get(),
+                events);
+    }
+
+    /**
+     * Gets the simplified debts of an event.
+     *
+     * @param   eventId
+     *          The id of the event.
+     * @param   currency
+     *          The currency of the result.
+     *
+     * @return  The simplified debts, or an empty {@link Optional} if the
+     *          event doesn't exist.
+     *
+     * @see     DebtSimplifier.Session#simplify()
+     */
+    public Optional<Cached<Set<Debt>>> simplify(Long eventId,
+                                                Currency currency) {
+        return read(eventId, currency, SIMPLIFY);
+    }
+
+    /**
+     * Gets the simplified debts of an event, optionally with the fewest
+     * transfers possible. Whether those could be found within {@link
+     * DebtSimplifier#SETTLEMENT_BUDGET} is decided once per state of the
+     * event, later reads return the same result.
+     *
+     * @param   eventId
+     *          The id of the event.
+     * @param   currency
+     *          The currency of the result.
+     * @param   optimal
+     *          Whether to search for the fewest transfers.
+     *
+     * @return  The simplified debts, or an empty {@link Optional} if the
+     *          event doesn't exist.
+     *
+     * @see     DebtSimplifier.Session#simplify(java.time.Duration)
+     */
+    public Optional<Cached<Set<Debt>>> simplify(Long eventId,
+                                                Currency currency,
+                                                boolean optimal) {
+        return read(eventId, currency, optimal ? SETTLE : SIMPLIFY);
+    }
+
+    /**
+     * Gets the balances of the participants of an event.
+     *
+     * @param   eventId
+     *          The id of the event.
+     * @param   currency
+     *          The currency of the result.
+     *
+     * @return  The balances, or an empty {@link Optional} if the event
+     *          doesn't exist.
+     *
+     * @see     DebtSimplifier.Session#toBalances()
+     */
+    public Optional<Cached<Set<ParticipantValuePair>>> toBalances(
+            Long eventId, Currency currency) {
+        return read(eventId, currency, BALANCES);
+    }
+
+    /**
+     * Gets the sum of the expenses of an event.
+     *
+     * @param   eventId
+     *          The id of the event.
+     * @param   currency
+     *          The currency of the result.
+     *
+     * @return  The sum, or an empty {@link Optional} if the event doesn't
+     *          exist.
+     *
+     * @see     DebtSimplifier.Session#sumOfExpenses()
+     */
+    public Optional<Cached<Money>> sumOfExpenses(Long eventId,
+                                                 Currency currency) {
+        return read(eventId, currency, SUM);
+    }
+
+    /**
+     * Gets the share of the expenses of an event paid by each participant.
+     *
+     * @param   eventId
+     *          The id of the event.
+     * @param   currency
+     *          The currency of the result.
+     *
+     * @return  The shares, or an empty {@link Optional} if the event doesn't
+     *          exist.
+     *
+     * @see     DebtSimplifier.Session#shareOfExpenses()
+     */
+    public Optional<Cached<Set<ParticipantValuePair>>> shareOfExpenses(
+            Long eventId, Currency currency) {
+        return read(eventId, currency, SHARES);
+    }
+
+    /**
+     * Gets the sum, shares, balances and settlement of an event at once,
+     * from the same state of the event.
+     *
+     * @param   eventId
+     *          The id of the event.
+     * @param   currency
+     *          The currency of the result.
+     *
+     * @return  The summary, or an empty {@link Optional} if the event
+     *          doesn't exist.
+     */
+    public Optional<Cached<EventSummary>> summary(Long eventId,
+                                                  Currency currency) {
+        return read(eventId, currency, SUMMARY);
+    }
+
+    /**
+     * Reads a result from the session of an event, building it first if
+     * there is none or if it is outdated. Holds the lock of the ledger of
+     * the event while building, so concurrent reads wait for it instead of
+     * building it as well.
+     *
+     * @param   eventId
+     *          The id of the event.
+     * @param   currency
+     *          The currency of the session.
+     * @param   reader
+     *          Reads the result from the entry of the session, one of the
+     *          constants of this class.
+     *
+     * @return  The result, or an empty {@link Optional} if the event doesn't
+     *          exist.
+     *
+     * @param   <T>
+     *          The type of the result.
+     */
+    private <T> Optional<Cached<T>> read(
+            Long eventId, Currency currency,
+            Function<Entry, T> reader) {
+        Objects.requireNonNull(eventId, "eventId is null");
+        Objects.requireNonNull(currency, "currency is null");
+
+        EventLedger ledger;
+        synchronized (ledgers) {
+            ledger = ledgers.computeIfAbsent(eventId,
+                    id -> new EventLedger(versions.incrementAndGet()));
+        }
+
+        synchronized (ledger) {
+            Entry entry = ledger.entries.get(currency);
+            if (entry != null && entry.ratesVersion == debtSimplifier
+                    .getExchangeRateFactory().getVersion()) {
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+
+                entry = build(eventId, currency);
+                if (entry == null) {
+                    synchronized (ledgers) {
+                        ledgers.remove(eventId, ledger);
+                    }
+                    return Optional.empty();
+                }
+                ledger.entries.put(currency, entry);
+            }
+
+            T result = entry.get(reader);
+            return Optional.of(new Cached<>(result,
+                    eTag(ledger.version, entry.ratesVersion, currency)));
+        }
+    }
+
+    /**
+     * Builds the session of an event in a currency, streaming its
+     * transactions if possible. The rates of the days of the event are
+     * retrieved before the version of the rates is read, so fetching them
+     * doesn't outdate the session right away.
+     *
+     * @param   eventId
+     *          The id of the event.
+     * @param   currency
+     *          The currency of the session.
+     *
+     * @return  The entry of the session, or {@code null} if the event
+     *          doesn't exist.
+     */
+    private Entry build(Long eventId, Currency currency) {
+        if (transactionRepository != null) {
+            if (!eventRepository.existsById(eventId))
+                return null;
+            try {
+                return stream(eventId, currency);
+            } catch (IllegalArgumentException e) {
+                // the participants and transactions are read separately, so
+                // the event may have changed in between, read it at once
+            }
+        }
+
+        Optional<Event> event = eventRepository.findById(eventId);
+        if (event.isEmpty())
+            return null;
+
+        ExchangeRateFactory factory = debtSimplifier.getExchangeRateFactory();
+        factory.retrieveExchangeRates(dates(event.get()));
+        long ratesVersion = factory.getVersion();
+
+        DebtSimplifier.Session session = debtSimplifier.newSession(
+                currency, event.get().getParticipants());
+        session.addDebts(event.get());
+        return new Entry(session, ratesVersion,
+                lastTransactionId(event.get()));
+    }
+
+    private Entry stream(Long eventId, Currency currency) {
+        DebtSimplifier.Session session = debtSimplifier.newSession(currency,
+                participantRepository.findByEventId(eventId));
+        // like Session#addDebts(Event), all days at once
+        ExchangeRateFactory factory = debtSimplifier.getExchangeRateFactory();
+        factory.retrieveExchangeRates(
+                transactionRepository.findDatesByEventId(eventId));
+
+        Entry entry = new Entry(session, factory.getVersion(), null);
+        transactionRepository.forEachOfEvent(eventId, transaction -> {
+            session.addDebt(transaction);
+            entry.lastTransactionId = transaction.getTransactionId();
+        });
+        return entry;
+    }
+
+    private static String eTag(long version, long ratesVersion,
+                               Currency currency) {
+        return "\"" + EPOCH + "-" + Long.toHexString(version) + "-"
+                + Long.toHexString(ratesVersion) + "-"
+                + currency.getCurrencyCode() + "\"";
+    }
+
+    private static Set<LocalDate> dates(Event event) {
+        Set<LocalDate> result = new HashSet<>();
+        for (Transaction transaction : event.getTransactions()) {
+            if (transaction.getDate() != null)
+                result.add(transaction.getDate());
+        }
+        return result;
+    }
+
+    private static Long lastTransactionId(Event event) {
+        Long result = null;
+        for (Transaction transaction : event.getTransactions()) {
+            Long id = transaction.getTransactionId();
+            if (result == null || (id != null && id > result))
+                result = id;
+        }
+        return result;
+    }
+
+    /**
+     * Adds a transaction that was just stored to the sessions of its event.
+     * Sessions to which it can't be added in the same order as {@link
+     * DebtSimplifier.Session#addDebts(Event)} would, are dropped instead.
+     *
+     * @param   eventId
+     *          The id of the event.
+     * @param   transaction
+     *          The stored transaction.
+     */
+    public void transactionAdded(Long eventId, Transaction transaction) {
+        Objects.requireNonNull(transaction, "transaction is null");
+
+        EventLedger ledger;
+        synchronized (ledgers) {
+            ledger = ledgers.get(eventId);
+        }
+        if (ledger == null)
+            return;
+
+        Long id = transaction.getTransactionId();
+        synchronized (ledger) {
+            ledger.version = versions.incrementAndGet();
+
+            Iterator<Entry> iterator = ledger.entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (id == null || (entry.lastTransactionId != null
+                        && id <= entry.lastTransactionId)) {
+                    iterator.remove();
+                    continue;
+                }
+
+                try {
+                    entry.session.addDebt(transaction);
+                } catch (RuntimeException e) {
+                    // rebuild it from the stored event on the next read
+                    iterator.remove();
+                    continue;
+                }
+                entry.lastTransactionId = id;
+                entry.results.clear();
+            }
+        }
+    }
+
+    /**
+     * Drops the sessions of an event that was changed, or deleted. If the
+     * change is part of a transaction, they are dropped again once it is
+     * committed, as sessions built in the meantime still read the old event.
+     *
+     * @param   eventId
+     *          The id of the event.
+     */
+    public void eventChanged(Long eventId) {
+        if (eventId == null)
+            return;
+
+        drop(eventId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            drop(eventId);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Forgets the ledger of an event. Reads that already hold it may still
+     * finish with it, as if they happened before the change.
+     *
+     * @param   eventId
+     *          The id of the event.
+     */
+    private void drop(Long eventId) {
+        synchronized (ledgers) {
+            ledgers.remove(eventId);
+        }
+    }
+}
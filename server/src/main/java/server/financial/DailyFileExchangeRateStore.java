@@ -0,0 +1,247 @@
+package server.financial;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.time.LocalDate;
+
+import java.util.*;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link ExchangeRateStore} that keeps one small CSV file per day in a
+ * directory ({@code <date>.csv}), each line holding {@code FROM,TO,rate}.
+ * Directories written by older versions, which used one text file per day
+ * <em>and</em> pair ({@code <date>.<FROM>.<TO>.txt}), are migrated to this
+ * layout the first time the stored dates are listed.
+ */
+public class DailyFileExchangeRateStore implements ExchangeRateStore {
+
+    private static final Pattern DAY_FILE_PATTERN =
+            Pattern.compile("^(?<date>[0-9]{4}-(?>0[1-9]|1[012])-" +
+                    "(?>0[1-9]|[12][0-9]|3[01]))\\.csv$");
+
+    private static final Pattern LEGACY_FILE_PATTERN =
+            Pattern.compile("^(?<date>[0-9]{4}-(?>0[1-9]|1[012])-" +
+                    "(?>0[1-9]|[12][0-9]|3[01]))\\." +
+                    "(?<from>[A-Z]{3})\\.(?<to>[A-Z]{3})\\.txt$");
+
+    private final Path directory;
+
+    private boolean migrated;
+
+    /**
+     * Creates a new {@code DailyFileExchangeRateStore}.
+     *
+     * @param   directory
+     *          The directory in which the files are stored. Is created when
+     *          the first table is written.
+     */
+    public DailyFileExchangeRateStore(File directory) {
+        Objects.requireNonNull(directory, "directory is null");
+        this.directory = directory.toPath();
+    }
+
+    /**
+     * Gets the dates for which a table of exchange rates is stored. Migrates
+     * the files of the old one-file-per-pair layout on the first call.
+     *
+     * @return  The stored dates in ascending order.
+     *
+     * @throws  IOException
+     *          If an IO error occurred.
+     */
+    @Override
+    public synchronized NavigableSet<LocalDate> getDates() throws IOException {
+        TreeSet<LocalDate> result = new TreeSet<>();
+        if (!Files.isDirectory(directory))
+            return result;
+
+        if (!migrated) {
+            migrateLegacyFiles();
+            migrated = true;
+        }
+
+        try (DirectoryStream<Path> stream =
+                     Files.newDirectoryStream(directory, "*.csv")) {
+            for (Path file : stream) {
+                Matcher matcher = DAY_FILE_PATTERN.matcher(
+                        file.getFileName().toString());
+                if (matcher.matches())
+                    result.add(LocalDate.parse(matcher.group("date")));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the table of exchange rates of a single day.
+     *
+     * @param   date
+     *          The day to read.
+     *
+     * @return  The exchange rates of that day, empty if none are stored.
+     *
+     * @throws  IOException
+     *          If an IO error occurred or the file is malformed.
+     */
+    @Override
+    public List<ExchangeRate> read(LocalDate date) throws IOException {
+        Objects.requireNonNull(date, "date is null");
+
+        Path file = directory.resolve(generateFileName(date));
+        if (!Files.exists(file))
+            return List.of();
+
+        List<ExchangeRate> result = new ArrayList<>();
+        try (BufferedReader reader =
+                     Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank())
+                    result.add(parseLine(date, line));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed exchange rate file " + file, e);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the table of exchange rates of a single day, replacing the table
+     * that was previously stored for that day. The file is replaced
+     * atomically, so a concurrent reader never sees half a table.
+     *
+     * @param   date
+     *          The day to write.
+     * @param   exchangeRates
+     *          The exchange rates of that day.
+     *
+     * @throws  IOException
+     *          If an IO error occurred.
+     */
+    @Override
+    public void write(LocalDate date, Collection<ExchangeRate> exchangeRates)
+            throws IOException {
+        Objects.requireNonNull(date, "date is null");
+        Objects.requireNonNull(exchangeRates, "exchangeRates is null");
+
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, date.toString(), ".tmp");
+        try (BufferedWriter writer =
+                     Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (ExchangeRate exchangeRate : exchangeRates) {
+                if (!date.equals(exchangeRate.getDate()))
+                    throw new IllegalArgumentException(
+                            "exchange rate of another day: " + exchangeRate);
+                writer.write(exchangeRate.getFrom() + "," +
+                        exchangeRate.getTo() + "," + exchangeRate.getRate());
+                writer.newLine();
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, directory.resolve(generateFileName(date)),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Converts all files of the one-file-per-pair layout to day files and
+     * deletes them afterward. Rates already present in a day file take
+     * precedence over the old files.
+     *
+     * @return  The amount of old files that were migrated.
+     *
+     * @throws  IOException
+     *          If an IO error occurred.
+     */
+    int migrateLegacyFiles() throws IOException {
+        Map<LocalDate, List<Path>> legacyFiles = findLegacyFiles();
+
+        for (Map.Entry<LocalDate, List<Path>> day : legacyFiles.entrySet()) {
+            // rates that are already in the new format win
+            Map<ExchangeRate, ExchangeRate> table = new LinkedHashMap<>();
+            for (Path file : day.getValue())
+                readLegacyFile(file).ifPresent(er -> table.put(er, er));
+            for (ExchangeRate exchangeRate : read(day.getKey()))
+                table.put(exchangeRate, exchangeRate);
+
+            write(day.getKey(), table.values());
+
+            for (Path file : day.getValue())
+                Files.delete(file);
+        }
+
+        return legacyFiles.values().stream().mapToInt(List::size).sum();
+    }
+
+    private Map<LocalDate, List<Path>> findLegacyFiles() throws IOException {
+        Map<LocalDate, List<Path>> result = new TreeMap<>();
+        try (DirectoryStream<Path> stream =
+                     Files.newDirectoryStream(directory, "*.txt")) {
+            for (Path file : stream) {
+                Matcher matcher = LEGACY_FILE_PATTERN.matcher(
+                        file.getFileName().toString());
+                if (matcher.matches())
+                    result.computeIfAbsent(
+                            LocalDate.parse(matcher.group("date")),
+                            d -> new ArrayList<>()).add(file);
+            }
+        }
+        return result;
+    }
+
+    private static Optional<ExchangeRate> readLegacyFile(Path file) {
+        Matcher matcher = LEGACY_FILE_PATTERN.matcher(
+                file.getFileName().toString());
+        if (!matcher.matches())
+            return Optional.empty();
+
+        try {
+            return Optional.of(new ExchangeRate(
+                    LocalDate.parse(matcher.group("date")),
+                    Currency.getInstance(matcher.group("from")),
+                    Currency.getInstance(matcher.group("to")),
+                    Double.parseDouble(Files.readString(file).trim())));
+        } catch (Exception e) {
+            // invalid files stay invalid, skip them but leave a trace
+            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
+
+    private static ExchangeRate parseLine(LocalDate date, String line) {
+        String[] parts = line.split(",");
+        if (parts.length != 3)
+            throw new IllegalArgumentException("Malformed line: " + line);
+
+        return new ExchangeRate(date,
+                Currency.getInstance(parts[0].trim()),
+                Currency.getInstance(parts[1].trim()),
+                Double.parseDouble(parts[2].trim()));
+    }
+
+    /**
+     * Generates the name of the file storing the table of a specific day.
+     *
+     * @param   date
+     *          The day.
+     *
+     * @return  The resulting file name.
+     */
+    static String generateFileName(LocalDate date) {
+        return date + ".csv";
+    }
+}
@@ -0,0 +1,159 @@
+package server.financial;
+
+import org.springframework.dao.DataAccessException;
+import server.database.ExchangeRateRepository;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * {@link ExchangeRateStore} that keeps the exchange rates in the database,
+ * one row per day and pair (see {@link StoredExchangeRate}). Multiple servers
+ * connected to the same database share their rate history, so a day that was
+ * fetched by one of them doesn't have to be fetched by the others.<br/>
+ * Errors of the database are reported as {@link IOException IOExceptions},
+ * like the errors of the other stores, such that the {@link
+ * ExchangeRateFactory} falls back to the api.
+ */
+public class DatabaseExchangeRateStore implements ExchangeRateStore {
+
+    private final ExchangeRateRepository repository;
+
+    /**
+     * Creates a new {@code DatabaseExchangeRateStore}.
+     *
+     * @param   repository
+     *          The repository of the exchange rate table.
+     */
+    public DatabaseExchangeRateStore(ExchangeRateRepository repository) {
+        this.repository =
+                Objects.requireNonNull(repository, "repository is null");
+    }
+
+    /**
+     * Checks whether no exchange rates are stored at all.
+     *
+     * @return  Whether the store is empty.
+     *
+     * @throws  IOException
+     *          If the database couldn't be queried.
+     */
+    public boolean isEmpty() throws IOException {
+        try {
+            return repository.count() == 0;
+        } catch (DataAccessException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public NavigableSet<LocalDate> getDates() throws IOException {
+        try {
+            return new TreeSet<>(repository.findDates());
+        } catch (DataAccessException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Gets all currencies that appear in the stored exchange rates, without
+     * reading the rates themselves.
+     *
+     * @return  The currencies.
+     *
+     * @throws  IOException
+     *          If the database couldn't be queried.
+     */
+    @Override
+    public Set<Currency> getCurrencies() throws IOException {
+        Set<String> codes = new HashSet<>();
+        try {
+            codes.addAll(repository.findFromCurrencies());
+            codes.addAll(repository.findToCurrencies());
+        } catch (DataAccessException e) {
+            throw new IOException(e);
+        }
+
+        Set<Currency> result = new HashSet<>();
+        for (String code : codes)
+            result.add(Currency.getInstance(code));
+        return result;
+    }
+
+    @Override
+    public List<ExchangeRate> read(LocalDate date) throws IOException {
+        try {
+            return toExchangeRates(repository.findByDate(date));
+        } catch (DataAccessException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Reads the tables of multiple days with a single query.
+     *
+     * @param   dates
+     *          The days to read.
+     *
+     * @return  The exchange rates of those days.
+     *
+     * @throws  IOException
+     *          If the database couldn't be queried.
+     */
+    @Override
+    public List<ExchangeRate> read(Collection<LocalDate> dates)
+            throws IOException {
+        if (dates.isEmpty())
+            return List.of();
+
+        try {
+            return toExchangeRates(repository.findByDateIn(dates));
+        } catch (DataAccessException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void write(LocalDate date, Collection<ExchangeRate> exchangeRates)
+            throws IOException {
+        Objects.requireNonNull(date, "date is null");
+
+        List<StoredExchangeRate> rows = new ArrayList<>(exchangeRates.size());
+        for (ExchangeRate exchangeRate : exchangeRates) {
+            if (!date.equals(exchangeRate.getDate()))
+                throw new IllegalArgumentException(
+                        "exchange rate of another day: " + exchangeRate);
+            rows.add(new StoredExchangeRate(exchangeRate));
+        }
+
+        try {
+            repository.replaceDate(date, rows);
+        } catch (DataAccessException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Copies all days of another {@link ExchangeRateStore} into this store.
+     *
+     * @param   other
+     *          The store to copy.
+     *
+     * @throws  IOException
+     *          If an IO error occurred.
+     */
+    public void importFrom(ExchangeRateStore other) throws IOException {
+        Objects.requireNonNull(other, "other is null");
+        for (LocalDate date : other.getDates())
+            write(date, other.read(date));
+    }
+
+    private static List<ExchangeRate> toExchangeRates(
+            List<StoredExchangeRate> rows) {
+        List<ExchangeRate> result = new ArrayList<>(rows.size());
+        for (StoredExchangeRate row : rows)
+            result.add(row.toExchangeRate());
+        return result;
+    }
+}
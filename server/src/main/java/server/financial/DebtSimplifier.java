@@ -3,31 +3,42 @@ package server.financial;
 import commons.*;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
 
+/**
+ * Calculates the balances of the participants of an event and simplifies the
+ * debts between them. The simplifier itself holds no state of a calculation,
+ * every calculation happens in its own {@link Session}, so a single instance
+ * can serve concurrent requests.
+ */
 public class DebtSimplifier {
 
-    private final ExchangeRateFactory exchangeRateFactory;
-
-    private final HashMap<Participant, LinkedList<Debt>> participants;
-    private final HashMap<Participant, Integer> centsPayedExtra;
-
-    // these are automatically min-heaps, yay!
-    private final PriorityQueue<ParticipantValuePair> creditors =
-            new PriorityQueue<>();
-    private final PriorityQueue<ParticipantValuePair> debtors =
-            new PriorityQueue<>();
-
-    private Currency base;
+    /**
+     * The time the search for the settlement with the fewest transfers may
+     * take by default, before falling back to the greedy one.
+     *
+     * @see     Session#simplify(Duration)
+     */
+    public static final Duration SETTLEMENT_BUDGET = Duration.ofMillis(100);
 
-    private ParticipantValuePair zeroMoneyInBaseCurrency;
+    /**
+     * The amount of transactions from which {@link Session#addDebts(Event)}
+     * converts and sums them in parallel.
+     */
+    public static final int PARALLEL_THRESHOLD = 10_000;
 
-    private BigDecimal cent;
+    /**
+     * The amount of transactions a single task of the parallel path
+     * converts and sums.
+     */
+    private static final int PARALLEL_BATCH = 1_000;
 
-    private boolean isInitialized;
+    private final ExchangeRateFactory exchangeRateFactory;
 
     /**
      * Creates a new {@code DebtSimplifier} object. Used for testing.
@@ -40,17 +51,13 @@ public class DebtSimplifier {
         Objects.requireNonNull(exchangeRateFactory,
                 "exchangeRateFactory is null");
 
-        this.participants = new HashMap<>();
-        this.centsPayedExtra = new HashMap<>();
-
         this.exchangeRateFactory = exchangeRateFactory;
     }
 
     /**
-     * Sets up the {@code DebtSimplifier} with the specified base currency and
-     * participants. Throws {@link NullPointerException} if the base currency or
-     * participants are {@code null} and {@link IllegalArgumentException} if the
-     * participants are empty.
+     * Starts a new calculation with the specified base currency and
+     * participants. Throws {@link NullPointerException} if the base currency
+     * or participants are {@code null}.
      *
      * @param   base
      *          The base currency to use in the calculation.
@@ -58,37 +65,56 @@ public class DebtSimplifier {
      *          The participants to divide the debts over, duplicates are
      *          ignored.
      *
+     * @return  The new calculation.
+     *
      * @throws  NullPointerException
      *          If {@code base} or {@code participants} are {@code null}.
-     *
-     * @throws  IllegalArgumentException
-     *          If {@code participants} is empty.
      */
-    public void setup(Currency base, Collection<Participant> participants) {
-        Objects.requireNonNull(base, "base is null");
-        Objects.requireNonNull(participants, "participants is null");
+    public Session newSession(Currency base,
+                              Collection<Participant> participants) {
+        return new Session(base, participants);
+    }
 
+    /**
+     * Simplifies the debts of all transactions in the specified event.
+     *
+     * @param   event
+     *          The event to simplify the debts of.
+     * @param   base
+     *          The currency of the result.
+     *
+     * @return  The simplified version of the debts.
+     *
+     * @see     Session#simplify()
+     */
+    public Set<Debt> simplify(Event event, Currency base) {
+        Objects.requireNonNull(event, "event is null");
 
-        isInitialized = true;
+        Session session = newSession(base, event.getParticipants());
+        session.addDebts(event);
+        return session.simplify();
+    }
 
-        this.participants.clear();
-        this.centsPayedExtra.clear();
-        this.creditors.clear();
-        this.debtors.clear();
-        for (Participant participant : participants) {
-            this.participants.put(participant, new LinkedList<>());
-            this.centsPayedExtra.put(participant, 0);
-        }
+    /**
+     * Returns the balances of the participants of the specified event.
+     *
+     * @param   event
+     *          The event to calculate the balances of.
+     * @param   base
+     *          The currency of the result.
+     *
+     * @return  The balances of the participants.
+     *
+     * @see     Session#toBalances()
+     */
+    public Set<ParticipantValuePair> toBalances(Event event, Currency base) {
+        Objects.requireNonNull(event, "event is null");
 
-        this.base = base;
-        this.zeroMoneyInBaseCurrency = new ParticipantValuePair(null,
-                new Money(BigDecimal.ZERO, base)
-        );
-        this.cent =
-                BigDecimal.ONE.movePointLeft(base.getDefaultFractionDigits());
+        Session session = newSession(base, event.getParticipants());
+        session.addDebts(event);
+        return session.toBalances();
     }
 
-
     /**
      * Returns the {@link ExchangeRateFactory} used by this simplifier.
      *
@@ -98,239 +124,106 @@ public class DebtSimplifier {
         return exchangeRateFactory;
     }
 
+
     /**
-     * Adds a debt that should be taken into account in the calculation. Throws
-     * {@link NullPointerException} if the debt is {@code null} and {@link
-     * IllegalArgumentException} if the debt is between a participant not
-     * present in the calculation.
+     * Makes sure the exchange rates of the days of all transactions are
+     * loaded, requesting the missing days at once instead of one by one
+     * during the conversions.
      *
-     * @param   debt
-     *          A debt that should be taken into account in the calculation.
-     * @param   date
-     *          The date of the transaction.
+     * @param   transactions
+     *          The transactions that are going to be converted.
      */
-    public void addDebt(Debt debt, LocalDate date) {
-        if (!isInitialized)
-            throw new IllegalStateException("DebtSimplifier not initialized");
-
-        Objects.requireNonNull(debt, "debt is null");
-
-        if (!participants.containsKey(debt.from()))
-            throw new IllegalArgumentException(
-                    "Debt contains unknown participant (from): " + debt);
-
-        if (!participants.containsKey(debt.to()))
-            throw new IllegalArgumentException(
-                    "Debt contains unknown participant (to): " + debt);
-
-        Debt converted =
-                new Debt(debt.from(), debt.to(), convertToBase(debt.amount(),
-                        date));
-
-        participants.get(converted.to()).add(converted);
-        participants.get(converted.from()).add(converted);
+    private void retrieveExchangeRates(Collection<Transaction> transactions) {
+        Set<LocalDate> dates = new HashSet<>();
+        for (Transaction transaction : transactions) {
+            if (transaction.getDate() != null)
+                dates.add(transaction.getDate());
+        }
+        exchangeRateFactory.retrieveExchangeRates(dates);
     }
 
     /**
-     * Adds a transaction that should be taken into account in the calculation.
-     * Throws {@link NullPointerException} if the transaction is {@code null}
-     * and {@link IllegalArgumentException} if the transaction is between a
-     * participant not present in the calculation.
+     * Moves a key of a binary min-heap down to its place, comparing only the
+     * high halves of the keys. Makes the same moves as {@link PriorityQueue}
+     * does, so equal keys come out of the heap in the same order.
      *
-     * @param   transaction
-     *          A transaction that should be taken into account in the
-     *          calculation.
+     * @param   heap
+     *          The heap.
+     * @param   index
+     *          The index of the key to move.
+     * @param   size
+     *          The amount of keys in the heap.
      */
-    public void addDebt(Transaction transaction) {
-        Objects.requireNonNull(transaction, "transaction is null");
-
-        if (transaction.isPayoff())
-            addDebt(
-                    new Debt(
-                    // swap payer and receiver
-                        transaction.getParticipants().getFirst(),
-                        transaction.getPayer(),
-                        transaction.getAmount()
-                    ),
-                    transaction.getDate()
-            );
-        else
-            divideDebts(
-                    transaction.getPayer(),
-                    transaction.getParticipants(),
-                    transaction.getAmount(),
-                    transaction.getDate()
-            );
+    private static void siftDown(long[] heap, int index, int size) {
+        long key = heap[index];
+        int child;
+        while ((child = 2 * index + 1) < size) {
+            if (child + 1 < size
+                    && heap[child + 1] >>> 32 < heap[child] >>> 32)
+                child++;
+            if (key >>> 32 <= heap[child] >>> 32)
+                break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = key;
     }
 
     /**
-     * Adds all transactions in the specified event so that they are taken into
-     * account in the calculation.
+     * Key of a conversion factor.
      *
-     * @param   event
-     *          The event to add the transactions from.
+     * @param   date
+     *          The date of the exchange rate.
+     * @param   currency
+     *          The currency that is converted from.
      */
-    public void addDebts(Event event) {
-        Objects.requireNonNull(event, "event is null");
-
-        List<Transaction> transactions = new ArrayList<>(
-                event.getTransactions());
-
-        // sort transactions by id to ensure deterministic results.
-        // does make the assumption that the ids are generated in order.
-        transactions.sort(Comparator.comparing(Transaction::getTransactionId));
-
-        for (Transaction transaction : transactions)
-            addDebt(transaction);
+    private record ConversionKey(LocalDate date, Currency currency) {
     }
 
     /**
-     * Divides the specified amount over the debtors, paid by the creditor.
-     * Distributes remainder evenly.
-     *
-     * @param   creditor
-     *          The participant to which the debt should be paid.
-     * @param   debtors
-     *          The participants that owe (part of) the debt. <em>Can also
-     *          include creditor.</em>
-     * @param   amount
-     *          The amount of money to divide.
-     * @param   date
-     *          The date of the transaction.
+     * Converts amounts to a single currency for the duration of one
+     * calculation. The exchange rate of every (date, currency) combination is
+     * looked up only once, and amounts that are already in the target
+     * currency aren't converted at all.
      */
-    public void divideDebts(Participant creditor,
-                            Collection<Participant> debtors, Money amount,
-                            LocalDate date) {
-        if (!isInitialized)
-            throw new IllegalStateException("DebtSimplifier not initialized");
-
-        Set<Participant> uniqueDebtors =
-                validateParameters(creditor, debtors, amount);
+    private final class Conversions {
 
-        Money convertedAmount = convertToBase(amount, date);
-        BigDecimal remainder = getRemainder(convertedAmount, uniqueDebtors);
-        BigDecimal fraction = getFraction(convertedAmount, remainder,
-                uniqueDebtors);
+        private final Currency target;
 
-        int cents = remainder.movePointRight(
-                base.getDefaultFractionDigits()).intValue();
-
-        List<Participant> extraCentPayers =
-                getNextExtraCentPayers(cents, uniqueDebtors);
-
-        for (Participant debtor : uniqueDebtors) {
-            if (!Objects.equals(creditor, debtor))  // the creditor already paid
-                addDebt(
-                        new Debt(debtor, creditor,
-                            new Money(
-                                extraCentPayers.contains(debtor) ?
-                                        fraction.add(cent) : fraction,
-                                base
-                            )
-                        ),
-                        date
-                );
-        }
-    }
+        private final HashMap<ConversionKey, BigDecimal> factors =
+                new HashMap<>();
 
-    private record ParticipantCentPair(Participant participant, int cents)
-            implements Comparable<ParticipantCentPair> {
-        @Override
-        public int compareTo(ParticipantCentPair other) {
-            return Integer.compare(this.cents, other.cents);
+        private Conversions(Currency target) {
+            this.target = target;
         }
-    }
-
-    private List<Participant> getNextExtraCentPayers(int extraCents,
-                                                    Set<Participant> debtors) {
-        List<ParticipantCentPair> participantCentHistory =
-                debtors.stream()
-                        // quick and dirty hack to make result deterministic
-                        .sorted(Comparator
-                                .comparingLong(Participant::getParticipantId))
-                        .map(d -> new ParticipantCentPair(d,
-                                centsPayedExtra.get(d)))
-                        .toList();
-
-        PriorityQueue<ParticipantCentPair> cents =
-                new PriorityQueue<>(participantCentHistory);
-
-        List<Participant> result = new LinkedList<>();
-
-        for (int i = 0; i < extraCents; i++) {
-            ParticipantCentPair nextParticipant = cents.poll();
-
-            if (nextParticipant == null)
-                throw new NullPointerException("An (in theory) impossible " +
-                        "mishap occurred in the simplification algorithm");
 
-            Participant participant = nextParticipant.participant;
-
-            centsPayedExtra.put(participant,
-                    centsPayedExtra.get(participant) + 1);
-            result.add(participant);
+        /**
+         * Converts an amount to the target currency. Will raise a {@link
+         * NullPointerException} if an exchange rate is unavailable, but that
+         * (throwing an exception) is expected behaviour. Falls back to the
+         * closest known rate if the api can't provide the exact day.
+         *
+         * @param   amount
+         *          The amount to convert.
+         * @param   date
+         *          The date of the exchange rate.
+         *
+         * @return  The converted amount, {@code amount} itself if it is in
+         *          the target currency already.
+         */
+        Money convert(Money amount, LocalDate date) {
+            if (amount.getCurrency().equals(target))
+                return amount;
+
+            BigDecimal factor = factors.computeIfAbsent(
+                    new ConversionKey(date, amount.getCurrency()),
+                    key -> exchangeRateFactory.getExchangeRateOrClosest(
+                            key.date(), key.currency(), target)
+                            .getRateAsBigDecimal());
+
+            // the same rounding as ExchangeRate#convert
+            return new Money(amount.getAmount().multiply(factor), target);
         }
-
-        return result;
-    }
-
-    private static BigDecimal getFraction(Money convertedAmount,
-                                          BigDecimal remainder,
-                                          Set<Participant> uniqueDebtors) {
-        return convertedAmount.getAmount().subtract(remainder).divide(
-                new BigDecimal(uniqueDebtors.size()), RoundingMode.DOWN);
-    }
-
-    private BigDecimal getRemainder(Money convertedAmount,
-                                    Set<Participant> uniqueDebtors) {
-        return convertedAmount.getAmount().remainder(
-                (new BigDecimal(uniqueDebtors.size())).movePointLeft(
-                        base.getDefaultFractionDigits()));
-    }
-
-    private Money convertToBase(Money amount, LocalDate date) {
-        return convertToBase(amount, date, base);
-    }
-
-
-    private Money convertToBase(Money amount, LocalDate date, Currency base) {
-        // Will raise a NullPointerException if an exchange rate is unavailable,
-        // but that (throwing an exception) is expected behaviour
-        return new Money(
-                exchangeRateFactory
-                        .getExchangeRate(date, amount.getCurrency(), base)
-                        .convert(amount)
-                        .getAmount(),
-                base
-        );
-    }
-
-
-    private Set<Participant> validateParameters(Participant creditor,
-                                                Collection<Participant> debtors,
-                                                Money amount) {
-        Objects.requireNonNull(creditor, "creditor is null");
-        Objects.requireNonNull(amount, "amount is null");
-        Objects.requireNonNull(debtors, "debtors is null");
-
-        if (debtors.isEmpty())
-            throw new IllegalArgumentException("No debtors");
-
-        if (!participants.containsKey(creditor))
-            throw new IllegalArgumentException(
-                    "Debt contains unknown creditor: " + creditor);
-
-        Set<Participant> uniqueDebtors = Set.copyOf(debtors);
-
-        if (!participants.keySet().containsAll(uniqueDebtors))
-            throw new IllegalArgumentException("Debt contains unknown debtors: "
-                    + uniqueDebtors);
-
-        if (uniqueDebtors.size() != debtors.size())
-            throw new IllegalArgumentException("Debtors contain duplicates: "
-                    + debtors);
-
-        return uniqueDebtors;
     }
 
     /**
@@ -348,22 +241,18 @@ public class DebtSimplifier {
         Objects.requireNonNull(event, "event is null");
         Objects.requireNonNull(currency, "currency is null");
 
-        BigDecimal sum = BigDecimal.ZERO.setScale(
-                currency.getDefaultFractionDigits(),
-                RoundingMode.HALF_UP
-        );
+        MoneyAccumulator sum = new MoneyAccumulator(currency);
+        retrieveExchangeRates(event.getTransactions());
+        Conversions toCurrency = new Conversions(currency);
         for (Transaction transaction : event.getTransactions()) {
             if (!transaction.isPayoff()) {
-                sum = sum.add(
-                        this.convertToBase(
-                                transaction.getAmount(),
-                                transaction.getDate(),
-                                currency
-                        ).getAmount()
-                );
+                sum.add(toCurrency.convert(
+                        transaction.getAmount(),
+                        transaction.getDate()
+                ));
             }
         }
-        return new Money(sum, currency);
+        return sum.toMoney();
     }
 
     /**
@@ -382,233 +271,943 @@ public class DebtSimplifier {
         Objects.requireNonNull(event, "event is null");
         Objects.requireNonNull(currency, "currency is null");
 
-        HashMap<Participant, Money> result = new HashMap<>();
+        HashMap<Participant, MoneyAccumulator> result = new HashMap<>();
 
         for (Participant participant : event.getParticipants())
-            result.put(participant, new Money(BigDecimal.ZERO, currency));
+            result.put(participant, new MoneyAccumulator(currency));
 
+        retrieveExchangeRates(event.getTransactions());
+        Conversions toCurrency = new Conversions(currency);
         for (Transaction transaction : event.getTransactions()) {
             if (!transaction.isPayoff()) {
-                Money share = result.get(transaction.getPayer());
-
-                share.setAmount(
-                        share.getAmount().add(
-                            this.convertToBase(
-                                    transaction.getAmount(),
-                                    transaction.getDate(),
-                                    currency
-                            ).getAmount()
-                    )
-                );
+                result.get(transaction.getPayer()).add(toCurrency.convert(
+                        transaction.getAmount(),
+                        transaction.getDate()
+                ));
             }
         }
 
         return result.entrySet().stream()
-                .map(e -> new ParticipantValuePair(e.getKey(), e.getValue()))
+                .map(e -> new ParticipantValuePair(e.getKey(),
+                        e.getValue().toMoney()))
                 .collect(Collectors.toSet());
     }
 
     /**
-     * Simplifies the debt structure. Returns a simplified version of the debts
-     * with at most {@code n-1} payments.<br/>Pseudocode <i>(Khan, 2024)</i>:
-     * <pre><code>
-     *     Let G be a directed simple graph (V, E) in which the vertices are<!--
-     *     --> participants and edges are debts.
-     *     Let d be a min priority queue of debtors and their debt.
-     *     Let c be a min priority queue of creditors and their credit.
-     *     Let r be a set of debts.
-     *
-     *     G := The unsimplified debt structure.
-     *     d := ∅
-     *     c := ∅
-     *     r := ∅
-     *
-     *     Foreach v in V(G):
-     *         Let m := Σw((u, v)) - Σw((v, u)).
-     *         If m > 0:
-     *             Enqueue m, paired with v, to c.
-     *         If m < 0:
-     *             Enqueue -m, paired with v, to d.
-     *
-     *     While c ≠ ∅ and d ≠ ∅:
-     *         Poll c' from c.
-     *         Poll d' from d.
-     *         Let r' := c' - d'.
-     *         Add min(c', d'), as a debt from d' to c', to r.
-     *         If r' > 0:
-     *             Enqueue r', paired with c', to c.
-     *         If r' < 0:
-     *             Enqueue -r', paired with d', to d.
-     *
-     *     r = The simplified debt structure.</code></pre>
-     *
-     * @return  The simplified version of the debts.
-     *
-     * @throws  IllegalStateException
-     *          If the {@code DebtSimplifier} is not initialized.
-     *
-     * @author  Maurits Sloof
-     * @author  Paras Khan
+     * A single calculation of balances and simplified debts, started with
+     * {@link DebtSimplifier#newSession(Currency, Collection)}. Not safe for
+     * use by multiple threads, but sessions of the same simplifier don't share
+     * any state that changes, so they can run concurrently.
      */
-    public Set<Debt> simplify() {
-        if (!isInitialized)
-            throw new IllegalStateException("DebtSimplifier not initialized");
-        // reinitialize before any new calls
-        isInitialized = false;
-
-        creditors.clear();
-        debtors.clear();
-
-        for (Participant participant : participants.keySet())
-            enqueue(reduce(
-                    participant,
-                    participants.get(participant)
-            ));
-
-        return collapse(base);
-    }
+    public final class Session {
+
+        /**
+         * The participants in the calculation, mapped to their index in {@link
+         * Session#balances}.
+         */
+        private final HashMap<Participant, Integer> participants =
+                new HashMap<>();
+
+        /**
+         * The participants by index, and their rank in order of id.
+         */
+        private final Participant[] byIndex;
+        private final int[] ranks;
+        private final int[] byRank;
+
+        /**
+         * The amount of extra cents every participant paid so far, by index.
+         * The remainder of an amount that doesn't divide evenly is paid by
+         * the debtors that paid the fewest extra cents.
+         */
+        private final int[] centsPayedExtra;
+
+        /**
+         * Marks the debtors that pay an extra cent in the division that is
+         * being added, by index. Cleared after every division.
+         */
+        private final boolean[] payingExtra;
+
+        // these are automatically min-heaps, yay!
+        private final PriorityQueue<ParticipantValuePair> creditors =
+                new PriorityQueue<>();
+        private final PriorityQueue<ParticipantValuePair> debtors =
+                new PriorityQueue<>();
+
+        private final Currency base;
+
+        private final ParticipantValuePair zeroMoneyInBaseCurrency;
+
+        /**
+         * The net balance of every participant in the base currency, positive
+         * if the participant is owed money.
+         */
+        private final MoneyAccumulator[] balances;
+
+        /**
+         * The sum of the expenses added as transactions, and the part of it
+         * paid by every participant, in the base currency.
+         */
+        private final MoneyAccumulator expenses;
+        private final MoneyAccumulator[] shares;
+
+        private final Conversions conversions;
+
+        private Session(Currency base, Collection<Participant> participants) {
+            Objects.requireNonNull(base, "base is null");
+            Objects.requireNonNull(participants, "participants is null");
+
+            for (Participant participant : participants)
+                this.participants.putIfAbsent(participant,
+                        this.participants.size());
+
+            int size = this.participants.size();
+            this.byIndex = new Participant[size];
+            for (Map.Entry<Participant, Integer> participant
+                    : this.participants.entrySet())
+                byIndex[participant.getValue()] = participant.getKey();
+
+            this.byRank = orderById(byIndex);
+            this.ranks = new int[size];
+            for (int rank = 0; rank < size; rank++)
+                ranks[byRank[rank]] = rank;
+            this.centsPayedExtra = new int[size];
+            this.payingExtra = new boolean[size];
+
+            this.balances = new MoneyAccumulator[this.participants.size()];
+            this.shares = new MoneyAccumulator[this.participants.size()];
+            for (int i = 0; i < balances.length; i++) {
+                balances[i] = new MoneyAccumulator(base);
+                shares[i] = new MoneyAccumulator(base);
+            }
+            this.expenses = new MoneyAccumulator(base);
 
+            this.base = base;
+            this.conversions = new Conversions(base);
+            this.zeroMoneyInBaseCurrency = new ParticipantValuePair(null,
+                    new Money(BigDecimal.ZERO, base)
+            );
+        }
 
-    /**
-     * Returns the balances of the participants in the specified currency. The
-     * balance is the amount of money that the participant has to pay or
-     * receive. If the value is negative, the participant has to pay the
-     * amount. If the value is positive, the participant has to receive the
-     * amount.
-     *
-     * @return  The balances of the participants.
-     */
-    public Set<ParticipantValuePair> toBalances() {
-        if (!isInitialized)
-            throw new IllegalStateException("DebtSimplifier not initialized");
-        // reinitialize before any new calls
-        isInitialized = false;
+        /**
+         * Orders participants by id, participants without id last.
+         *
+         * @param   participants
+         *          The participants by index.
+         *
+         * @return  The indices of the participants in order of id.
+         */
+        private static int[] orderById(Participant[] participants) {
+            // stable, so participants without id keep the order they came in
+            Integer[] order = new Integer[participants.length];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, Comparator.comparing(
+                    i -> participants[i].getParticipantId(),
+                    Comparator.nullsLast(Comparator.naturalOrder())));
+
+            int[] result = new int[order.length];
+            for (int i = 0; i < order.length; i++)
+                result[i] = order[i];
+            return result;
+        }
 
-        Set<ParticipantValuePair> result = new HashSet<>();
+        /**
+         * Gets the base currency of the calculation.
+         *
+         * @return  The base currency.
+         */
+        public Currency getBase() {
+            return base;
+        }
 
-        for (Participant participant : participants.keySet())
-            result.add(reduce(
-                    participant,
-                    participants.get(participant)
-            ));
+        /**
+         * Adds a debt that should be taken into account in the calculation.
+         * Throws {@link NullPointerException} if the debt is {@code null} and
+         * {@link IllegalArgumentException} if the debt is between a
+         * participant not present in the calculation.
+         *
+         * @param   debt
+         *          A debt that should be taken into account in the
+         *          calculation.
+         * @param   date
+         *          The date of the transaction.
+         */
+        public void addDebt(Debt debt, LocalDate date) {
+            Objects.requireNonNull(debt, "debt is null");
+
+            if (!participants.containsKey(debt.from()))
+                throw new IllegalArgumentException(
+                        "Debt contains unknown participant (from): " + debt);
+
+            if (!participants.containsKey(debt.to()))
+                throw new IllegalArgumentException(
+                        "Debt contains unknown participant (to): " + debt);
+
+            Money converted = conversions.convert(debt.amount(), date);
+            balances[participants.get(debt.from())].subtract(converted);
+            balances[participants.get(debt.to())].add(converted);
+        }
 
-        return result;
-    }
+        /**
+         * Adds a debt that is already in the base currency and between known
+         * participants to their balances.
+         *
+         * @param   from
+         *          The index of the participant that owes the debt.
+         * @param   to
+         *          The index of the participant the debt is owed to.
+         * @param   cents
+         *          The amount of the debt in cents of the base currency.
+         */
+        private void addConvertedDebt(int from, int to, long cents) {
+            balances[from].subtract(cents);
+            balances[to].add(cents);
+        }
 
-    /**
-     * Collapses the graph into a simplified one.
-     *
-     * @param   base
-     *          The {@link Currency} of the resulting graph.
-     *
-     * @return  The simplified graph.
-     */
-    private Set<Debt> collapse(Currency base) {
-        Set<Debt> result = new HashSet<>();
+        /**
+         * Converts an amount in the base currency to cents.
+         *
+         * @param   amount
+         *          The amount.
+         *
+         * @return  The amount in minor units of the base currency.
+         *
+         * @throws  ArithmeticException
+         *          If the amount doesn't fit in a {@code long} of cents.
+         */
+        private long toCents(Money amount) {
+            return amount.getAmount().movePointRight(
+                    base.getDefaultFractionDigits()).longValueExact();
+        }
 
-        while (!creditors.isEmpty() && !debtors.isEmpty()) {
-            ParticipantValuePair creditor = creditors.poll();
-            ParticipantValuePair debtor = debtors.poll();
+        /**
+         * Adds a transaction that should be taken into account in the
+         * calculation. Throws {@link NullPointerException} if the transaction
+         * is {@code null} and {@link IllegalArgumentException} if the
+         * transaction is between a participant not present in the
+         * calculation.
+         *
+         * @param   transaction
+         *          A transaction that should be taken into account in the
+         *          calculation.
+         */
+        public void addDebt(Transaction transaction) {
+            Objects.requireNonNull(transaction, "transaction is null");
+
+            if (transaction.isPayoff())
+                addDebt(
+                        new Debt(
+                        // swap payer and receiver
+                            transaction.getParticipants().getFirst(),
+                            transaction.getPayer(),
+                            transaction.getAmount()
+                        ),
+                        transaction.getDate()
+                );
+            else {
+                divideDebts(
+                        transaction.getPayer(),
+                        transaction.getParticipants(),
+                        transaction.getAmount(),
+                        transaction.getDate()
+                );
+
+                Money converted = conversions.convert(
+                        transaction.getAmount(), transaction.getDate());
+                expenses.add(converted);
+                shares[participants.get(transaction.getPayer())]
+                        .add(converted);
+            }
+        }
 
-            if (creditor == null || debtor == null)
-                throw new NullPointerException("this shouldn't happen...");
+        /**
+         * Adds all transactions in the specified event so that they are taken
+         * into account in the calculation. The exchange rates of all days on
+         * which the transactions took place are retrieved up front, in a
+         * single request for the days that are missing. Events with at least
+         * {@link DebtSimplifier#PARALLEL_THRESHOLD} transactions are added
+         * in parallel.
+         *
+         * @param   event
+         *          The event to add the transactions from.
+         *
+         * @see     Session#addDebts(Event, boolean)
+         */
+        public void addDebts(Event event) {
+            Objects.requireNonNull(event, "event is null");
+            addDebts(event,
+                    event.getTransactions().size() >= PARALLEL_THRESHOLD);
+        }
 
-            // simplify the cancel function
-            if (creditor.money().equals(debtor.money())) {
-                result.add(new Debt(debtor.participant(),
-                        creditor.participant(), creditor.money()));
-                continue;
+        /**
+         * Adds all transactions in the specified event so that they are taken
+         * into account in the calculation, like {@link
+         * Session#addDebts(Event)}.<br/>
+         * In parallel, the transactions are converted and summed in batches
+         * on the {@link ForkJoinPool#commonPool() common pool}, each with
+         * its own accumulators, which are merged afterward. Only the extra
+         * cents of divided expenses are distributed one expense at a time,
+         * in the same order as {@link Session#addDebt(Transaction)} would,
+         * so the result is exactly the same. If any transaction is invalid
+         * none of them are added.
+         *
+         * @param   event
+         *          The event to add the transactions from.
+         * @param   parallel
+         *          Whether to convert and sum the transactions in parallel.
+         */
+        public void addDebts(Event event, boolean parallel) {
+            Objects.requireNonNull(event, "event is null");
+
+            List<Transaction> transactions = new ArrayList<>(
+                    event.getTransactions());
+
+            // sort transactions by id to ensure deterministic results.
+            // does make the assumption that the ids are generated in order.
+            transactions.sort(
+                    Comparator.comparing(Transaction::getTransactionId));
+
+            retrieveExchangeRates(transactions);
+            if (parallel) {
+                addInParallel(transactions);
+                return;
             }
+            for (Transaction transaction : transactions)
+                addDebt(transaction);
+        }
 
-            cancel(base, creditor, debtor, result);
+        /**
+         * Adds transactions with the parallel path of {@link
+         * Session#addDebts(Event, boolean)}.
+         *
+         * @param   transactions
+         *          The transactions, sorted by id.
+         */
+        private void addInParallel(List<Transaction> transactions) {
+            Division[] divisions = new Division[transactions.size()];
+            Totals totals = ForkJoinPool.commonPool().invoke(
+                    new Aggregation(transactions, divisions, 0,
+                            transactions.size()));
+
+            // the extra cents depend on the ones before, in order of id
+            int[] history = centsPayedExtra.clone();
+            try {
+                for (Division division : divisions) {
+                    if (division != null)
+                        divideExtraCents(division, totals);
+                }
+            } catch (RuntimeException e) {
+                System.arraycopy(history, 0, centsPayedExtra, 0,
+                        history.length);
+                throw e;
+            }
+
+            for (int i = 0; i < balances.length; i++) {
+                balances[i].merge(totals.balances[i]);
+                shares[i].merge(totals.shares[i]);
+            }
+            expenses.merge(totals.expenses);
         }
-        return result;
-    }
 
-    /**
-     * Cancels two debts against each other, adding the remainder to the
-     * appropriate priority queue.
-     *
-     * @param   base
-     *          The {@link Currency} of the resulting graph.
-     * @param   creditor
-     *          The creditor in the debt.
-     * @param   debtor
-     *          The debtor in the debt.
-     * @param   result
-     *          The {@link List} in which the resulting simplified version of
-     *          the debts are stored.
-     */
-    private void cancel(Currency base, ParticipantValuePair creditor,
-                        ParticipantValuePair debtor, Set<Debt> result) {
-        BigDecimal max = creditor.money().getAmount().max(
-                debtor.money().getAmount());
-        BigDecimal min = creditor.money().getAmount().min(
-                debtor.money().getAmount());
-
-        Money maxPayoffMoney = new Money(min, base);
-        Money remainderMoney = new Money(max.subtract(min), base);
-
-        result.add(new Debt(debtor.participant(), creditor.participant(),
-                maxPayoffMoney));
-
-        // re-enqueue undivided money
-        if (creditor.money().equals(maxPayoffMoney))
-            debtors.add(new ParticipantValuePair(debtor.participant(),
-                    remainderMoney));
-        else
-            creditors.add(new ParticipantValuePair(creditor.participant(),
-                    remainderMoney));
-    }
+        /**
+         * Adds the extra cents of a divided expense to the totals, after its
+         * fractions were added by an {@link Aggregation}. Does the same as the
+         * end of {@link Session#divideDebts(Participant, Collection, Money,
+         * LocalDate)}.
+         *
+         * @param   division
+         *          The divided expense.
+         * @param   totals
+         *          The totals to add the extra cents to.
+         */
+        private void divideExtraCents(Division division, Totals totals) {
+            markExtraCentPayers((int) division.remainder(),
+                    division.debtors());
+            try {
+                for (int debtor : division.debtors()) {
+                    if (debtor == division.creditor())
+                        continue;
+
+                    long share = payingExtra[debtor] ? division.fraction() + 1
+                            : division.fraction();
+                    if (share <= 0)
+                        throw new IllegalArgumentException(
+                                "Debt is not positive");
+                    if (payingExtra[debtor]) {
+                        totals.balances[debtor].subtract(1);
+                        totals.balances[division.creditor()].add(1);
+                    }
+                }
+            } finally {
+                clearExtraCentPayers(division.debtors());
+            }
+        }
 
-    /**
-     * Reduces a Participant to its monetary value.
-     *
-     * @param   participant
-     *          The participant to reduce.
-     * @param   transactions
-     *          The transactions to and from the participant.
-     *
-     * @return  The resulting monetary value as a {@link ParticipantValuePair}
-     *          object.
-     */
-    private ParticipantValuePair reduce(Participant participant,
-                         LinkedList<Debt> transactions) {
-        Money result = new Money(BigDecimal.ZERO, base);
-
-        for (Debt transaction : transactions) {
-            if (transaction.from().equals(participant))
-                // subtract from existing balance
-                result.setAmount(result.getAmount().subtract(
-                        transaction.amount().getAmount()));
+        /**
+         * An expense divided over its debtors, of which the extra cents still
+         * have to be distributed.
+         *
+         * @param   creditor
+         *          The index of the participant that paid the expense.
+         * @param   debtors
+         *          The indices of the participants the expense is divided
+         *          over.
+         * @param   fraction
+         *          The share of every debtor in cents, without extra cent.
+         * @param   remainder
+         *          The amount of extra cents.
+         */
+        private record Division(int creditor, int[] debtors, long fraction,
+                                long remainder) {
+        }
+
+        /**
+         * Balances, shares and sum of expenses of part of the transactions.
+         */
+        private final class Totals {
+
+            private final MoneyAccumulator[] balances =
+                    new MoneyAccumulator[Session.this.balances.length];
+            private final MoneyAccumulator[] shares =
+                    new MoneyAccumulator[Session.this.balances.length];
+            private final MoneyAccumulator expenses =
+                    new MoneyAccumulator(base);
+
+            private Totals() {
+                for (int i = 0; i < balances.length; i++) {
+                    balances[i] = new MoneyAccumulator(base);
+                    shares[i] = new MoneyAccumulator(base);
+                }
+            }
+
+            private void merge(Totals other) {
+                for (int i = 0; i < balances.length; i++) {
+                    balances[i].merge(other.balances[i]);
+                    shares[i].merge(other.shares[i]);
+                }
+                expenses.merge(other.expenses);
+            }
+        }
+
+        /**
+         * Converts and sums a range of transactions, splitting it in halves
+         * until it is at most {@link DebtSimplifier#PARALLEL_BATCH} long. The
+         * fractions of divided expenses are added to the balances, the extra
+         * cents are left in {@code divisions}.
+         */
+        private final class Aggregation extends RecursiveTask<Totals> {
+
+            private final List<Transaction> transactions;
+            private final Division[] divisions;
+            private final int from;
+            private final int to;
+
+            private Aggregation(List<Transaction> transactions,
+                                Division[] divisions, int from, int to) {
+                this.transactions = transactions;
+                this.divisions = divisions;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Totals compute() {
+                if (to - from > PARALLEL_BATCH) {
+                    int middle = (from + to) >>> 1;
+                    Aggregation right = new Aggregation(transactions,
+                            divisions, middle, to);
+                    right.fork();
+                    Totals totals = new Aggregation(transactions, divisions,
+                            from, middle).compute();
+                    totals.merge(right.join());
+                    return totals;
+                }
+
+                // conversions aren't safe for use by multiple threads
+                Conversions conversions = new Conversions(base);
+                Totals totals = new Totals();
+                for (int i = from; i < to; i++) {
+                    Transaction transaction = transactions.get(i);
+                    Objects.requireNonNull(transaction, "transaction is null");
+                    if (transaction.isPayoff())
+                        addPayoff(transaction, conversions, totals);
+                    else
+                        divisions[i] = divide(transaction, conversions,
+                                totals);
+                }
+                return totals;
+            }
+
+            private void addPayoff(Transaction transaction,
+                                   Conversions conversions, Totals totals) {
+                // swap payer and receiver
+                Debt debt = new Debt(transaction.getParticipants().getFirst(),
+                        transaction.getPayer(), transaction.getAmount());
+
+                if (!participants.containsKey(debt.from()))
+                    throw new IllegalArgumentException(
+                            "Debt contains unknown participant (from): "
+                                    + debt);
+
+                if (!participants.containsKey(debt.to()))
+                    throw new IllegalArgumentException(
+                            "Debt contains unknown participant (to): "
+                                    + debt);
+
+                Money converted = conversions.convert(debt.amount(),
+                        transaction.getDate());
+                totals.balances[participants.get(debt.from())]
+                        .subtract(converted);
+                totals.balances[participants.get(debt.to())].add(converted);
+            }
+
+            private Division divide(Transaction transaction,
+                                    Conversions conversions, Totals totals) {
+                Participant creditor = transaction.getPayer();
+                Set<Participant> uniqueDebtors = validateParameters(creditor,
+                        transaction.getParticipants(),
+                        transaction.getAmount());
+
+                Money converted = conversions.convert(
+                        transaction.getAmount(), transaction.getDate());
+                long convertedAmount = toCents(converted);
+                long remainder = convertedAmount % uniqueDebtors.size();
+                long fraction =
+                        (convertedAmount - remainder) / uniqueDebtors.size();
+
+                int creditorIndex = participants.get(creditor);
+                int[] debtors = indicesOf(uniqueDebtors);
+                for (int debtor : debtors) {
+                    if (debtor == creditorIndex)
+                        continue;
+                    totals.balances[debtor].subtract(fraction);
+                    totals.balances[creditorIndex].add(fraction);
+                }
+
+                totals.expenses.add(converted);
+                totals.shares[creditorIndex].add(converted);
+                return new Division(creditorIndex, debtors, fraction,
+                        remainder);
+            }
+        }
+
+        /**
+         * Divides the specified amount over the debtors, paid by the creditor.
+         * Distributes remainder evenly.
+         *
+         * @param   creditor
+         *          The participant to which the debt should be paid.
+         * @param   debtors
+         *          The participants that owe (part of) the debt. <em>Can also
+         *          include creditor.</em>
+         * @param   amount
+         *          The amount of money to divide.
+         * @param   date
+         *          The date of the transaction.
+         */
+        public void divideDebts(Participant creditor,
+                                Collection<Participant> debtors, Money amount,
+                                LocalDate date) {
+            Set<Participant> uniqueDebtors =
+                    validateParameters(creditor, debtors, amount);
+
+            long convertedAmount = toCents(conversions.convert(amount, date));
+            long remainder = convertedAmount % uniqueDebtors.size();
+            long fraction =
+                    (convertedAmount - remainder) / uniqueDebtors.size();
+
+            int creditorIndex = participants.get(creditor);
+            int[] debtorIndices = indicesOf(uniqueDebtors);
+            markExtraCentPayers((int) remainder, debtorIndices);
+
+            try {
+                // the shares are in the base currency already, don't convert
+                // them
+                for (int debtor : debtorIndices) {
+                    // the creditor already paid
+                    if (debtor == creditorIndex)
+                        continue;
+
+                    long share = payingExtra[debtor] ? fraction + 1 : fraction;
+                    // like any other debt
+                    if (share <= 0)
+                        throw new IllegalArgumentException(
+                                "Debt is not positive");
+                    addConvertedDebt(debtor, creditorIndex, share);
+                }
+            } finally {
+                clearExtraCentPayers(debtorIndices);
+            }
+        }
+
+        private int[] indicesOf(Set<Participant> debtors) {
+            int[] result = new int[debtors.size()];
+            int i = 0;
+            for (Participant debtor : debtors)
+                result[i++] = participants.get(debtor);
+            return result;
+        }
+
+        /**
+         * Marks the debtors that pay the extra cents of a division in {@link
+         * Session#payingExtra}, and counts those cents. They are the debtors
+         * that paid the fewest extra cents so far, taken from a heap of the
+         * debtors in order of id. Takes {@code O(d log d + k log d)} time
+         * for {@code d} debtors and {@code k} extra cents, on primitive
+         * arrays.
+         *
+         * @param   extraCents
+         *          The amount of extra cents, less than the amount of
+         *          debtors.
+         * @param   debtors
+         *          The indices of the debtors.
+         */
+        private void markExtraCentPayers(int extraCents, int[] debtors) {
+            if (extraCents <= 0)
+                return;
+
+            int[] order = new int[debtors.length];
+            for (int i = 0; i < debtors.length; i++)
+                order[i] = ranks[debtors[i]];
+            Arrays.sort(order);
+
+            // the extra cents in the high half, the rank in the low half
+            long[] heap = new long[order.length];
+            for (int i = 0; i < order.length; i++)
+                heap[i] = (long) centsPayedExtra[byRank[order[i]]] << 32
+                        | order[i];
+            for (int i = heap.length / 2 - 1; i >= 0; i--)
+                siftDown(heap, i, heap.length);
+
+            int size = heap.length;
+            for (int i = 0; i < extraCents; i++) {
+                int debtor = byRank[(int) heap[0]];
+                heap[0] = heap[--size];
+                siftDown(heap, 0, size);
+
+                centsPayedExtra[debtor]++;
+                payingExtra[debtor] = true;
+            }
+        }
+
+        private void clearExtraCentPayers(int[] debtors) {
+            for (int debtor : debtors)
+                payingExtra[debtor] = false;
+        }
+
+        private Set<Participant> validateParameters(
+                Participant creditor, Collection<Participant> debtors,
+                Money amount) {
+            Objects.requireNonNull(creditor, "creditor is null");
+            Objects.requireNonNull(amount, "amount is null");
+            Objects.requireNonNull(debtors, "debtors is null");
+
+            if (debtors.isEmpty())
+                throw new IllegalArgumentException("No debtors");
+
+            if (!participants.containsKey(creditor))
+                throw new IllegalArgumentException(
+                        "Debt contains unknown creditor: " + creditor);
+
+            Set<Participant> uniqueDebtors = Set.copyOf(debtors);
+
+            if (!participants.keySet().containsAll(uniqueDebtors))
+                throw new IllegalArgumentException(
+                        "Debt contains unknown debtors: " + uniqueDebtors);
+
+            if (uniqueDebtors.size() != debtors.size())
+                throw new IllegalArgumentException(
+                        "Debtors contain duplicates: " + debtors);
+
+            return uniqueDebtors;
+        }
+
+        /**
+         * Simplifies the debt structure. Returns a simplified version of the
+         * debts with at most {@code n-1} payments.<br/>Pseudocode <i>(Khan,
+         * 2024)</i>:
+         * <pre><code>
+         *     Let G be a directed simple graph (V, E) in which the vertices<!--
+         *     --> are participants and edges are debts.
+         *     Let d be a min priority queue of debtors and their debt.
+         *     Let c be a min priority queue of creditors and their credit.
+         *     Let r be a set of debts.
+         *
+         *     G := The unsimplified debt structure.
+         *     d := ∅
+         *     c := ∅
+         *     r := ∅
+         *
+         *     Foreach v in V(G):
+         *         Let m := Σw((u, v)) - Σw((v, u)).
+         *         If m > 0:
+         *             Enqueue m, paired with v, to c.
+         *         If m < 0:
+         *             Enqueue -m, paired with v, to d.
+         *
+         *     While c ≠ ∅ and d ≠ ∅:
+         *         Poll c' from c.
+         *         Poll d' from d.
+         *         Let r' := c' - d'.
+         *         Add min(c', d'), as a debt from d' to c', to r.
+         *         If r' > 0:
+         *             Enqueue r', paired with c', to c.
+         *         If r' < 0:
+         *             Enqueue -r', paired with d', to d.
+         *
+         *     r = The simplified debt structure.</code></pre>
+         *
+         * @return  The simplified version of the debts.
+         *
+         * @author  Maurits Sloof
+         * @author  Paras Khan
+         */
+        public Set<Debt> simplify() {
+            creditors.clear();
+            debtors.clear();
+
+            for (Participant participant : participants.keySet())
+                enqueue(reduce(participant));
+
+            return collapse(base);
+        }
+
+        /**
+         * Simplifies the debts like {@link Session#simplify()}, but with the
+         * fewest transfers possible. The participants are split into as many
+         * groups of which the balances cancel out as possible by {@link
+         * SettlementSolver}, and the debts within every group are simplified
+         * on their own.<br/>
+         * If the search takes longer than the budget, or too many
+         * participants have a balance, the result of {@link
+         * Session#simplify()} is returned instead.
+         *
+         * @param   budget
+         *          The time the search may take.
+         *
+         * @return  The simplified version of the debts.
+         */
+        public Set<Debt> simplify(Duration budget) {
+            Objects.requireNonNull(budget, "budget is null");
+            long deadline = System.nanoTime() + budget.toNanos();
+
+            List<ParticipantValuePair> open = new ArrayList<>();
+            long[] cents = openBalances(open);
+            if (cents == null)
+                return simplify();
+
+            int[] groups = SettlementSolver.partition(cents, deadline);
+            if (groups == null)
+                return simplify();
+            return settle(open, groups);
+        }
+
+        /**
+         * Collects the balances that aren't zero, in the order the
+         * participants were added, for determinism.
+         *
+         * @param   open
+         *          Receives the balances.
+         *
+         * @return  The balances in cents, or {@code null} if any balance
+         *          overflowed or there are more than {@link
+         *          SettlementSolver#MAX_BALANCES} of them.
+         */
+        private long[] openBalances(List<ParticipantValuePair> open) {
+            for (int i = 0; i < balances.length; i++) {
+                if (balances[i].isOverflowed())
+                    return null;
+                if (balances[i].signum() != 0)
+                    open.add(reduce(byIndex[i]));
+            }
+            if (open.size() > SettlementSolver.MAX_BALANCES)
+                return null;
+
+            long[] cents = new long[open.size()];
+            for (int i = 0; i < cents.length; i++)
+                cents[i] = toCents(open.get(i).money());
+            return cents;
+        }
+
+        /**
+         * Simplifies the debts within every group of balances on its own.
+         *
+         * @param   open
+         *          The balances.
+         * @param   groups
+         *          The group of every balance, numbered from zero.
+         *
+         * @return  The debts of all groups.
+         */
+        private Set<Debt> settle(List<ParticipantValuePair> open,
+                                 int[] groups) {
+            Set<Debt> result = new HashSet<>();
+            for (int group = 0; group < groups.length; group++) {
+                creditors.clear();
+                debtors.clear();
+                for (int i = 0; i < groups.length; i++) {
+                    if (groups[i] == group)
+                        enqueue(open.get(i));
+                }
+                result.addAll(collapse(base));
+            }
+            return result;
+        }
+
+        /**
+         * Returns the balances of the participants in the base currency. The
+         * balance is the amount of money that the participant has to pay or
+         * receive. If the value is negative, the participant has to pay the
+         * amount. If the value is positive, the participant has to receive the
+         * amount.
+         *
+         * @return  The balances of the participants.
+         */
+        public Set<ParticipantValuePair> toBalances() {
+            Set<ParticipantValuePair> result = new HashSet<>();
+
+            for (Participant participant : participants.keySet())
+                result.add(reduce(participant));
+
+            return result;
+        }
+
+        /**
+         * Returns the sum of the expenses added with {@link
+         * Session#addDebt(Transaction)}, in the base currency. The sum does
+         * not include payoffs.
+         *
+         * @return  The sum of the expenses.
+         *
+         * @see     DebtSimplifier#sumOfExpenses(Event, Currency)
+         */
+        public Money sumOfExpenses() {
+            return expenses.toMoney();
+        }
+
+        /**
+         * Returns the share of the expenses added with {@link
+         * Session#addDebt(Transaction)} paid by each participant, in the base
+         * currency. The shares do not include payoffs.
+         *
+         * @return  The shares.
+         *
+         * @see     DebtSimplifier#shareOfExpenses(Event, Currency)
+         */
+        public Set<ParticipantValuePair> shareOfExpenses() {
+            Set<ParticipantValuePair> result = new HashSet<>();
+
+            for (Map.Entry<Participant, Integer> participant
+                    : participants.entrySet())
+                result.add(new ParticipantValuePair(participant.getKey(),
+                        shares[participant.getValue()].toMoney()));
+
+            return result;
+        }
+
+        /**
+         * Collapses the graph into a simplified one.
+         *
+         * @param   base
+         *          The {@link Currency} of the resulting graph.
+         *
+         * @return  The simplified graph.
+         */
+        private Set<Debt> collapse(Currency base) {
+            Set<Debt> result = new HashSet<>();
+
+            while (!creditors.isEmpty() && !debtors.isEmpty()) {
+                ParticipantValuePair creditor = creditors.poll();
+                ParticipantValuePair debtor = debtors.poll();
+
+                if (creditor == null || debtor == null)
+                    throw new NullPointerException("this shouldn't happen...");
+
+                // simplify the cancel function
+                if (creditor.money().equals(debtor.money())) {
+                    result.add(new Debt(debtor.participant(),
+                            creditor.participant(), creditor.money()));
+                    continue;
+                }
+
+                cancel(base, creditor, debtor, result);
+            }
+            return result;
+        }
+
+        /**
+         * Cancels two debts against each other, adding the remainder to the
+         * appropriate priority queue.
+         *
+         * @param   base
+         *          The {@link Currency} of the resulting graph.
+         * @param   creditor
+         *          The creditor in the debt.
+         * @param   debtor
+         *          The debtor in the debt.
+         * @param   result
+         *          The {@link List} in which the resulting simplified version
+         *          of the debts are stored.
+         */
+        private void cancel(Currency base, ParticipantValuePair creditor,
+                            ParticipantValuePair debtor, Set<Debt> result) {
+            BigDecimal max = creditor.money().getAmount().max(
+                    debtor.money().getAmount());
+            BigDecimal min = creditor.money().getAmount().min(
+                    debtor.money().getAmount());
+
+            Money maxPayoffMoney = new Money(min, base);
+            Money remainderMoney = new Money(max.subtract(min), base);
+
+            result.add(new Debt(debtor.participant(), creditor.participant(),
+                    maxPayoffMoney));
+
+            // re-enqueue undivided money
+            if (creditor.money().equals(maxPayoffMoney))
+                debtors.add(new ParticipantValuePair(debtor.participant(),
+                        remainderMoney));
             else
-                // add to existing balance
-                result.setAmount(result.getAmount().add(
-                        transaction.amount().getAmount()));
+                creditors.add(new ParticipantValuePair(
+                        creditor.participant(), remainderMoney));
         }
 
-        return new ParticipantValuePair(participant, result);
-    }
+        /**
+         * Reduces a Participant to its monetary value.
+         *
+         * @param   participant
+         *          The participant to reduce.
+         *
+         * @return  The resulting monetary value as a {@link
+         *          ParticipantValuePair} object.
+         */
+        private ParticipantValuePair reduce(Participant participant) {
+            return new ParticipantValuePair(participant,
+                    balances[participants.get(participant)].toMoney());
+        }
 
-    /**
-     * Enqueues a participant in the correct priority queue.
-     *
-     * @param   participantValuePair
-     *          The participant to enqueue.
-     */
-    private void enqueue(ParticipantValuePair participantValuePair) {
-        if (participantValuePair.compareTo(zeroMoneyInBaseCurrency) < 0) {
-            // result is negative, aka a debt.
-            // also, make the debt positive
-            participantValuePair.money().setAmount(
-                    participantValuePair.money().getAmount().negate());
-            debtors.add(participantValuePair);
-        }
-        else if (participantValuePair.compareTo(zeroMoneyInBaseCurrency) > 0) {
-            // result is positive, aka credits
-            creditors.add(participantValuePair);
-        }
-        // else, remove the participant from the calculation (everything cancels
-        // out)
+        /**
+         * Enqueues a participant in the correct priority queue.
+         *
+         * @param   participantValuePair
+         *          The participant to enqueue.
+         */
+        private void enqueue(ParticipantValuePair participantValuePair) {
+            int signum = participantValuePair.compareTo(
+                    zeroMoneyInBaseCurrency);
+            if (signum < 0) {
+                // result is negative, aka a debt.
+                // also, make the debt positive
+                participantValuePair.money().setAmount(
+                        participantValuePair.money().getAmount().negate());
+                debtors.add(participantValuePair);
+            }
+            else if (signum > 0) {
+                // result is positive, aka credits
+                creditors.add(participantValuePair);
+            }
+            // else, remove the participant from the calculation (everything
+            // cancels out)
+        }
     }
 }
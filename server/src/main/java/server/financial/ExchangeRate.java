@@ -116,6 +116,16 @@ public class ExchangeRate {
         return rate;
     }
 
+    /**
+     * Gets the actual exchange rate as the {@link BigDecimal} that {@link
+     * ExchangeRate#convert(Money)} multiplies with, without allocating.
+     *
+     * @return  The actual exchange rate.
+     */
+    BigDecimal getRateAsBigDecimal() {
+        return rateBD;
+    }
+
     /**
      * Converts an {@link Money} object of currency {@link ExchangeRate#from} to
      * an {@code Money} object of currency {@link ExchangeRate#to} using the
@@ -5,6 +5,26 @@ import java.util.*;
 
 public interface ExchangeRateAPI {
 
+    /**
+     * Thrown when the api couldn't be reached or failed to answer, as opposed
+     * to answering that it has no rates for a request. {@link
+     * ResilientExchangeRateAPI} only counts these towards opening its circuit.
+     */
+    class UnavailableException extends RuntimeException {
+
+        /**
+         * Creates a new {@code UnavailableException}.
+         *
+         * @param   message
+         *          The reason the api is unavailable.
+         * @param   cause
+         *          The cause, may be {@code null}.
+         */
+        public UnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
     /**
      * The base currency for the exchange rates.
      *
@@ -18,9 +38,12 @@ public interface ExchangeRateAPI {
      * combination with the {@link
      * ExchangeRateFactory#generateExchangeRates(Currency, Map)} method (and
      * thus return the result in the format required by that function). Returns
-     * an empty {@link Optional} if the request fails.
+     * an empty {@link Optional} if the api has no rates.
      *
      * @return  The new exchange rates.
+     *
+     * @throws  UnavailableException
+     *          If the api couldn't be reached or failed to answer.
      */
     Optional<Map<Currency, Double>> getExchangeRates();
 
@@ -30,15 +53,48 @@ public interface ExchangeRateAPI {
      * combination with the {@link
      * ExchangeRateFactory#generateExchangeRates(Currency, Map)} method (and
      * thus return the result in the format required by that function). Returns
-     * an empty {@link Optional} if the request fails.
+     * an empty {@link Optional} if the api has no rates for that date.
      *
      * @param   date
      *          The date for which to request the exchange rates.
      *
      * @return  The new exchange rates.
+     *
+     * @throws  UnavailableException
+     *          If the api couldn't be reached or failed to answer.
      */
     Optional<Map<Currency, Double>> getExchangeRates(LocalDate date);
 
+    /**
+     * Requests and returns the exchange rates of all days in a range from the
+     * API. Should use {@link ExchangeRateAPI#getBase()} as the base currency.
+     * Days on which no rates were published are absent from the result.
+     * Returns an empty {@link Optional} if the api has no rates for the
+     * range.<br/>
+     * The default implementation requests the days one by one, APIs that can
+     * return a range in a single request should override it.
+     *
+     * @param   start
+     *          The first day of the range.
+     * @param   end
+     *          The last day of the range (inclusive).
+     *
+     * @return  The exchange rates of each day on which rates were published.
+     *
+     * @throws  UnavailableException
+     *          If the api couldn't be reached or failed to answer.
+     */
+    default Optional<NavigableMap<LocalDate, Map<Currency, Double>>>
+            getExchangeRates(LocalDate start, LocalDate end) {
+        NavigableMap<LocalDate, Map<Currency, Double>> result = new TreeMap<>();
+        for (LocalDate date = start; !date.isAfter(end);
+             date = date.plusDays(1)) {
+            LocalDate day = date;
+            getExchangeRates(day).ifPresent(rates -> result.put(day, rates));
+        }
+        return result.isEmpty() ? Optional.empty() : Optional.of(result);
+    }
+
     /**
      * Returns the date of the last api request.
      *
@@ -3,24 +3,29 @@ package server.financial;
 import server.Config;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.Period;
+import java.time.temporal.ChronoUnit;
 
 import java.util.*;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
- * Creates and stores {@link ExchangeRate ExchangeRates}.
+ * Creates and stores {@link ExchangeRate ExchangeRates}. Can either store the
+ * rates between every pair of currencies, or only the rates against the base
+ * currency of the {@link ExchangeRateAPI} and derive the other rates from
+ * those when they are requested.<br/>
+ * All methods are safe to call from multiple threads. Lookups never block:
+ * they read an immutable snapshot of the rates that is replaced as a whole
+ * when new rates arrive, so a day's rates become visible all at once. Only
+ * the methods that change the rates take the lock of the factory.
  */
 public class ExchangeRateFactory {
 
@@ -33,12 +38,10 @@ public class ExchangeRateFactory {
      * currencies is limited and the amount of days is limited (in this project
      * at least), this shouldn't be a problem.
      *
-     * In a real world scenario, the cache would be stored in a propper database
-     * and the cache would be cleared after a certain amount of time.
-     *
-     * But as the requirements are different, "Requested exchange rates will be
-     * cached in a local file (e.g., rates/«date»/«from»/«to».txt)", this is the
-     * best solution.
+     * The rates are persisted in an ExchangeRateStore, which is the database
+     * on the server (see DatabaseExchangeRateStore). DEFAULT_DIR only holds
+     * the rates saved by older versions, which are imported into the database
+     * once.
      *
      * Also, connecting to multiple APIs to ensure that the data is available is
      * out of the scope of this project.
@@ -47,46 +50,240 @@ public class ExchangeRateFactory {
     public static final File DEFAULT_DIR = new File("server/rates");
 
     /**
-     * A set containing all known {@code ExchangeRates}.
+     * The maximum amount of derived cross rates that are kept around.
+     */
+    static final int CROSS_RATE_CACHE_SIZE = 256;
+
+    /**
+     * The amount of days the background load reads before making them
+     * visible to lookups. Every batch copies the per-pair indexes once.
+     */
+    static final int LOAD_BATCH_SIZE = 64;
+
+    /**
+     * The longest stretch of days without published rates that is expected,
+     * such as the holidays around new year.
+     */
+    static final int MAX_DAYS_WITHOUT_RATES = 7;
+
+    /**
+     * The longest gap between two missing days that are still requested in
+     * the same range. Days that are further apart are requested in separate
+     * ranges, so two dates years apart don't fetch all the years in between.
      */
-    private final HashSet<ExchangeRate> exchangeRates = new HashSet<>();
-    private final HashSet<Currency> knownCurrencies = new HashSet<>();
-    private final File directory;
+    static final int MAX_RANGE_GAP = 31;
+
+    /**
+     * The most days a single range request spans, such that the backfill of
+     * a year isn't a single long request the api might truncate.
+     */
+    static final int MAX_RANGE_DAYS = 90;
+
+    /**
+     * The first and the longest time between attempts of {@link
+     * ExchangeRateFactory#getKnownCurrencies()} to refresh the rates while no
+     * currencies are known, doubling after every failed attempt.
+     */
+    static final Duration MIN_CURRENCY_RETRY = Duration.ofSeconds(30);
+    static final Duration MAX_CURRENCY_RETRY = Duration.ofHours(1);
+
+    /**
+     * The rates and currencies currently known. Read without locking, only
+     * replaced while holding the lock of this factory.
+     */
+    private volatile Snapshot snapshot = new Snapshot(ExchangeRateIndex.EMPTY,
+            Set.of(), new ConcurrentHashMap<>());
+    private final ExchangeRateStore store;
     private final ExchangeRateAPI api;
 
+    /**
+     * Whether only the rates against {@link ExchangeRateFactory#base} are
+     * stored, in which case all other pairs are derived when they are looked
+     * up.
+     */
+    private final boolean crossRatesOnDemand;
+    private final Currency base;
+
+    /**
+     * The maximum distance to the date of a closest rate, {@code null} if
+     * there is none.
+     */
+    private volatile Period maxStaleness;
+
+    /**
+     * Counts the changes that may change the result of a lookup.
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * The days for which {@link ExchangeRateFactory#getClosest(LocalDate,
+     * Currency, Currency)} returned a rate of another day (or none), such
+     * that loading one of them changes the {@link
+     * ExchangeRateFactory#version} like changing a loaded day does.
+     */
+    private final Set<LocalDate> fallbackDates =
+            ConcurrentHashMap.newKeySet();
+
+    private record CrossRateKey(LocalDate date, Currency from, Currency to) {
+    }
+
+    /**
+     * An immutable state of this factory.
+     *
+     * @param   exchangeRates
+     *          An index containing all known {@code ExchangeRates}.
+     * @param   knownCurrencies
+     *          All known {@code Currencies}.
+     * @param   crossRates
+     *          Small cache of cross rates derived from {@code exchangeRates},
+     *          so converting many transactions on the same day doesn't derive
+     *          the same rate over and over again. It is the only mutable part
+     *          and is dropped together with the index it was derived from.
+     */
+    private record Snapshot(ExchangeRateIndex exchangeRates,
+                            Set<Currency> knownCurrencies,
+                            ConcurrentHashMap<CrossRateKey, ExchangeRate>
+                                    crossRates) {
+    }
+
+    /**
+     * The days that are being fetched, each mapped to a future that completes
+     * when the fetch is done.
+     */
+    private final ConcurrentHashMap<LocalDate, CompletableFuture<Void>>
+            fetches = new ConcurrentHashMap<>();
+
+    /**
+     * Completes when the background load started by {@link
+     * ExchangeRateFactory#loadInBackground()} is done, {@code null} if it
+     * hasn't been started.
+     */
+    private volatile CompletableFuture<Void> loading;
+
+    /**
+     * The {@link System#nanoTime()} before which {@link
+     * ExchangeRateFactory#getKnownCurrencies()} doesn't refresh the rates
+     * again, and the time it waits after the next failed attempt.
+     */
+    private final AtomicLong nextCurrencyRetry =
+            new AtomicLong(System.nanoTime());
+    private volatile long currencyRetryNanos = MIN_CURRENCY_RETRY.toNanos();
+
     /**
      * Constructs an {@code ExchangeRateFactory}. Direct calls are only for
      * testing purposes. Use {@link Config#getExchangeRateFactory()} to get
      * the global non-testing {@code ExchangeRateFactory}.
      *
      * @param   directory
-     *          The directory in which file should be saved.
+     *          The directory in which file should be saved. If {@code null},
+     *          the rates are not saved.
      *
      * @param   api
      *          The {@link ExchangeRateAPI} object to use.
      */
     public ExchangeRateFactory(File directory, ExchangeRateAPI api) {
-        this.directory = directory;
+        this(directory, api, false);
+    }
+
+    /**
+     * Constructs an {@code ExchangeRateFactory}. Direct calls are only for
+     * testing purposes. Use {@link Config#getExchangeRateFactory()} to get
+     * the global non-testing {@code ExchangeRateFactory}.<br/>
+     * If {@code crossRatesOnDemand} is set, only the rates against {@link
+     * ExchangeRateAPI#getBase()} are generated, stored and saved, which cuts
+     * memory and disk usage by a factor of the amount of currencies. Rates
+     * between two other currencies are then computed when they are looked up.
+     *
+     * @param   directory
+     *          The directory in which file should be saved. If {@code null},
+     *          the rates are not saved.
+     * @param   api
+     *          The {@link ExchangeRateAPI} object to use. Cannot be {@code
+     *          null} if {@code crossRatesOnDemand} is set.
+     * @param   crossRatesOnDemand
+     *          Whether to only store the rates against the base currency of
+     *          {@code api}.
+     */
+    public ExchangeRateFactory(File directory, ExchangeRateAPI api,
+                               boolean crossRatesOnDemand) {
+        this(directory == null ? null
+                : new DailyFileExchangeRateStore(directory),
+                api, crossRatesOnDemand);
+    }
+
+    /**
+     * Constructs an {@code ExchangeRateFactory} that saves its rates in the
+     * specified {@link ExchangeRateStore}. Direct calls are only for testing
+     * purposes. Use {@link Config#getExchangeRateFactory()} to get the global
+     * non-testing {@code ExchangeRateFactory}.
+     *
+     * @param   store
+     *          The store in which the rates should be saved. If {@code null},
+     *          the rates are not saved.
+     * @param   api
+     *          The {@link ExchangeRateAPI} object to use. Cannot be {@code
+     *          null} if {@code crossRatesOnDemand} is set.
+     * @param   crossRatesOnDemand
+     *          Whether to only store the rates against the base currency of
+     *          {@code api}.
+     */
+    public ExchangeRateFactory(ExchangeRateStore store, ExchangeRateAPI api,
+                               boolean crossRatesOnDemand) {
+        if (crossRatesOnDemand)
+            Objects.requireNonNull(api, "api is null");
+
+        this.store = store;
         this.api = api;
+        this.crossRatesOnDemand = crossRatesOnDemand;
+        this.base = api == null ? null : api.getBase();
     }
 
     /**
-     * Gets all loaded {@link ExchangeRate ExchangeRates}.
+     * Gets all loaded {@link ExchangeRate ExchangeRates}. If cross rates are
+     * derived on demand, these are only the rates against the base currency.
      *
      * @return  A set containing all loaded {@code ExchangeRate}s.
      */
     public Set<ExchangeRate> getExchangeRates() {
-        return Set.copyOf(exchangeRates);
+        return Set.copyOf(snapshot.exchangeRates().all());
     }
 
     /**
-     * Gets all {@link Currency Currencies}.
+     * Gets all {@link Currency Currencies}. Doesn't contact the {@link
+     * ExchangeRateAPI}, new currencies are picked up by {@link
+     * ExchangeRateFactory#refresh()}. Only if no currencies are known at
+     * all, such as on a fresh install of which the first refresh failed, it
+     * refreshes the rates itself, backing off between failed attempts.
      *
-     * @return  A set containing all loaded {@code Currencies}.
+     * @return  An immutable set containing all loaded {@code Currencies}.
      */
     public Set<Currency> getKnownCurrencies() {
-        retrieveExchangeRates();
-        return Set.copyOf(knownCurrencies);
+        Set<Currency> knownCurrencies = snapshot.knownCurrencies();
+        if (!knownCurrencies.isEmpty() || api == null || !claimCurrencyRetry())
+            return knownCurrencies;
+
+        refresh();
+        return snapshot.knownCurrencies();
+    }
+
+    /**
+     * Claims an attempt to refresh the rates because no currencies are known,
+     * if the last attempt was long enough ago.
+     *
+     * @return  Whether the caller may refresh the rates.
+     */
+    private boolean claimCurrencyRetry() {
+        long next = nextCurrencyRetry.get();
+        long now = System.nanoTime();
+        if (now - next < 0)
+            return false;
+
+        long wait = currencyRetryNanos;
+        if (!nextCurrencyRetry.compareAndSet(next, now + wait))
+            return false;
+        currencyRetryNanos = Math.min(2 * wait,
+                MAX_CURRENCY_RETRY.toNanos());
+        return true;
     }
 
     /**
@@ -104,10 +301,7 @@ public class ExchangeRateFactory {
      *          another currency.
      */
     public Set<ExchangeRate> getExchangeRates(Currency from, Currency to) {
-        return Set.copyOf(exchangeRates.stream()
-                .filter(er -> Objects.equals(from, er.getFrom())
-                        && Objects.equals(to, er.getTo()))
-                .collect(Collectors.toSet()));
+        return Set.copyOf(snapshot.exchangeRates().ofPair(from, to));
     }
 
     /**
@@ -121,9 +315,7 @@ public class ExchangeRateFactory {
      * @return  The corresponding {@code ExchangeRate}s.
      */
     public Set<ExchangeRate> getExchangeRates(Currency from) {
-        return Set.copyOf(exchangeRates.stream()
-                .filter(er -> Objects.equals(from, er.getFrom()))
-                .collect(Collectors.toSet()));
+        return Set.copyOf(snapshot.exchangeRates().from(from));
     }
 
     /**
@@ -136,9 +328,7 @@ public class ExchangeRateFactory {
      */
     public Set<ExchangeRate> getExchangeRates(LocalDate date) {
         retrieveExchangeRates(date);
-        return exchangeRates.stream()
-                .filter(er -> Objects.equals(date, er.getDate()))
-                .collect(Collectors.toUnmodifiableSet());
+        return Set.copyOf(snapshot.exchangeRates().onDate(date));
     }
 
     /**
@@ -160,11 +350,105 @@ public class ExchangeRateFactory {
     public ExchangeRate getExchangeRate(LocalDate date, Currency from,
                                         Currency to) {
         retrieveExchangeRates(date);
-        return exchangeRates.stream()
-                .filter(er -> Objects.equals(date, er.getDate())
-                        && Objects.equals(from, er.getFrom())
-                        && Objects.equals(to, er.getTo()))
-                .findFirst().orElse(null);
+        Snapshot current = snapshot;
+        ExchangeRate result = current.exchangeRates().get(date, from, to);
+
+        if (result != null || !crossRatesOnDemand)
+            return result;
+
+        return deriveExchangeRate(current, date, from, to);
+    }
+
+    /**
+     * Gets the {@link ExchangeRate} specified by the parameters, or the
+     * closest known {@code ExchangeRate} to that date if the rates of that day
+     * cannot be retrieved, for example because the {@link ExchangeRateAPI} is
+     * unavailable. Returns {@code null} if no {@code ExchangeRate} between the
+     * currencies is known at all.
+     *
+     * @param   date
+     *          The date on which the exchange rate was retrieved.
+     * @param   from
+     *          The base currency in the exchange rate as a {@link Currency}
+     *          object.
+     * @param   to
+     *          The converted currency in the exchange rate as a {@code
+     *          Currency} object.
+     *
+     * @return  The corresponding {@code ExchangeRate} object or {@code null} if
+     *          none is found.
+     */
+    public ExchangeRate getExchangeRateOrClosest(LocalDate date, Currency from,
+                                                 Currency to) {
+        ExchangeRate result = getExchangeRate(date, from, to);
+        return result != null ? result : getClosest(date, from, to);
+    }
+
+    /**
+     * Derives the rate between two currencies from their rates against the
+     * base currency, remembering the result in the cache of {@code current}.
+     * The cache is simply emptied when it is full.
+     *
+     * @param   current
+     *          The snapshot to derive the rate from.
+     * @param   date
+     *          The date on which the exchange rate was retrieved.
+     * @param   from
+     *          The base currency in the exchange rate.
+     * @param   to
+     *          The converted currency in the exchange rate.
+     *
+     * @return  The derived {@code ExchangeRate} or {@code null} if one of the
+     *          rates against the base currency is missing.
+     */
+    private ExchangeRate deriveExchangeRate(Snapshot current, LocalDate date,
+                                            Currency from, Currency to) {
+        Map<CrossRateKey, ExchangeRate> crossRates = current.crossRates();
+        CrossRateKey key = new CrossRateKey(date, from, to);
+        ExchangeRate result = crossRates.get(key);
+        if (result != null)
+            return result;
+
+        ExchangeRateIndex exchangeRates = current.exchangeRates();
+        result = cross(date, from, to, exchangeRates.get(date, base, from),
+                exchangeRates.get(date, base, to));
+        if (result != null) {
+            if (crossRates.size() >= CROSS_RATE_CACHE_SIZE)
+                crossRates.clear();
+            crossRates.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Combines two rates against the base currency into a cross rate.
+     *
+     * @param   date
+     *          The date of the resulting exchange rate.
+     * @param   from
+     *          The base currency in the resulting exchange rate.
+     * @param   to
+     *          The converted currency in the resulting exchange rate.
+     * @param   baseToFrom
+     *          The rate from the base currency to {@code from}.
+     * @param   baseToTo
+     *          The rate from the base currency to {@code to}.
+     *
+     * @return  The cross rate or {@code null} if one of the rates is {@code
+     *          null}.
+     */
+    private static ExchangeRate cross(LocalDate date, Currency from,
+                                      Currency to, ExchangeRate baseToFrom,
+                                      ExchangeRate baseToTo) {
+        if (baseToFrom == null || baseToTo == null)
+            return null;
+
+        // the constructor insists on an exact 1 for these
+        if (from.equals(to))
+            return new ExchangeRate(date, from, to, 1d);
+
+        return new ExchangeRate(date, from, to,
+                baseToTo.getRate() / baseToFrom.getRate());
     }
 
     /**
@@ -183,19 +467,30 @@ public class ExchangeRateFactory {
      */
     public ExchangeRate getMostRecent(Currency from, Currency to) {
         retrieveExchangeRates();
-        return exchangeRates.stream()
-                .filter(er -> Objects.equals(from, er.getFrom())
-                        && Objects.equals(to, er.getTo()))
-                .max(Comparator.comparing(ExchangeRate::getDate))
-                .orElse(null);
+        ExchangeRateIndex exchangeRates = snapshot.exchangeRates();
+        ExchangeRate result = exchangeRates.last(from, to);
+
+        if (result != null || !crossRatesOnDemand)
+            return result;
+
+        ExchangeRate baseToFrom = exchangeRates.last(base, from);
+        ExchangeRate baseToTo = exchangeRates.last(base, to);
+        if (baseToFrom == null || baseToTo == null)
+            return null;
+
+        // the cross rate is only as recent as its oldest leg
+        return cross(min(baseToFrom.getDate(), baseToTo.getDate()), from, to,
+                baseToFrom, baseToTo);
     }
 
     /**
      * Gets the {@link ExchangeRate} specified by the parameters. Returns {@code
      * null} if no {@code ExchangeRate} was found. Only considers already loaded
      * {@code ExchangeRate}s. If no {@code ExchangeRate} is found for the
-     * specific date, it will return the closest {@code ExchangeRate} to that
-     * date.
+     * specific date, it will return the latest {@code ExchangeRate} before
+     * that date, or else the earliest one after it. Rates that are further
+     * away than the {@link ExchangeRateFactory#setMaxStaleness(Period) maximum
+     * staleness} are not returned.
      *
      * @param   date
      *          The date on which the exchange rate was retrieved.
@@ -210,23 +505,132 @@ public class ExchangeRateFactory {
      *          it is not found.
      */
     public ExchangeRate getClosest(LocalDate date, Currency from, Currency to) {
-        // readability is optional
-        return exchangeRates.stream()
-            .filter(er -> Objects.equals(from, er.getFrom())
-                        && Objects.equals(to, er.getTo()))
-            .filter(er -> er.getDate().equals(date))
-            .findFirst().orElse(
-                exchangeRates.stream()
-                    .filter(er -> Objects.equals(from, er.getFrom())
-                        && Objects.equals(to, er.getTo()))
-                    .filter(er -> er.getDate().isBefore(date))
-                    .max(Comparator.comparing(ExchangeRate::getDate))
-                    .orElse(exchangeRates.stream()
-                         .filter(er -> Objects.equals(from, er.getFrom())
-                             && Objects.equals(to, er.getTo()))
-                         .filter(er -> er.getDate().isAfter(date))
-                         .min(Comparator.comparing(ExchangeRate::getDate))
-                         .orElse(null)));
+        Snapshot current = snapshot;
+        ExchangeRate result = getClosest(date, from, to, maxStaleness);
+        if (result == null || !result.getDate().equals(date)) {
+            fallbackDates.add(date);
+            // the day may have been published before it was recorded
+            if (snapshot != current)
+                version.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Gets the closest {@link ExchangeRate} within a maximum distance. Each
+     * lookup is a single floor or ceiling search in the rates of one pair.
+     *
+     * @param   date
+     *          The date on which the exchange rate was retrieved.
+     * @param   from
+     *          The base currency in the exchange rate.
+     * @param   to
+     *          The converted currency in the exchange rate.
+     * @param   maxStaleness
+     *          The maximum distance between {@code date} and the date of the
+     *          result, {@code null} if there is none.
+     *
+     * @return  The corresponding {@code ExchangeRate} object or {@code null} if
+     *          it is not found.
+     */
+    private ExchangeRate getClosest(LocalDate date, Currency from, Currency to,
+                                    Period maxStaleness) {
+        ExchangeRateIndex exchangeRates = snapshot.exchangeRates();
+        LocalDate earliest = maxStaleness == null ? LocalDate.MIN
+                : date.minus(maxStaleness);
+        LocalDate latest = maxStaleness == null ? LocalDate.MAX
+                : date.plus(maxStaleness);
+        ExchangeRate result = getClosestStored(exchangeRates, date, from, to,
+                earliest, latest);
+
+        if (result != null || !crossRatesOnDemand)
+            return result;
+
+        ExchangeRate baseToFrom = getClosestStored(exchangeRates, date, base,
+                from, earliest, latest);
+        ExchangeRate baseToTo = getClosestStored(exchangeRates, date, base, to,
+                earliest, latest);
+        if (baseToFrom == null || baseToTo == null)
+            return null;
+
+        // the cross rate is only as close as its furthest leg
+        LocalDate furthest = distance(date, baseToFrom.getDate())
+                > distance(date, baseToTo.getDate()) ? baseToFrom.getDate()
+                : baseToTo.getDate();
+        return cross(furthest, from, to, baseToFrom, baseToTo);
+    }
+
+    private static ExchangeRate getClosestStored(
+            ExchangeRateIndex exchangeRates, LocalDate date, Currency from,
+            Currency to, LocalDate earliest, LocalDate latest) {
+        // the exact date or else the latest date before it
+        ExchangeRate result = exchangeRates.floor(date, from, to);
+        if (result != null && !result.getDate().isBefore(earliest))
+            return result;
+
+        // or else the earliest date after it
+        result = exchangeRates.higher(date, from, to);
+        if (result != null && !result.getDate().isAfter(latest))
+            return result;
+        return null;
+    }
+
+    /**
+     * Gets the maximum distance between the date of a lookup and the date of
+     * the rate returned by {@link ExchangeRateFactory#getClosest(LocalDate,
+     * Currency, Currency)}.
+     *
+     * @return  The maximum staleness, {@code null} if there is none.
+     */
+    public Period getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    /**
+     * Sets the maximum distance between the date of a lookup and the date of
+     * the rate returned by {@link ExchangeRateFactory#getClosest(LocalDate,
+     * Currency, Currency)}, such that conversions fail rather than silently
+     * use a rate that is too old. Rates of currencies that are no longer
+     * published are still derived from their last known rate, however old.
+     *
+     * @param   maxStaleness
+     *          The maximum staleness, {@code null} if there is none (the
+     *          default).
+     *
+     * @throws  IllegalArgumentException
+     *          If {@code maxStaleness} is negative.
+     */
+    public void setMaxStaleness(Period maxStaleness) {
+        if (maxStaleness != null && maxStaleness.isNegative())
+            throw new IllegalArgumentException("maxStaleness is negative");
+        this.maxStaleness = maxStaleness;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Gets a number that changes whenever the rates of a day that was already
+     * loaded change or the {@link ExchangeRateFactory#setMaxStaleness(Period)
+     * maximum staleness} is changed, so results derived from earlier lookups
+     * can tell whether they are still up to date. Loading new days doesn't
+     * change it, so results should be derived after the days they need are
+     * {@link ExchangeRateFactory#retrieveExchangeRates(Collection) retrieved},
+     * unless a lookup already fell back to the {@link
+     * ExchangeRateFactory#getClosest(LocalDate, Currency, Currency) closest}
+     * rate of another day for that day, for example because the api was
+     * unavailable.
+     *
+     * @return  The current version of the known rates.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    private static long distance(LocalDate a, LocalDate b) {
+        return Math.abs(a.toEpochDay() - b.toEpochDay());
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
     }
 
     /**
@@ -239,115 +643,191 @@ public class ExchangeRateFactory {
      * @return  Whether {@code exchangeRate} is present.
      */
     public boolean hasExchangeRate(ExchangeRate exchangeRate) {
-        return exchangeRates.contains(exchangeRate);
+        return snapshot.exchangeRates().contains(exchangeRate);
     }
 
-    private static final Pattern FILE_PATTERN =
-            Pattern.compile("^(?<date>[0-9]{4}-(?>0[1-9]|1[012])-" +
-                    "(?>0[1-9]|[12][0-9]|3[01]))\\." +
-                    "(?<from>[A-Z]{3})\\.(?<to>[A-Z]{3})\\.txt$");
-
     /**
      * Loads all {@code ExchangeRate} objects into memory from the {@link
-     * ExchangeRateFactory#directory}.
+     * ExchangeRateFactory#store}. Days that cannot be read are skipped.
      *
      * @throws  IOException
-     *          If an IO error occurred.
+     *          If an IO error occurred while listing the stored days.
      */
     public void loadAll() throws IOException {
-        try (DirectoryStream<Path> stream =
-                     Files.newDirectoryStream(directory.toPath())) {
-            // this is a bad idea as this doesn't scale well, as the space
-            // complexity is O(c²d), with c = amount of currencies and d =
-            // amount of days, but then they should've let us use the database
-            // (and for this small project it doesn't really matter anyway).
-            for (Path file : stream) {
-                Matcher matcher = FILE_PATTERN.matcher(
-                        file.getFileName().toString()
-                );
-                if (matcher.matches()) {
-                    try {
-                        ExchangeRate result = read(
-                                LocalDate.parse(matcher.group("date")),
-                                Currency.getInstance(matcher.group("from")),
-                                Currency.getInstance(matcher.group("to"))
-                        );
-                        // remove to update any old exchange rates
-                        exchangeRates.remove(result);
-                        exchangeRates.add(result);
-                        knownCurrencies.add(result.getFrom());
-                        knownCurrencies.add(result.getTo());
-                    } catch (Exception e) {
-                        // do nothing, as invalid files are invalid and you cant
-                        // make them be any more valid than that :)
-
-                        // tho print it to save a future dev debugging this
-                        // 5 minutes of his/her time
-                        e.printStackTrace();
-                    }
-                }
+        if (store == null)
+            return;
+
+        // days that can't be read are printed and skipped by load
+        for (LocalDate date : store.getDates())
+            load(date);
+    }
+
+    /**
+     * Prepares this factory for lazy loading: only the known currencies are
+     * read from the {@link ExchangeRateFactory#store}, the rates of a day are
+     * read the first time that day is requested. How long this takes depends
+     * on the store, a {@link DatabaseExchangeRateStore} only queries the
+     * distinct currencies.
+     *
+     * @throws  IOException
+     *          If an IO error occurred.
+     */
+    public void open() throws IOException {
+        if (store == null)
+            return;
+
+        publish(List.of(), store.getCurrencies());
+    }
+
+    /**
+     * Opens this factory, {@link ExchangeRateFactory#refresh() refreshes}
+     * today's rates and loads all days of the {@link
+     * ExchangeRateFactory#store} on a background thread, the most recent days
+     * first as those are the most likely to be requested. Lookups don't wait
+     * for it: a day that hasn't been loaded yet is loaded by the lookup that
+     * needs it. Days that cannot be read are skipped. Calling this more than
+     * once returns the load that was already started.
+     *
+     * @return  A future that completes when all days are loaded, or
+     *          completes exceptionally if the stored days couldn't be listed.
+     */
+    public synchronized CompletableFuture<Void> loadInBackground() {
+        if (loading != null)
+            return loading;
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        loading = result;
+
+        Thread thread = new Thread(() -> {
+            try {
+                open();
+                refresh();
+                if (store != null)
+                    loadBatched(store.getDates().descendingSet());
+                result.complete(null);
+            } catch (Exception e) {
+                // lookups still load their days on demand
+                e.printStackTrace();
+                result.completeExceptionally(e);
+            }
+        }, "exchange-rate-loader");
+        thread.setDaemon(true);
+        thread.start();
+
+        return result;
+    }
+
+    /**
+     * Checks whether the background load started by {@link
+     * ExchangeRateFactory#loadInBackground()} has finished successfully.
+     *
+     * @return  Whether all stored days are loaded.
+     */
+    public boolean isReady() {
+        CompletableFuture<Void> current = loading;
+        return current != null && current.isDone()
+                && !current.isCompletedExceptionally();
+    }
+
+    /**
+     * Loads the days that aren't loaded yet, reading and publishing them in
+     * batches of {@link ExchangeRateFactory#LOAD_BATCH_SIZE} days. Days that
+     * cannot be read are skipped.
+     *
+     * @param   dates
+     *          The days to load, in the order they should become available.
+     */
+    private void loadBatched(Collection<LocalDate> dates) {
+        List<LocalDate> batch = new ArrayList<>();
+
+        for (LocalDate date : dates) {
+            if (hasDate(date))
+                continue;
+
+            batch.add(date);
+            if (batch.size() == LOAD_BATCH_SIZE) {
+                loadBatch(batch);
+                batch.clear();
             }
         }
+        loadBatch(batch);
     }
 
     /**
-     * Loads an {@code ExchangeRate} object from the corresponding file in the
-     * {@link ExchangeRateFactory#directory}. Returns {@code null} if
-     * for any reason the {@code ExchangeRate} couldn't be fetched from that
-     * file.
+     * Reads a batch of days from the {@link ExchangeRateFactory#store} at
+     * once and publishes them. If the batch cannot be read, its days are
+     * loaded one by one, skipping the ones that cannot be read.
      *
-     * @param   date
-     *          The date on which the exchange rate was originally retrieved.
-     * @param   from
-     *          The base currency in the exchange rate as a {@link Currency}
-     *          object.
-     * @param   to
-     *          The converted currency in the exchange rate as a {@code
-     *          Currency} object.
+     * @param   dates
+     *          The days to load.
+     */
+    private void loadBatch(List<LocalDate> dates) {
+        if (dates.isEmpty())
+            return;
+
+        Collection<ExchangeRate> exchangeRates;
+        try {
+            exchangeRates = store.read(dates);
+        } catch (IOException e) {
+            for (LocalDate date : dates)
+                load(date);
+            return;
+        }
+        publishMissing(exchangeRates);
+    }
+
+    /**
+     * Loads the {@code ExchangeRate} objects of a single day into memory from
+     * the {@link ExchangeRateFactory#store}.
      *
-     * @return  A {@code ExchangeRate} object or {@code null}.
+     * @param   date
+     *          The day to load.
      *
-     * @throws  FileNotFoundException
-     *          If the file in which the exchange rates was expected was not
-     *          found.
+     * @return  Whether any {@code ExchangeRate} was found for that day.
      */
-    public ExchangeRate read(LocalDate date, Currency from, Currency to)
-            throws FileNotFoundException {
-        try (Scanner reader = new Scanner(
-                new File(directory, generateFileName(date, to, from))
-        )) {
-            return new ExchangeRate(date, to, from,
-                    Double.parseDouble(reader.nextLine()));
+    private boolean load(LocalDate date) {
+        if (store == null)
+            return false;
+
+        try {
+            // read outside the lock, the store may be slow
+            Collection<ExchangeRate> result = store.read(date);
+            publishMissing(result);
+            return !result.isEmpty();
+        } catch (IOException e) {
+            // fall back to the api
+            e.printStackTrace();
+            return false;
         }
     }
 
     /**
-     * Saves a {@link ExchangeRate} object to the corresponding file in the
-     * directory {@link ExchangeRateFactory#directory}.
+     * Saves all {@link ExchangeRate} objects of a day to the {@link
+     * ExchangeRateFactory#store} as a single table.
      *
-     * @param   exchangeRate
-     *          The {@code ExchangeRate} object to save.
+     * @param   date
+     *          The day to save.
      *
      * @throws  IOException
      *          If an IO error occurs.
      */
-    public void write(ExchangeRate exchangeRate) throws IOException {
-        Objects.requireNonNull(exchangeRate, "exchangeRate is null");
-        try (FileWriter writer = new FileWriter(
-                new File(directory, generateFileName(exchangeRate))
-        )) {
-            writer.write(Double.toString(exchangeRate.getRate()));
-        }
+    public void write(LocalDate date) throws IOException {
+        Objects.requireNonNull(date, "date is null");
+        if (store != null)
+            store.write(date, snapshot.exchangeRates().onDate(date));
     }
 
     /**
      * Generates new {@code ExchangeRate} objects based on the new api data
-     * and saves them in the directory {@link ExchangeRateFactory#directory}.
+     * and saves them in the {@link ExchangeRateFactory#store}.
      * The rates should be specified in the form <i>"1 base currency unit = x
      * other currency units"</i>. If a currency was removed from the api it will
      * make up for this by using the last known exchange rate for that currency.
      * So, preferably, <em><strong>call this method after a call to {@link
-     * ExchangeRateFactory#loadAll()}.</strong></em>
+     * ExchangeRateFactory#loadAll()}.</strong></em> If cross rates are derived
+     * on demand, only the rates from {@code base} are generated, so {@code
+     * base} should then be the base currency of the {@link ExchangeRateAPI}.
+     * The rates of the day become visible to lookups all at once.
      *
      * @param   base
      *          The base currency on which all values are based.
@@ -357,28 +837,28 @@ public class ExchangeRateFactory {
      * @param   date
      *          The date of the exchange rates.
      */
-    public void generateExchangeRates(Currency base,
+    public synchronized void generateExchangeRates(Currency base,
                                              Map<Currency, Double> rates,
                                              LocalDate date) {
         Objects.requireNonNull(base, "base is null");
         Objects.requireNonNull(rates, "rates is null");
 
+        Set<Currency> knownCurrencies =
+                new HashSet<>(snapshot.knownCurrencies());
         knownCurrencies.add(base);
         knownCurrencies.addAll(rates.keySet());
 
         // simplify the algorithm
         rates.put(base, 1.0);
 
-        for (Currency from : knownCurrencies) {
+        Collection<Currency> sources =
+                crossRatesOnDemand ? List.of(base) : knownCurrencies;
+
+        List<ExchangeRate> results = new ArrayList<>();
+        for (Currency from : sources) {
             for (Currency to : knownCurrencies) {
                 try {
-                    ExchangeRate result =
-                            generate(base, rates, from, to, date);
-
-                    // remove to update any old exchange rates
-                    exchangeRates.remove(result);
-                    exchangeRates.add(result);
-                    write(result);
+                    results.add(generate(base, rates, from, to, date));
                 } catch (Exception e) {
                     // let errors pass silently to not obstruct the rest of the
                     // program (they're probably fine if ignored, but print them
@@ -387,12 +867,22 @@ public class ExchangeRateFactory {
                 }
             }
         }
+
+        // replaces any old exchange rates
+        publish(results, knownCurrencies);
+
+        try {
+            write(date);
+        } catch (IOException e) {
+            // the rates are still usable from memory
+            e.printStackTrace();
+        }
     }
 
     /**
      * Generates new {@code ExchangeRate} objects based on the new api data
-     * (which should be from today) and saves them in the directory {@link
-     * ExchangeRateFactory#directory}. The rates should be specified in the
+     * (which should be from today) and saves them in the {@link
+     * ExchangeRateFactory#store}. The rates should be specified in the
      * form <i>"1 base currency unit = x other currency units"</i>. If a
      * currency was removed from the api it will make up for this by using the
      * last known exchange rate for that currency. So, preferably, <em><strong>
@@ -410,24 +900,379 @@ public class ExchangeRateFactory {
         generateExchangeRates(base, rates, LocalDate.now());
     }
 
+    /**
+     * Replaces the {@link ExchangeRateFactory#snapshot} by one that also
+     * contains {@code exchangeRates} and {@code currencies}. The cross rates
+     * are only dropped if any rate was added, as they might have been derived
+     * from an older version of it.
+     *
+     * @param   exchangeRates
+     *          The {@code ExchangeRates} to add, replacing equal ones.
+     * @param   currencies
+     *          The {@code Currencies} to add.
+     */
+    private synchronized void publish(Collection<ExchangeRate> exchangeRates,
+                                      Collection<Currency> currencies) {
+        Snapshot current = snapshot;
+
+        Set<Currency> knownCurrencies = current.knownCurrencies();
+        if (!knownCurrencies.containsAll(currencies)) {
+            Set<Currency> union = new HashSet<>(knownCurrencies);
+            union.addAll(currencies);
+            knownCurrencies = Set.copyOf(union);
+        }
+
+        snapshot = exchangeRates.isEmpty()
+                ? new Snapshot(current.exchangeRates(), knownCurrencies,
+                        current.crossRates())
+                : new Snapshot(current.exchangeRates().with(exchangeRates),
+                        knownCurrencies, new ConcurrentHashMap<>());
+        boolean resolved = resolvesFallbacks(exchangeRates);
+        if (resolved || changesLoadedDays(current.exchangeRates(),
+                exchangeRates))
+            version.incrementAndGet();
+    }
+
+    /**
+     * Forgets the {@link ExchangeRateFactory#fallbackDates} that are added.
+     *
+     * @param   exchangeRates
+     *          The rates that are added.
+     *
+     * @return  Whether a lookup fell back to another day for any of the days
+     *          that are added.
+     */
+    private boolean resolvesFallbacks(Collection<ExchangeRate> exchangeRates) {
+        if (fallbackDates.isEmpty())
+            return false;
+
+        boolean result = false;
+        for (ExchangeRate exchangeRate : exchangeRates)
+            result |= fallbackDates.remove(exchangeRate.getDate());
+        return result;
+    }
+
+    /**
+     * Checks whether adding rates changes a day that was already loaded,
+     * either by changing one of its rates or by adding a pair to it. Days
+     * that are new only change lookups of days that weren't loaded, and
+     * those are retrieved before anything is converted on them.
+     *
+     * @param   index
+     *          The rates that were known before.
+     * @param   exchangeRates
+     *          The rates that are added.
+     *
+     * @return  Whether any loaded day changes.
+     */
+    private static boolean changesLoadedDays(
+            ExchangeRateIndex index, Collection<ExchangeRate> exchangeRates) {
+        for (ExchangeRate exchangeRate : exchangeRates) {
+            if (!index.hasDate(exchangeRate.getDate()))
+                continue;
+
+            ExchangeRate old = index.get(exchangeRate.getDate(),
+                    exchangeRate.getFrom(), exchangeRate.getTo());
+            if (old == null || old.getRate() != exchangeRate.getRate())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds the {@link ExchangeRate ExchangeRates} that aren't known yet, as
+     * rates that are already loaded may be newer than the stored ones.
+     *
+     * @param   exchangeRates
+     *          The {@code ExchangeRates} to add.
+     */
+    private synchronized void publishMissing(
+            Collection<ExchangeRate> exchangeRates) {
+        ExchangeRateIndex index = snapshot.exchangeRates();
+        List<ExchangeRate> missing = new ArrayList<>();
+        Set<Currency> currencies = new HashSet<>();
+
+        for (ExchangeRate exchangeRate : exchangeRates) {
+            if (!index.contains(exchangeRate))
+                missing.add(exchangeRate);
+            currencies.add(exchangeRate.getFrom());
+            currencies.add(exchangeRate.getTo());
+        }
+        publish(missing, currencies);
+    }
+
     private boolean hasDate(LocalDate date) {
-        return exchangeRates.stream()
-                .anyMatch(er -> Objects.equals(date, er.getDate()));
+        return snapshot.exchangeRates().hasDate(date);
     }
 
     /**
      * Retrieves the exchange rates for a specific date. If the exchange rates
-     * for that date are already loaded, it will do nothing.
+     * for that date are already loaded, it will do nothing. If they are saved
+     * in the {@link ExchangeRateFactory#store}, they are loaded from there,
+     * otherwise they are requested from the {@link ExchangeRateAPI}. The api
+     * is called without holding the lock of this factory, so lookups of other
+     * days aren't held up by it. Concurrent calls for the same day share a
+     * single fetch: one of them reads the store or calls the api, the others
+     * wait for it and don't fetch again even if it found nothing.
      *
      * @param   date
      *          The date for which to retrieve the exchange rates.
      */
     public void retrieveExchangeRates(LocalDate date) {
-        if (hasDate(date) || api == null)
+        if (hasDate(date))
+            return;
+
+        // only one caller fetches a day, the others wait for it to finish
+        CompletableFuture<Void> fetch = new CompletableFuture<>();
+        CompletableFuture<Void> running = fetches.putIfAbsent(date, fetch);
+        if (running != null) {
+            running.join();
+            return;
+        }
+
+        try {
+            // a previous fetch may have finished in the meantime
+            if (hasDate(date) || load(date) || api == null)
+                return;
+
+            request(() -> api.getExchangeRates(date)).ifPresent(rates ->
+                    generateExchangeRates(api.getBase(), rates, date));
+        } finally {
+            fetches.remove(date, fetch);
+            fetch.complete(null);
+        }
+    }
+
+    /**
+     * Retrieves the exchange rates for all days in a range. Days that are
+     * already loaded or saved in the {@link ExchangeRateFactory#store} are
+     * skipped, the other days are requested from the {@link ExchangeRateAPI}
+     * in as few range requests as possible, one per run of days that are at
+     * most {@link ExchangeRateFactory#MAX_RANGE_GAP} days apart and span at
+     * most {@link ExchangeRateFactory#MAX_RANGE_DAYS} days. Days that
+     * are already being fetched by another caller are waited for instead of
+     * requested again. A day on which no rates were published (weekends
+     * and holidays) gets the rates of the last day before it that has rates,
+     * just like the api does when such a day is requested on its own.
+     *
+     * @param   start
+     *          The first day of the range.
+     * @param   end
+     *          The last day of the range (inclusive). Days after today are
+     *          ignored.
+     *
+     * @return  The amount of days that were added from the api.
+     */
+    public int retrieveExchangeRates(LocalDate start, LocalDate end) {
+        Objects.requireNonNull(start, "start is null");
+        Objects.requireNonNull(end, "end is null");
+
+        TreeSet<LocalDate> dates = new TreeSet<>();
+        for (LocalDate date = start; !date.isAfter(end);
+             date = date.plusDays(1))
+            dates.add(date);
+        return retrieveMissing(dates);
+    }
+
+    /**
+     * Retrieves the exchange rates for a number of days, such as all days on
+     * which the transactions of an event took place. Like {@link
+     * ExchangeRateFactory#retrieveExchangeRates(LocalDate, LocalDate)}, the
+     * days that are missing are requested from the {@link ExchangeRateAPI}
+     * in as few range requests as possible, but only the specified days are
+     * added.
+     *
+     * @param   dates
+     *          The days to retrieve. Days after today are ignored.
+     *
+     * @return  The amount of days that were added from the api.
+     */
+    public int retrieveExchangeRates(Collection<LocalDate> dates) {
+        Objects.requireNonNull(dates, "dates is null");
+        return retrieveMissing(new TreeSet<>(dates));
+    }
+
+    private int retrieveMissing(NavigableSet<LocalDate> dates) {
+        List<LocalDate> missing = new ArrayList<>(
+                dates.headSet(LocalDate.now(), true));
+        // read the stored days in batches instead of querying them one by one
+        if (store != null)
+            loadBatched(missing);
+        missing.removeIf(this::hasDate);
+        if (api == null)
+            return 0;
+
+        int added = 0;
+        for (List<LocalDate> run : runs(missing))
+            added += fetchShared(run);
+        return added;
+    }
+
+    /**
+     * Splits sorted days into runs in which consecutive days are at most
+     * {@link ExchangeRateFactory#MAX_RANGE_GAP} days apart, and which span
+     * at most {@link ExchangeRateFactory#MAX_RANGE_DAYS} days.
+     *
+     * @param   dates
+     *          The days, sorted by date.
+     *
+     * @return  The runs, in order.
+     */
+    private static List<List<LocalDate>> runs(List<LocalDate> dates) {
+        List<List<LocalDate>> runs = new ArrayList<>();
+        List<LocalDate> run = null;
+        for (LocalDate date : dates) {
+            if (run == null || ChronoUnit.DAYS.between(run.get(run.size() - 1),
+                    date) > MAX_RANGE_GAP || ChronoUnit.DAYS.between(
+                    run.get(0), date) >= MAX_RANGE_DAYS) {
+                run = new ArrayList<>();
+                runs.add(run);
+            }
+            run.add(date);
+        }
+        return runs;
+    }
+
+    /**
+     * Fetches a run of missing days in a single range request, sharing the
+     * fetch with concurrent callers like {@link
+     * ExchangeRateFactory#retrieveExchangeRates(LocalDate)} does. The days of
+     * the run that another caller is already fetching are left out of the
+     * request and waited for afterward.
+     *
+     * @param   run
+     *          The days to fetch, sorted by date.
+     *
+     * @return  The amount of days that were added by this call.
+     */
+    private int fetchShared(List<LocalDate> run) {
+        CompletableFuture<Void> fetch = new CompletableFuture<>();
+        List<CompletableFuture<Void>> running = new ArrayList<>();
+        List<LocalDate> registered = register(run, fetch, running);
+
+        int added = 0;
+        try {
+            // a previous fetch may have finished in the meantime
+            List<LocalDate> missing = new ArrayList<>(registered);
+            missing.removeIf(this::hasDate);
+            if (!missing.isEmpty())
+                added = fetchRange(missing);
+        } finally {
+            for (LocalDate date : registered)
+                fetches.remove(date, fetch);
+            fetch.complete(null);
+        }
+
+        // only wait for the others once the own days are done, such that two
+        // overlapping runs can't wait for each other
+        for (CompletableFuture<Void> other : running)
+            other.join();
+        return added;
+    }
+
+    /**
+     * Registers a fetch for each day that isn't being fetched yet.
+     *
+     * @param   dates
+     *          The days to fetch.
+     * @param   fetch
+     *          The future that completes when the fetch is done.
+     * @param   running
+     *          Receives the futures of the days that are already being
+     *          fetched.
+     *
+     * @return  The days the fetch was registered for.
+     */
+    private List<LocalDate> register(List<LocalDate> dates,
+                                     CompletableFuture<Void> fetch,
+                                     List<CompletableFuture<Void>> running) {
+        List<LocalDate> registered = new ArrayList<>();
+        for (LocalDate date : dates) {
+            CompletableFuture<Void> other = fetches.putIfAbsent(date, fetch);
+            if (other == null)
+                registered.add(date);
+            else
+                running.add(other);
+        }
+        return registered;
+    }
+
+    /**
+     * Requests the exchange rates of a number of days from the {@link
+     * ExchangeRateAPI} in a single range request, from a bit before the first
+     * day up to the last one. A day on which no rates were published gets the
+     * rates of the last day before it that has rates, as long as that day is
+     * at most {@link ExchangeRateFactory#MAX_DAYS_WITHOUT_RATES} days before
+     * it. Days without such rates, which the api may have left out of a long
+     * range, stay missing rather than being saved with older rates.
+     *
+     * @param   missing
+     *          The days to add, sorted by date.
+     *
+     * @return  The amount of days that were added.
+     */
+    private int fetchRange(List<LocalDate> missing) {
+        // start a bit earlier, such that a range starting on a weekend or
+        // holiday has rates to fall back on
+        LocalDate first = missing.get(0);
+        LocalDate last = missing.get(missing.size() - 1);
+        Optional<NavigableMap<LocalDate, Map<Currency, Double>>> result =
+                request(() -> api.getExchangeRates(
+                        first.minusDays(MAX_DAYS_WITHOUT_RATES), last));
+        if (result.isEmpty())
+            return 0;
+
+        int added = 0;
+        for (LocalDate date : missing) {
+            Map.Entry<LocalDate, Map<Currency, Double>> rates =
+                    result.get().floorEntry(date);
+            if (rates != null && !rates.getKey().isBefore(
+                    date.minusDays(MAX_DAYS_WITHOUT_RATES))) {
+                // generateExchangeRates modifies the map
+                generateExchangeRates(api.getBase(),
+                        new HashMap<>(rates.getValue()), date);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Requests today's exchange rates from the {@link ExchangeRateAPI}, even if
+     * rates for today are already loaded, as those may have been requested
+     * before the new rates were published. Also picks up currencies that were
+     * added to the api. Does nothing if there is no api.
+     */
+    public void refresh() {
+        if (api == null)
             return;
 
-        api.getExchangeRates(date).ifPresent(rates ->
-                generateExchangeRates(api.getBase(), rates, date));
+        LocalDate today = LocalDate.now();
+        request(() -> api.getExchangeRates(today)).ifPresent(rates ->
+                generateExchangeRates(api.getBase(), rates, today));
+    }
+
+    /**
+     * Makes a request to the {@link ExchangeRateAPI}, treating an api that is
+     * unavailable like one without rates, such that lookups fall back to the
+     * closest known rate.
+     *
+     * @param   request
+     *          The request to make.
+     *
+     * @return  The result of the request, or an empty {@link Optional} if the
+     *          api was unavailable.
+     *
+     * @param   <T>
+     *          The type of the result.
+     */
+    private static <T> Optional<T> request(Supplier<Optional<T>> request) {
+        try {
+            return request.get();
+        } catch (ExchangeRateAPI.UnavailableException e) {
+            e.printStackTrace();
+            return Optional.empty();
+        }
     }
 
     /**
@@ -456,9 +1301,27 @@ public class ExchangeRateFactory {
      */
     public void addExchangeRate(ExchangeRate exchangeRate) {
         Objects.requireNonNull(exchangeRate, "exchangeRate is null");
-        exchangeRates.add(exchangeRate);
-        knownCurrencies.add(exchangeRate.getFrom());
-        knownCurrencies.add(exchangeRate.getTo());
+        addExchangeRates(List.of(exchangeRate));
+    }
+
+    /**
+     * Adds {@link ExchangeRate} objects to this factory at once. <em><strong>
+     * SHOULD ONLY BE USED FOR TESTING.</strong></em> Use {@link
+     * ExchangeRateFactory#generateExchangeRates(Currency, Map)} for
+     * non-testing adding of exchange rates.
+     *
+     * @param   exchangeRates
+     *          The {@code ExchangeRates} to add.
+     */
+    public void addExchangeRates(Collection<ExchangeRate> exchangeRates) {
+        Objects.requireNonNull(exchangeRates, "exchangeRates is null");
+
+        Set<Currency> currencies = new HashSet<>();
+        for (ExchangeRate exchangeRate : exchangeRates) {
+            currencies.add(exchangeRate.getFrom());
+            currencies.add(exchangeRate.getTo());
+        }
+        publish(exchangeRates, currencies);
     }
 
     /**
@@ -498,43 +1361,17 @@ public class ExchangeRateFactory {
         // most descriptive one)
         if (rates.containsKey(from) && !rates.containsKey(to))
             return new ExchangeRate(date, from, to,
-                    getClosest(date, base, to).getRate() / rates.get(from));
+                    getClosest(date, base, to, null).getRate()
+                            / rates.get(from));
 
         if (!rates.containsKey(from) && rates.containsKey(to))
             return new ExchangeRate(date, from, to,
-                    rates.get(to) / getClosest(date, base, from).getRate());
+                    rates.get(to)
+                            / getClosest(date, base, from, null).getRate());
 
         // will throw NullPointerException if no rate between the
         // problematic currencies can be found
         return new ExchangeRate(date, from, to,
-                getClosest(date, from, to).getRate());
-    }
-
-    /**
-     * Generates a file name based upon the provided {@link ExchangeRate}.
-     * <em><strong>SHOULD ONLY BE USED INTERNALLY AND IN UNIT TESTS!</strong>
-     * </em>
-     *
-     * @param   exchangeRate
-     *          The provided {@code ExchangeRate}.
-     *
-     * @return  The resulting file name.
-     */
-    static String generateFileName(ExchangeRate exchangeRate) {
-        Objects.requireNonNull(exchangeRate, "exchangeRate is null");
-        return generateFileName(exchangeRate.getDate(), exchangeRate.getFrom(),
-                exchangeRate.getTo());
-    }
-
-    /**
-     * Generates a file name based upon the provided parameters.
-     * <em><strong>SHOULD ONLY BE USED INTERNALLY AND IN UNIT TESTS!</strong>
-     * </em>
-     *
-     * @return  The resulting file name.
-     */
-    static String generateFileName(LocalDate date, Currency from,
-                                           Currency to) {
-        return date + "." + from + "." + to + ".txt";
+                getClosest(date, from, to, null).getRate());
     }
 }
@@ -0,0 +1,381 @@
+package server.financial;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keyed in-memory store of {@link ExchangeRate ExchangeRates}. Exact lookups
+ * go through a hash table per day, while lookups that need an ordering on the
+ * date (closest, most recent) go through a date-sorted map per currency pair.
+ * <br/>
+ * An index is immutable, adding rates creates a new index that shares the
+ * years, days and pairs that didn't change. It can therefore be read by any
+ * number of threads without locking. Both maps are split by year, so adding
+ * the rates of a day copies the maps of its year but not the whole history.
+ */
+final class ExchangeRateIndex {
+
+    /**
+     * The index without any {@link ExchangeRate ExchangeRates}.
+     */
+    static final ExchangeRateIndex EMPTY =
+            new ExchangeRateIndex(new HashMap<>(), new HashMap<>());
+
+    /**
+     * Key of the per-pair index.
+     *
+     * @param   from
+     *          The base currency of the pair.
+     * @param   to
+     *          The converted currency of the pair.
+     */
+    private record CurrencyPair(Currency from, Currency to) {
+    }
+
+    // never modified after construction, the days and the rates of a pair are
+    // grouped by year
+    private final HashMap<Integer,
+            HashMap<LocalDate, HashMap<CurrencyPair, ExchangeRate>>> byDate;
+    private final HashMap<CurrencyPair,
+            TreeMap<Integer, TreeMap<LocalDate, ExchangeRate>>> byPair;
+
+    private ExchangeRateIndex(
+            HashMap<Integer, HashMap<LocalDate,
+                    HashMap<CurrencyPair, ExchangeRate>>> byDate,
+            HashMap<CurrencyPair, TreeMap<Integer,
+                    TreeMap<LocalDate, ExchangeRate>>> byPair) {
+        this.byDate = byDate;
+        this.byPair = byPair;
+    }
+
+    /**
+     * Creates a new index containing the {@link ExchangeRate ExchangeRates} of
+     * this index and {@code exchangeRates}, the latter replacing any {@code
+     * ExchangeRate} that is equal to them. Only the years, days and pairs that
+     * are touched are copied, and each of them at most once, so adding many
+     * days at once is much cheaper than adding them one by one.
+     *
+     * @param   exchangeRates
+     *          The {@code ExchangeRates} to add.
+     *
+     * @return  The new index, or this index if {@code exchangeRates} is empty.
+     */
+    ExchangeRateIndex with(Collection<ExchangeRate> exchangeRates) {
+        if (exchangeRates.isEmpty())
+            return this;
+
+        HashMap<Integer, HashMap<LocalDate,
+                HashMap<CurrencyPair, ExchangeRate>>> newByDate =
+                new HashMap<>(byDate);
+        HashMap<CurrencyPair, TreeMap<Integer,
+                TreeMap<LocalDate, ExchangeRate>>> newByPair =
+                new HashMap<>(byPair);
+        // the maps that were already copied for the new index
+        Set<Object> copied = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (ExchangeRate exchangeRate : exchangeRates) {
+            putByDate(newByDate, exchangeRate, copied);
+            putByPair(newByPair, exchangeRate, copied);
+        }
+        return new ExchangeRateIndex(newByDate, newByPair);
+    }
+
+    /**
+     * Adds an {@link ExchangeRate} to the day it is on, copying the maps of its
+     * year and day that weren't copied yet.
+     *
+     * @param   byDate
+     *          The copy of the per-day index of the new index.
+     * @param   exchangeRate
+     *          The {@code ExchangeRate} to add.
+     * @param   copied
+     *          The maps that were already copied for the new index.
+     */
+    private static void putByDate(
+            HashMap<Integer, HashMap<LocalDate,
+                    HashMap<CurrencyPair, ExchangeRate>>> byDate,
+            ExchangeRate exchangeRate, Set<Object> copied) {
+        LocalDate date = exchangeRate.getDate();
+        HashMap<LocalDate, HashMap<CurrencyPair, ExchangeRate>> year =
+                copyOnWrite(byDate, date.getYear(), copied,
+                        HashMap::new, HashMap::new);
+        copyOnWrite(year, date, copied, HashMap::new, HashMap::new)
+                .put(new CurrencyPair(exchangeRate.getFrom(),
+                        exchangeRate.getTo()), exchangeRate);
+    }
+
+    /**
+     * Adds an {@link ExchangeRate} to the history of its pair, copying the maps
+     * of its pair and year that weren't copied yet.
+     *
+     * @param   byPair
+     *          The copy of the per-pair index of the new index.
+     * @param   exchangeRate
+     *          The {@code ExchangeRate} to add.
+     * @param   copied
+     *          The maps that were already copied for the new index.
+     */
+    private static void putByPair(
+            HashMap<CurrencyPair,
+                    TreeMap<Integer, TreeMap<LocalDate, ExchangeRate>>> byPair,
+            ExchangeRate exchangeRate, Set<Object> copied) {
+        LocalDate date = exchangeRate.getDate();
+        TreeMap<Integer, TreeMap<LocalDate, ExchangeRate>> years =
+                copyOnWrite(byPair, new CurrencyPair(exchangeRate.getFrom(),
+                        exchangeRate.getTo()), copied,
+                        TreeMap::new, TreeMap::new);
+        copyOnWrite(years, date.getYear(), copied, TreeMap::new, TreeMap::new)
+                .put(date, exchangeRate);
+    }
+
+    /**
+     * Gets the value of a key in a map that belongs to the new index, first
+     * replacing it by a copy, or by a new value if there is none, if that
+     * wasn't done yet. The value can then be modified without affecting the
+     * index it was copied from.
+     *
+     * @param   map
+     *          The map that belongs to the new index.
+     * @param   key
+     *          The key of the value.
+     * @param   copied
+     *          The maps that were already copied for the new index.
+     * @param   copy
+     *          Creates a shallow copy of a value.
+     * @param   empty
+     *          Creates a new value.
+     *
+     * @return  The value, which belongs to the new index.
+     *
+     * @param   <K>
+     *          The type of the keys of the map.
+     * @param   <V>
+     *          The type of the values of the map.
+     */
+    private static <K, V> V copyOnWrite(Map<K, V> map, K key,
+                                        Set<Object> copied,
+                                        UnaryOperator<V> copy,
+                                        Supplier<V> empty) {
+        V value = map.get(key);
+        if (value != null && copied.contains(value))
+            return value;
+
+        value = value == null ? empty.get() : copy.apply(value);
+        copied.add(value);
+        map.put(key, value);
+        return value;
+    }
+
+    /**
+     * Gets the {@link ExchangeRate ExchangeRates} of a day.
+     *
+     * @param   date
+     *          The day.
+     *
+     * @return  The {@code ExchangeRates} by pair, or {@code null} if the day is
+     *          not present.
+     */
+    private HashMap<CurrencyPair, ExchangeRate> day(LocalDate date) {
+        HashMap<LocalDate, HashMap<CurrencyPair, ExchangeRate>> year =
+                byDate.get(date.getYear());
+        return year == null ? null : year.get(date);
+    }
+
+    /**
+     * Gets the {@link ExchangeRate} of a specific day and pair in constant
+     * time.
+     *
+     * @param   date
+     *          The date of the exchange rate.
+     * @param   from
+     *          The base currency of the exchange rate.
+     * @param   to
+     *          The converted currency of the exchange rate.
+     *
+     * @return  The {@code ExchangeRate} or {@code null} if it is not present.
+     */
+    ExchangeRate get(LocalDate date, Currency from, Currency to) {
+        HashMap<CurrencyPair, ExchangeRate> day = day(date);
+        return day == null ? null : day.get(new CurrencyPair(from, to));
+    }
+
+    /**
+     * Checks whether an {@link ExchangeRate} equal to {@code exchangeRate} is
+     * present.
+     *
+     * @param   exchangeRate
+     *          The {@code ExchangeRate} to check.
+     *
+     * @return  Whether it is present.
+     */
+    boolean contains(ExchangeRate exchangeRate) {
+        return get(exchangeRate.getDate(), exchangeRate.getFrom(),
+                exchangeRate.getTo()) != null;
+    }
+
+    /**
+     * Checks whether any {@link ExchangeRate} of the specified day is present.
+     *
+     * @param   date
+     *          The day to check.
+     *
+     * @return  Whether the day is present.
+     */
+    boolean hasDate(LocalDate date) {
+        return day(date) != null;
+    }
+
+    /**
+     * Gets the {@link ExchangeRate} of a pair on the latest date that is on or
+     * before {@code date}.
+     *
+     * @param   date
+     *          The (inclusive) upper bound.
+     * @param   from
+     *          The base currency of the exchange rate.
+     * @param   to
+     *          The converted currency of the exchange rate.
+     *
+     * @return  The {@code ExchangeRate} or {@code null} if there is none.
+     */
+    ExchangeRate floor(LocalDate date, Currency from, Currency to) {
+        TreeMap<Integer, TreeMap<LocalDate, ExchangeRate>> years =
+                byPair.get(new CurrencyPair(from, to));
+        if (years == null)
+            return null;
+
+        TreeMap<LocalDate, ExchangeRate> year = years.get(date.getYear());
+        Map.Entry<LocalDate, ExchangeRate> entry =
+                year == null ? null : year.floorEntry(date);
+        if (entry == null) {
+            // years are never empty
+            Map.Entry<Integer, TreeMap<LocalDate, ExchangeRate>> before =
+                    years.lowerEntry(date.getYear());
+            entry = before == null ? null : before.getValue().lastEntry();
+        }
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * Gets the {@link ExchangeRate} of a pair on the earliest date that is
+     * after {@code date}.
+     *
+     * @param   date
+     *          The (exclusive) lower bound.
+     * @param   from
+     *          The base currency of the exchange rate.
+     * @param   to
+     *          The converted currency of the exchange rate.
+     *
+     * @return  The {@code ExchangeRate} or {@code null} if there is none.
+     */
+    ExchangeRate higher(LocalDate date, Currency from, Currency to) {
+        TreeMap<Integer, TreeMap<LocalDate, ExchangeRate>> years =
+                byPair.get(new CurrencyPair(from, to));
+        if (years == null)
+            return null;
+
+        TreeMap<LocalDate, ExchangeRate> year = years.get(date.getYear());
+        Map.Entry<LocalDate, ExchangeRate> entry =
+                year == null ? null : year.higherEntry(date);
+        if (entry == null) {
+            // years are never empty
+            Map.Entry<Integer, TreeMap<LocalDate, ExchangeRate>> after =
+                    years.higherEntry(date.getYear());
+            entry = after == null ? null : after.getValue().firstEntry();
+        }
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * Gets the most recent {@link ExchangeRate} of a pair.
+     *
+     * @param   from
+     *          The base currency of the exchange rate.
+     * @param   to
+     *          The converted currency of the exchange rate.
+     *
+     * @return  The {@code ExchangeRate} or {@code null} if there is none.
+     */
+    ExchangeRate last(Currency from, Currency to) {
+        TreeMap<Integer, TreeMap<LocalDate, ExchangeRate>> years =
+                byPair.get(new CurrencyPair(from, to));
+        // years are never empty
+        return years == null ? null
+                : years.lastEntry().getValue().lastEntry().getValue();
+    }
+
+    /**
+     * Gets all {@link ExchangeRate ExchangeRates} of the specified day.
+     *
+     * @param   date
+     *          The day.
+     *
+     * @return  A (possibly empty) view of the {@code ExchangeRates}.
+     */
+    Collection<ExchangeRate> onDate(LocalDate date) {
+        HashMap<CurrencyPair, ExchangeRate> day = day(date);
+        return day == null ? List.of()
+                : Collections.unmodifiableCollection(day.values());
+    }
+
+    /**
+     * Gets all {@link ExchangeRate ExchangeRates} of a pair, sorted by date.
+     *
+     * @param   from
+     *          The base currency of the exchange rates.
+     * @param   to
+     *          The converted currency of the exchange rates.
+     *
+     * @return  A new list containing the {@code ExchangeRates}.
+     */
+    List<ExchangeRate> ofPair(Currency from, Currency to) {
+        List<ExchangeRate> result = new ArrayList<>();
+        TreeMap<Integer, TreeMap<LocalDate, ExchangeRate>> years =
+                byPair.get(new CurrencyPair(from, to));
+        if (years != null) {
+            for (TreeMap<LocalDate, ExchangeRate> year : years.values())
+                result.addAll(year.values());
+        }
+        return result;
+    }
+
+    /**
+     * Gets all {@link ExchangeRate ExchangeRates} with the specified base
+     * currency.
+     *
+     * @param   from
+     *          The base currency of the exchange rates.
+     *
+     * @return  A new list containing the {@code ExchangeRates}.
+     */
+    List<ExchangeRate> from(Currency from) {
+        List<ExchangeRate> result = new ArrayList<>();
+        for (Map.Entry<CurrencyPair, TreeMap<Integer,
+                TreeMap<LocalDate, ExchangeRate>>> entry : byPair.entrySet()) {
+            if (!Objects.equals(from, entry.getKey().from()))
+                continue;
+            for (TreeMap<LocalDate, ExchangeRate> year
+                    : entry.getValue().values())
+                result.addAll(year.values());
+        }
+        return result;
+    }
+
+    /**
+     * Gets all {@link ExchangeRate ExchangeRates} in the index.
+     *
+     * @return  A new list containing all {@code ExchangeRates}.
+     */
+    List<ExchangeRate> all() {
+        List<ExchangeRate> result = new ArrayList<>();
+        for (HashMap<LocalDate, HashMap<CurrencyPair, ExchangeRate>> year
+                : byDate.values()) {
+            for (HashMap<CurrencyPair, ExchangeRate> day : year.values())
+                result.addAll(day.values());
+        }
+        return result;
+    }
+}
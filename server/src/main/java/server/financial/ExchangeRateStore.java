@@ -0,0 +1,91 @@
+package server.financial;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Persistent storage for {@link ExchangeRate ExchangeRates}. Rates are stored
+ * and read as whole tables, one table per day.
+ */
+public interface ExchangeRateStore {
+
+    /**
+     * Gets the dates for which a table of exchange rates is stored.
+     *
+     * @return  The stored dates in ascending order.
+     *
+     * @throws  IOException
+     *          If an IO error occurred.
+     */
+    NavigableSet<LocalDate> getDates() throws IOException;
+
+    /**
+     * Gets all currencies that appear in the stored exchange rates. The
+     * default implementation reads every stored table.
+     *
+     * @return  The currencies.
+     *
+     * @throws  IOException
+     *          If an IO error occurred.
+     */
+    default Set<Currency> getCurrencies() throws IOException {
+        Set<Currency> result = new HashSet<>();
+        for (LocalDate date : getDates()) {
+            for (ExchangeRate exchangeRate : read(date)) {
+                result.add(exchangeRate.getFrom());
+                result.add(exchangeRate.getTo());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the table of exchange rates of a single day.
+     *
+     * @param   date
+     *          The day to read.
+     *
+     * @return  The exchange rates of that day, empty if none are stored.
+     *
+     * @throws  IOException
+     *          If an IO error occurred.
+     */
+    Collection<ExchangeRate> read(LocalDate date) throws IOException;
+
+    /**
+     * Reads the tables of exchange rates of multiple days. The default
+     * implementation reads the days one by one, stores that can read them at
+     * once should override it.
+     *
+     * @param   dates
+     *          The days to read.
+     *
+     * @return  The exchange rates of those days.
+     *
+     * @throws  IOException
+     *          If an IO error occurred.
+     */
+    default Collection<ExchangeRate> read(Collection<LocalDate> dates)
+            throws IOException {
+        List<ExchangeRate> result = new ArrayList<>();
+        for (LocalDate date : dates)
+            result.addAll(read(date));
+        return result;
+    }
+
+    /**
+     * Writes the table of exchange rates of a single day, replacing the table
+     * that was previously stored for that day.
+     *
+     * @param   date
+     *          The day to write.
+     * @param   exchangeRates
+     *          The exchange rates of that day.
+     *
+     * @throws  IOException
+     *          If an IO error occurred.
+     */
+    void write(LocalDate date, Collection<ExchangeRate> exchangeRates)
+            throws IOException;
+}
@@ -2,25 +2,69 @@ package server.financial;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import commons.Money;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.net.*;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.*;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 public class FrankfurterExchangeRateAPI implements ExchangeRateAPI {
 
-    private final URL apiUrlLatest;
+    /**
+     * How long a whole request may take by default, from connecting until the
+     * last byte of the response is read.
+     */
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(5);
+
+    /**
+     * Shared by all instances, such that connections to the api are kept
+     * alive and reused between requests.
+     */
+    private static final HttpClient DEFAULT_CLIENT = HttpClient.newBuilder()
+            .connectTimeout(DEFAULT_TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final ObjectReader RESPONSE_READER = new ObjectMapper()
+            .readerFor(Response.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private final HttpClient client;
+
+    private final Duration timeout;
+
+    private final URI apiUrlLatest;
 
     private final String apiUrlOnDate;
 
     private final Currency base;
 
-    private final Set<LocalDate> requestedDates = new HashSet<>();
+    private final Set<LocalDate> requestedDates =
+            ConcurrentHashMap.newKeySet();
 
 
     /**
@@ -39,15 +83,68 @@ public class FrankfurterExchangeRateAPI implements ExchangeRateAPI {
      *          base currency is assumed to be EUR.
      */
     public FrankfurterExchangeRateAPI(Currency base) {
+        this(base, "https://api.frankfurter.app/");
+    }
+
+    /**
+     * Creates a new {@code FrankfurterExchangeRateAPI} object that connects to
+     * a specific instance of the api.
+     *
+     * @param   base
+     *          The base currency for the exchange rates. If {@code null}, the
+     *          base currency is assumed to be EUR.
+     * @param   url
+     *          The url of the api, ending with a slash.
+     */
+    public FrankfurterExchangeRateAPI(Currency base, String url) {
+        this(base, url, DEFAULT_CLIENT);
+    }
+
+    /**
+     * Creates a new {@code FrankfurterExchangeRateAPI} object that connects to
+     * a specific instance of the api using a specific {@link HttpClient}.
+     *
+     * @param   base
+     *          The base currency for the exchange rates. If {@code null}, the
+     *          base currency is assumed to be EUR.
+     * @param   url
+     *          The url of the api, ending with a slash.
+     * @param   client
+     *          The client to make the requests with.
+     */
+    public FrankfurterExchangeRateAPI(Currency base, String url,
+                                      HttpClient client) {
+        this(base, url, client, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Creates a new {@code FrankfurterExchangeRateAPI} object that connects to
+     * a specific instance of the api using a specific {@link HttpClient}, and
+     * gives up on requests that take longer than {@code timeout}.
+     *
+     * @param   base
+     *          The base currency for the exchange rates. If {@code null}, the
+     *          base currency is assumed to be EUR.
+     * @param   url
+     *          The url of the api, ending with a slash.
+     * @param   client
+     *          The client to make the requests with.
+     * @param   timeout
+     *          How long a whole request may take, including reading the body
+     *          of the response.
+     */
+    public FrankfurterExchangeRateAPI(Currency base, String url,
+                                      HttpClient client, Duration timeout) {
+        Objects.requireNonNull(url, "url is null");
+        this.client = Objects.requireNonNull(client, "client is null");
+        this.timeout = Objects.requireNonNull(timeout, "timeout is null");
         this.base = base == null ? Currency.getInstance("EUR") : base;
         try {
-            this.apiUrlLatest =
-                    URI.create("https://api.frankfurter.app/latest?from=" +
-                    this.base.getCurrencyCode()).toURL();
-            this.apiUrlOnDate = "https://api.frankfurter.app/";
-        } catch (MalformedURLException e) {
-            throw new RuntimeException("This is impossible (unless somebody " +
-                    "messed with the url (╯°□°）╯︵ ┻━┻)", e);
+            this.apiUrlLatest = URI.create(url + "latest?from=" +
+                    this.base.getCurrencyCode());
+            this.apiUrlOnDate = url;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid url: " + url, e);
         }
     }
 
@@ -75,21 +172,19 @@ public class FrankfurterExchangeRateAPI implements ExchangeRateAPI {
      * combination with the {@link
      * ExchangeRateFactory#generateExchangeRates(Currency, Map)} method (and
      * thus return the result in the format required by that function). Returns
-     * an empty {@link Optional} if the request fails.
+     * an empty {@link Optional} if the api has no rates.
      *
      * @return The new exchange rates.
+     *
+     * @throws  UnavailableException
+     *          If the api couldn't be reached or failed to answer.
      */
     @Override
     public Optional<Map<Currency, Double>> getExchangeRates() {
         // let's not do failed requests over and even record failed requests as
         // a request made
         requestedDates.add(LocalDate.now());
-        try {
-            URLConnection con = apiUrlLatest.openConnection();
-            return makeRequest(con);
-        } catch (Exception e) {
-            return Optional.empty();
-        }
+        return parse(send(apiUrlLatest), FrankfurterExchangeRateAPI::parseDay);
     }
 
     /**
@@ -98,60 +193,256 @@ public class FrankfurterExchangeRateAPI implements ExchangeRateAPI {
      * combination with the {@link
      * ExchangeRateFactory#generateExchangeRates(Currency, Map)} method (and
      * thus return the result in the format required by that function). Returns
-     * an empty {@link Optional} if the request fails.
+     * an empty {@link Optional} if the api has no rates for that date.
      *
      * @param   date
      *          The date for which to request the exchange rates.
      *
      * @return The new exchange rates.
+     *
+     * @throws  UnavailableException
+     *          If the api couldn't be reached or failed to answer.
      */
     @Override
     public Optional<Map<Currency, Double>> getExchangeRates(LocalDate date) {
         // let's not do failed requests over and even record failed requests as
         // a request made
         requestedDates.add(date);
+        return parse(send(onDate(date)), FrankfurterExchangeRateAPI::parseDay);
+    }
+
+    /**
+     * Requests the exchange rates of a day without blocking the calling
+     * thread. The response is parsed on a thread of the common pool.
+     *
+     * @param   date
+     *          The date for which to request the exchange rates.
+     *
+     * @return  A future completing with the exchange rates, or with an empty
+     *          {@link Optional} if the api has no rates for that date. It
+     *          completes exceptionally with an {@link UnavailableException}
+     *          if the api couldn't be reached or failed to answer.
+     */
+    public CompletableFuture<Optional<Map<Currency, Double>>>
+            getExchangeRatesAsync(LocalDate date) {
+        requestedDates.add(date);
+        CompletableFuture<HttpResponse<byte[]>> response = send(onDate(date));
+        return response.handleAsync((r, e) ->
+                parse(response, FrankfurterExchangeRateAPI::parseDay));
+    }
+
+    /**
+     * Requests and returns the exchange rates of all days in a range from the
+     * time series endpoint of the API, using a single request. Days on which
+     * no rates were published (weekends and holidays) are absent from the
+     * result. Returns an empty {@link Optional} if the api has no rates for
+     * the range.<br/>
+     * The response is parsed token by token, without building a tree of the
+     * whole document or an intermediate map of currency codes in memory.
+     *
+     * @param   start
+     *          The first day of the range.
+     * @param   end
+     *          The last day of the range (inclusive).
+     *
+     * @return  The exchange rates of each day on which rates were published.
+     *
+     * @throws  UnavailableException
+     *          If the api couldn't be reached or failed to answer.
+     */
+    @Override
+    public Optional<NavigableMap<LocalDate, Map<Currency, Double>>>
+            getExchangeRates(LocalDate start, LocalDate end) {
+        for (LocalDate date = start; !date.isAfter(end);
+             date = date.plusDays(1))
+            requestedDates.add(date);
+
+        return parse(send(URI.create(apiUrlOnDate + start + ".." + end
+                        + "?from=" + base.getCurrencyCode())),
+                FrankfurterExchangeRateAPI::parseTimeSeries);
+    }
+
+    private URI onDate(LocalDate date) {
+        return URI.create(apiUrlOnDate + date + "?from="
+                + base.getCurrencyCode());
+    }
+
+    /**
+     * Starts a request to the API. The timeout of the request itself only
+     * covers receiving the headers, so the whole exchange, including reading
+     * the body, is limited as well and aborted if it takes too long. An api
+     * that stalls while sending the body thus can't block the caller.
+     *
+     * @param   uri
+     *          The uri to request.
+     *
+     * @return  A future completing with the response, or exceptionally with a
+     *          {@link TimeoutException} if it took too long.
+     */
+    private CompletableFuture<HttpResponse<byte[]>> send(URI uri) {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        CompletableFuture<HttpResponse<byte[]>> exchange = client.sendAsync(
+                request, HttpResponse.BodyHandlers.ofByteArray());
+        return exchange.copy()
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((r, e) -> {
+                    if (e != null)
+                        exchange.cancel(true);
+                });
+    }
+
+    /**
+     * Waits for a response and parses its body.
+     *
+     * @param   response
+     *          The response.
+     * @param   parser
+     *          The parser of the body.
+     *
+     * @return  The parsed body, or an empty {@link Optional} if the api
+     *          responded that it has no such rates or the body couldn't be
+     *          parsed.
+     *
+     * @throws  UnavailableException
+     *          If the request failed or timed out, or the api responded with
+     *          a server error or asked to slow down.
+     */
+    private static <T> Optional<T> parse(
+            CompletableFuture<HttpResponse<byte[]>> response,
+            BodyParser<T> parser) {
+        HttpResponse<byte[]> r;
         try {
-            URLConnection con = URI.create(
-                    apiUrlOnDate.concat(
-                            date.toString() + "?from=" +
-                                    base.getCurrencyCode()
-                    )
-            ).toURL().openConnection();
-            return makeRequest(con);
-        } catch (Exception e) {
+            r = response.join();
+        } catch (CompletionException | CancellationException e) {
+            throw new UnavailableException("The request failed", e);
+        }
+
+        int status = r.statusCode();
+        if (status >= 500 || status == 429)
+            throw new UnavailableException(
+                    "The api responded with " + status, null);
+        if (status != 200)
+            return Optional.empty();
+
+        try {
+            return Optional.of(parser.parse(
+                    new ByteArrayInputStream(r.body())));
+        } catch (IOException | RuntimeException e) {
+            // the api answered, but not with rates
             return Optional.empty();
         }
     }
 
     /**
-     * Makes a request to the API, returning the exchange rates.
+     * Parses the body of a response.
      *
-     * @param   con
-     *          The connection to the API. Should already be opened.
+     * @param   <T>
+     *          The type of the result.
+     */
+    @FunctionalInterface
+    private interface BodyParser<T> {
+        T parse(InputStream in) throws IOException;
+    }
+
+    /**
+     * Parses the response of the single day endpoints.
+     *
+     * @param   in
+     *          The response body.
      *
-     * @return  The exchange rates.
+     * @return  The rates.
      *
      * @throws  IOException
-     *          If an I/O error occurs.
+     *          If an I/O error occurs or the response is malformed.
      */
-    private Optional<Map<Currency, Double>> makeRequest(URLConnection con)
+    static Map<Currency, Double> parseDay(InputStream in) throws IOException {
+        Response response = RESPONSE_READER.readValue(in);
+        return toCurrencies(response.rates);
+    }
+
+    /**
+     * Parses the response of the time series endpoint, which looks like
+     * <pre><code>
+     *     {"amount": 1.0, "base": "EUR", "start_date": "...", <!--
+     *     -->"end_date": "...", "rates": {"2024-01-05": {"USD": 1.09, <!--
+     *     -->...}, ...}}</code></pre>
+     * Currencies that are unknown to Java are skipped.
+     *
+     * @param   in
+     *          The response body.
+     *
+     * @return  The rates of each day.
+     *
+     * @throws  IOException
+     *          If an I/O error occurs or the response is malformed.
+     */
+    static NavigableMap<LocalDate, Map<Currency, Double>> parseTimeSeries(
+            InputStream in) throws IOException {
+        NavigableMap<LocalDate, Map<Currency, Double>> result = new TreeMap<>();
+        // the same codes appear on every day, look them up only once
+        Map<String, Optional<Currency>> currencies = new HashMap<>();
+
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            expect(parser, JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (!"rates".equals(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                expectCurrent(parser, JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    LocalDate date = LocalDate.parse(parser.currentName());
+                    Map<Currency, Double> rates = new HashMap<>();
+
+                    expect(parser, JsonToken.START_OBJECT);
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        Optional<Currency> currency =
+                                currencies.computeIfAbsent(parser.currentName(),
+                                        FrankfurterExchangeRateAPI::toCurrency);
+                        parser.nextToken();
+                        double rate = parser.getDoubleValue();
+                        currency.ifPresent(c -> rates.put(c, rate));
+                    }
+                    result.put(date, rates);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Optional<Currency> toCurrency(String code) {
+        return Money.isValidCurrencyCode(code)
+                ? Optional.of(Currency.getInstance(code)) : Optional.empty();
+    }
+
+    private static void expect(JsonParser parser, JsonToken token)
+            throws IOException {
+        parser.nextToken();
+        expectCurrent(parser, token);
+    }
+
+    private static void expectCurrent(JsonParser parser, JsonToken token)
             throws IOException {
-        con.setConnectTimeout(5_000);
-        con.setReadTimeout(5_000);
-
-        String result = new String(con.getInputStream().readAllBytes());
-
-        ObjectMapper mapper = new ObjectMapper();
-        Response response = mapper.readValue(result, Response.class);
-
-        return Optional.of(
-                response.rates.entrySet().stream()
-                        .filter(e -> Money.isValidCurrencyCode(e.getKey()))
-                        .collect(Collectors.toMap(
-                                e -> Currency.getInstance(e.getKey()),
-                                Map.Entry::getValue
-                        ))
-        );
+        if (parser.currentToken() != token)
+            throw new JsonParseException(parser, "Expected " + token
+                    + " but got " + parser.currentToken());
+    }
+
+    private static Map<Currency, Double> toCurrencies(
+            Map<String, Double> rates) {
+        return rates.entrySet().stream()
+                .filter(e -> Money.isValidCurrencyCode(e.getKey()))
+                .collect(Collectors.toMap(
+                        e -> Currency.getInstance(e.getKey()),
+                        Map.Entry::getValue
+                ));
     }
 
     private record Response(int amount, String base, String date,
@@ -0,0 +1,227 @@
+package server.financial;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import java.time.LocalDate;
+
+import java.util.*;
+
+/**
+ * Read-only {@link ExchangeRateStore} over the single fixed-width binary file
+ * in which older versions saved the exchange rates. The rates are now kept in
+ * the database, this archive is only read once to import them (see {@link
+ * DatabaseExchangeRateStore#importFrom(ExchangeRateStore)}). The file holds a
+ * matrix of {@code double}s, indexed by day and currency, containing the rates
+ * from one base currency to all others. It is memory-mapped, so opening the
+ * archive only reads its header and only the pages of the rows that are read
+ * are loaded into memory.<br/>
+ * As only the rates against the base currency are archived, rates between
+ * other currencies should be derived from these (see {@link
+ * ExchangeRateFactory#ExchangeRateFactory(ExchangeRateStore, ExchangeRateAPI,
+ * boolean)}).
+ *
+ * <pre><code>
+ *     header (4096 bytes):
+ *         int     magic
+ *         int     version
+ *         int     capacity (maximum amount of currencies)
+ *         int     amount of currencies
+ *         int     amount of rows
+ *         byte[3] base currency code
+ *         byte[3] currency code, capacity times (from offset 32)
+ *     rows (one per day, starting at {@link
+ *     MappedExchangeRateArchive#FIRST_DAY}):
+ *         long    1 if the day is present, 0 otherwise
+ *         double  rate from the base currency, capacity times (NaN if absent)
+ * </code></pre>
+ */
+public class MappedExchangeRateArchive implements ExchangeRateStore,
+        Closeable {
+
+    /**
+     * The first day that can be stored, the first day for which the ECB
+     * published euro reference rates.
+     */
+    public static final LocalDate FIRST_DAY = LocalDate.of(1999, 1, 4);
+
+    private static final int MAGIC = 0x53524154; // "SRAT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4096;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int ROWS_OFFSET = 16;
+    private static final int BASE_OFFSET = 20;
+    private static final int CODES_OFFSET = 32;
+    private static final int CODE_LENGTH = 3;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final Currency base;
+    private final int rowSize;
+    private final Currency[] currencies;
+
+    /**
+     * Opens an existing archive. Only the header is read.
+     *
+     * @param   file
+     *          The file of the archive.
+     * @param   base
+     *          The base currency of the archive. Must match the base currency
+     *          of the archive.
+     *
+     * @throws  IOException
+     *          If an IO error occurred or the file is not a (compatible)
+     *          archive.
+     */
+    public MappedExchangeRateArchive(File file, Currency base)
+            throws IOException {
+        Objects.requireNonNull(file, "file is null");
+        this.base = Objects.requireNonNull(base, "base is null");
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ);
+
+        try {
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            this.rowSize = Long.BYTES + verifyHeader() * Double.BYTES;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.currencies = readCurrencies();
+    }
+
+    private int verifyHeader() throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION)
+            throw new IOException("Not an exchange rate archive");
+
+        if (!base.equals(getCode(BASE_OFFSET)))
+            throw new IOException("Archive has base currency "
+                    + getCode(BASE_OFFSET) + " instead of " + base);
+
+        return buffer.getInt(CAPACITY_OFFSET);
+    }
+
+    private Currency[] readCurrencies() {
+        int count = buffer.getInt(COUNT_OFFSET);
+        Currency[] result = new Currency[count];
+        for (int i = 0; i < count; i++)
+            result[i] = getCode(CODES_OFFSET + i * CODE_LENGTH);
+        return result;
+    }
+
+    /**
+     * Gets the base currency of this archive.
+     *
+     * @return  The base currency.
+     */
+    public Currency getBase() {
+        return base;
+    }
+
+    /**
+     * Gets all currencies in this archive, read from the header only.
+     *
+     * @return  The currencies.
+     */
+    @Override
+    public Set<Currency> getCurrencies() {
+        return Set.of(currencies);
+    }
+
+    /**
+     * Gets the dates for which a row is present. Touches the first bytes of
+     * every row, so this is linear in the amount of rows.
+     *
+     * @return  The stored dates in ascending order.
+     */
+    @Override
+    public NavigableSet<LocalDate> getDates() {
+        TreeSet<LocalDate> result = new TreeSet<>();
+        // rows beyond the end of a truncated file are ignored
+        int count = Math.min(buffer.getInt(ROWS_OFFSET),
+                (buffer.capacity() - HEADER_SIZE) / rowSize);
+        for (int i = 0; i < count; i++) {
+            if (buffer.getLong(rowOffset(i)) == 1L)
+                result.add(FIRST_DAY.plusDays(i));
+        }
+        return result;
+    }
+
+    /**
+     * Reads the rates from the base currency of a single day. Only the page(s)
+     * holding that row are touched.
+     *
+     * @param   date
+     *          The day to read.
+     *
+     * @return  The exchange rates of that day, empty if none are stored.
+     */
+    @Override
+    public List<ExchangeRate> read(LocalDate date) {
+        Objects.requireNonNull(date, "date is null");
+
+        long row = date.toEpochDay() - FIRST_DAY.toEpochDay();
+        if (row < 0 || row >= buffer.getInt(ROWS_OFFSET)
+                || rowOffset((int) row + 1) > buffer.capacity()
+                || buffer.getLong(rowOffset((int) row)) != 1L)
+            return List.of();
+
+        List<ExchangeRate> result = new ArrayList<>(currencies.length);
+        int offset = rowOffset((int) row) + Long.BYTES;
+        for (int i = 0; i < currencies.length; i++) {
+            double rate = buffer.getDouble(offset + i * Double.BYTES);
+            if (!Double.isNaN(rate))
+                result.add(new ExchangeRate(date, base, currencies[i], rate));
+        }
+        return result;
+    }
+
+    /**
+     * Not supported, the archive is only read to import the rates saved by
+     * older versions.
+     *
+     * @param   date
+     *          The day to write.
+     * @param   exchangeRates
+     *          The exchange rates of that day.
+     *
+     * @throws  UnsupportedOperationException
+     *          Always.
+     */
+    @Override
+    public void write(LocalDate date, Collection<ExchangeRate> exchangeRates) {
+        throw new UnsupportedOperationException("The archive is read-only");
+    }
+
+    /**
+     * Closes the underlying file. The mapping stays valid until it is garbage
+     * collected.
+     *
+     * @throws  IOException
+     *          If an IO error occurred.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int rowOffset(int row) {
+        return HEADER_SIZE + row * rowSize;
+    }
+
+    private Currency getCode(int offset) {
+        byte[] code = new byte[CODE_LENGTH];
+        buffer.get(offset, code);
+        return Currency.getInstance(new String(code,
+                StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,242 @@
+package server.financial;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * {@link ExchangeRateAPI} that guards another api against outages. Requests
+ * that returned nothing or failed are remembered for a while (a negative
+ * cache), and after a number of consecutive failures, in which the api was
+ * {@link ExchangeRateAPI.UnavailableException unavailable}, the api isn't
+ * called at all for a backoff period that doubles with every failed retry (a
+ * circuit breaker). An answer without rates, such as for a day on which none
+ * were published, doesn't count as a failure. In all cases an empty {@link
+ * Optional} is returned right away, such that callers can fall back to the
+ * closest known rate instead of waiting for the timeouts of the api.
+ */
+public class ResilientExchangeRateAPI implements ExchangeRateAPI {
+
+    /**
+     * How long a request that returned nothing isn't repeated by default.
+     */
+    public static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofMinutes(10);
+
+    /**
+     * The amount of consecutive failures after which the api isn't called
+     * anymore by default. Answers without rates aren't failures.
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    /**
+     * The default backoff after the circuit is opened for the first time.
+     */
+    public static final Duration DEFAULT_MIN_BACKOFF = Duration.ofSeconds(30);
+
+    /**
+     * The default maximum backoff.
+     */
+    public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofMinutes(30);
+
+    /**
+     * The amount of failed requests that are remembered before the expired
+     * ones are removed.
+     */
+    private static final int NEGATIVE_CACHE_CLEANUP_SIZE = 1024;
+
+    private final ExchangeRateAPI api;
+    private final Clock clock;
+    private final Duration negativeTtl;
+    private final int failureThreshold;
+    private final Duration minBackoff;
+    private final Duration maxBackoff;
+
+    /**
+     * The requests that returned nothing, keyed like their path in the
+     * Frankfurter api, mapped to the moment they may be made again.
+     */
+    private final ConcurrentHashMap<String, Instant> failedRequests =
+            new ConcurrentHashMap<>();
+
+    // the state of the circuit breaker, guarded by this
+    private int consecutiveFailures;
+    private Duration backoff;
+    private Instant openUntil;
+    private boolean probing;
+
+    /**
+     * Creates a new {@code ResilientExchangeRateAPI} with the default
+     * settings.
+     *
+     * @param   api
+     *          The api to guard.
+     */
+    public ResilientExchangeRateAPI(ExchangeRateAPI api) {
+        this(api, Clock.systemUTC(), DEFAULT_NEGATIVE_TTL,
+                DEFAULT_FAILURE_THRESHOLD, DEFAULT_MIN_BACKOFF,
+                DEFAULT_MAX_BACKOFF);
+    }
+
+    /**
+     * Creates a new {@code ResilientExchangeRateAPI}.
+     *
+     * @param   api
+     *          The api to guard.
+     * @param   clock
+     *          The clock to measure the durations with.
+     * @param   negativeTtl
+     *          How long a request that returned nothing isn't repeated.
+     * @param   failureThreshold
+     *          The amount of consecutive failures after which the api isn't
+     *          called anymore.
+     * @param   minBackoff
+     *          How long the api isn't called after the threshold is reached.
+     * @param   maxBackoff
+     *          The maximum time the api isn't called.
+     */
+    public ResilientExchangeRateAPI(ExchangeRateAPI api, Clock clock,
+                                    Duration negativeTtl, int failureThreshold,
+                                    Duration minBackoff, Duration maxBackoff) {
+        this.api = Objects.requireNonNull(api, "api is null");
+        this.clock = Objects.requireNonNull(clock, "clock is null");
+        this.negativeTtl =
+                Objects.requireNonNull(negativeTtl, "negativeTtl is null");
+        this.minBackoff =
+                Objects.requireNonNull(minBackoff, "minBackoff is null");
+        this.maxBackoff =
+                Objects.requireNonNull(maxBackoff, "maxBackoff is null");
+
+        if (failureThreshold < 1)
+            throw new IllegalArgumentException("failureThreshold < 1");
+        if (minBackoff.compareTo(maxBackoff) > 0)
+            throw new IllegalArgumentException("minBackoff > maxBackoff");
+
+        this.failureThreshold = failureThreshold;
+        this.backoff = minBackoff;
+    }
+
+    @Override
+    public Currency getBase() {
+        return api.getBase();
+    }
+
+    @Override
+    public Optional<Map<Currency, Double>> getExchangeRates() {
+        return call("latest", api::getExchangeRates);
+    }
+
+    @Override
+    public Optional<Map<Currency, Double>> getExchangeRates(LocalDate date) {
+        return call(date.toString(), () -> api.getExchangeRates(date));
+    }
+
+    @Override
+    public Optional<NavigableMap<LocalDate, Map<Currency, Double>>>
+            getExchangeRates(LocalDate start, LocalDate end) {
+        return call(start + ".." + end,
+                () -> api.getExchangeRates(start, end));
+    }
+
+    @Override
+    public Set<LocalDate> getRequestDates() {
+        return api.getRequestDates();
+    }
+
+    /**
+     * Checks whether the circuit is open, meaning that the api isn't called
+     * until the backoff has passed.
+     *
+     * @return  Whether the circuit is open.
+     */
+    public synchronized boolean isOpen() {
+        return openUntil != null;
+    }
+
+    /**
+     * Makes a request to the api, unless it recently failed or the circuit is
+     * open.
+     *
+     * @param   key
+     *          The key of the request in the negative cache.
+     * @param   request
+     *          The request to make.
+     *
+     * @return  The result of the request, or an empty {@link Optional} if it
+     *          failed or wasn't made.
+     */
+    private <T> Optional<T> call(String key, Supplier<Optional<T>> request) {
+        Instant now = clock.instant();
+
+        Instant retry = failedRequests.get(key);
+        if (retry != null) {
+            if (now.isBefore(retry))
+                return Optional.empty();
+            failedRequests.remove(key, retry);
+        }
+
+        if (!allowRequest(now))
+            return Optional.empty();
+
+        Optional<T> result;
+        try {
+            result = request.get();
+        } catch (RuntimeException e) {
+            // unavailable, or broken in some other way
+            e.printStackTrace();
+            remember(key, now.plus(negativeTtl));
+            onFailure(clock.instant());
+            return Optional.empty();
+        }
+
+        // the api answered, even if it has no rates for the request
+        onSuccess();
+        if (result.isEmpty())
+            remember(key, now.plus(negativeTtl));
+        return result;
+    }
+
+    private void remember(String key, Instant retry) {
+        if (failedRequests.size() >= NEGATIVE_CACHE_CLEANUP_SIZE) {
+            Instant now = clock.instant();
+            failedRequests.values().removeIf(now::isAfter);
+        }
+        failedRequests.put(key, retry);
+    }
+
+    private synchronized boolean allowRequest(Instant now) {
+        if (openUntil == null)
+            return true;
+
+        // half open: let a single request through to see if the api is back
+        if (probing || now.isBefore(openUntil))
+            return false;
+        probing = true;
+        return true;
+    }
+
+    private synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        backoff = minBackoff;
+        openUntil = null;
+        probing = false;
+    }
+
+    private synchronized void onFailure(Instant now) {
+        consecutiveFailures++;
+
+        if (probing) {
+            probing = false;
+            backoff = backoff.multipliedBy(2);
+            if (backoff.compareTo(maxBackoff) > 0)
+                backoff = maxBackoff;
+            openUntil = now.plus(backoff);
+        } else if (openUntil == null
+                && consecutiveFailures >= failureThreshold) {
+            openUntil = now.plus(backoff);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package server.financial;
+
+import java.util.Objects;
+
+/**
+ * Finds the settlement of a set of balances with the least transfers. A group
+ * of {@code n} balances that sum to zero can always be settled with {@code n
+ * - 1} transfers, and never with fewer if no part of it sums to zero. So the
+ * fewest transfers are needed when the balances are split into as many groups
+ * that sum to zero as possible, which is what {@link
+ * SettlementSolver#partition(long[], long)} does, each group can then be
+ * settled on its own.<br/>
+ * The partition is found with dynamic programming over all subsets of the
+ * balances, so it takes {@code O(2^n * n)} time and {@code O(2^n)} memory and
+ * is only attempted for at most {@link SettlementSolver#MAX_BALANCES}
+ * balances.
+ */
+public final class SettlementSolver {
+
+    /**
+     * The largest amount of balances that is partitioned, which takes about
+     * 9 MB of memory.
+     */
+    public static final int MAX_BALANCES = 20;
+
+    /**
+     * The subsets visited between checks of the deadline, minus one.
+     */
+    private static final int CHECK_INTERVAL = (1 << 12) - 1;
+
+    private SettlementSolver() {
+    }
+
+    /**
+     * Splits the balances into as many groups that sum to zero as possible.
+     *
+     * @param   balances
+     *          The balances, which must sum to zero. Balances of zero form a
+     *          group on their own.
+     * @param   deadline
+     *          The {@link System#nanoTime()} after which to give up.
+     *
+     * @return  The group of every balance, numbered from zero, or {@code
+     *          null} if there are more than {@link
+     *          SettlementSolver#MAX_BALANCES} balances, the sums of the
+     *          balances overflow, or the deadline passed.
+     *
+     * @throws  IllegalArgumentException
+     *          If the balances don't sum to zero.
+     */
+    public static int[] partition(long[] balances, long deadline) {
+        Objects.requireNonNull(balances, "balances is null");
+
+        int n = balances.length;
+        if (n > MAX_BALANCES)
+            return null;
+
+        int full = (1 << n) - 1;
+        long[] sums = new long[full + 1];
+        // the most groups that sum to zero the subset can be split into
+        byte[] groups = new byte[full + 1];
+        if (!fill(balances, sums, groups, deadline))
+            return null;
+
+        if (sums[full] != 0)
+            throw new IllegalArgumentException("balances don't sum to zero");
+        return reconstruct(sums, groups, n);
+    }
+
+    /**
+     * Computes the sum of every subset of the balances and the most groups
+     * that sum to zero it can be split into, each from the subsets that miss
+     * one of its balances.
+     *
+     * @param   balances
+     *          The balances.
+     * @param   sums
+     *          Receives the sum of every subset, indexed by its bitmask.
+     * @param   groups
+     *          Receives the most groups of every subset.
+     * @param   deadline
+     *          The {@link System#nanoTime()} after which to give up.
+     *
+     * @return  Whether all subsets were computed, rather than the sums
+     *          overflowing or the deadline passing.
+     */
+    private static boolean fill(long[] balances, long[] sums, byte[] groups,
+                                long deadline) {
+        for (int mask = 1; mask < sums.length; mask++) {
+            if ((mask & CHECK_INTERVAL) == 0
+                    && System.nanoTime() - deadline > 0)
+                return false;
+
+            int lowest = Integer.numberOfTrailingZeros(mask);
+            try {
+                sums[mask] = Math.addExact(sums[mask & (mask - 1)],
+                        balances[lowest]);
+            } catch (ArithmeticException e) {
+                return false;
+            }
+
+            int best = 0;
+            for (int rest = mask; rest != 0; rest &= rest - 1)
+                best = Math.max(best, groups[mask ^ (rest & -rest)]);
+            groups[mask] = (byte) (sums[mask] == 0 ? best + 1 : best);
+        }
+        return true;
+    }
+
+    /**
+     * Reads the groups off an optimal path through the subsets computed by
+     * {@link SettlementSolver#fill(long[], long[], byte[], long)}.
+     *
+     * @param   sums
+     *          The sum of every subset.
+     * @param   groups
+     *          The most groups of every subset.
+     * @param   n
+     *          The amount of balances.
+     *
+     * @return  The group of every balance, numbered from zero.
+     */
+    private static int[] reconstruct(long[] sums, byte[] groups, int n) {
+        // remove the balances one by one along an optimal path, every time
+        // the remainder sums to zero again the removed ones form a group
+        int[] result = new int[n];
+        int group = 0;
+        for (int mask = sums.length - 1; mask != 0; ) {
+            int target = groups[mask] - (sums[mask] == 0 ? 1 : 0);
+            int bit = mask & -mask;
+            for (int rest = mask; rest != 0; rest &= rest - 1) {
+                if (groups[mask ^ (rest & -rest)] == target) {
+                    bit = rest & -rest;
+                    break;
+                }
+            }
+
+            result[Integer.numberOfTrailingZeros(bit)] = group;
+            mask ^= bit;
+            if (mask != 0 && sums[mask] == 0)
+                group++;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,146 @@
+package server.financial;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Currency;
+import java.util.Objects;
+
+/**
+ * Row of the exchange rate table in the database, see {@link
+ * DatabaseExchangeRateStore}. The rate of a pair on a day is identified by the
+ * day and the codes of both currencies.
+ */
+@Entity
+@Table(name = "exchange_rate")
+@IdClass(StoredExchangeRate.Key.class)
+public class StoredExchangeRate implements Persistable<StoredExchangeRate.Key> {
+
+    @Id
+    @Column(name = "rate_date")
+    private LocalDate date;
+
+    @Id
+    @Column(name = "from_currency", length = 3)
+    private String fromCurrency;
+
+    @Id
+    @Column(name = "to_currency", length = 3)
+    private String toCurrency;
+
+    private double rate;
+
+    /**
+     * Whether this row hasn't been inserted yet. As the key is assigned
+     * rather than generated, JPA can't tell by itself and would look every
+     * row up before inserting it.
+     */
+    @Transient
+    private boolean isNew;
+
+    /**
+     * Constructor for JPA.
+     */
+    protected StoredExchangeRate() {
+    }
+
+    /**
+     * Creates a new row from an {@link ExchangeRate}.
+     *
+     * @param   exchangeRate
+     *          The exchange rate.
+     */
+    public StoredExchangeRate(ExchangeRate exchangeRate) {
+        Objects.requireNonNull(exchangeRate, "exchangeRate is null");
+        this.date = exchangeRate.getDate();
+        this.fromCurrency = exchangeRate.getFrom().getCurrencyCode();
+        this.toCurrency = exchangeRate.getTo().getCurrencyCode();
+        this.rate = exchangeRate.getRate();
+        this.isNew = true;
+    }
+
+    /**
+     * Converts this row back to an {@link ExchangeRate}.
+     *
+     * @return  The exchange rate.
+     */
+    public ExchangeRate toExchangeRate() {
+        return new ExchangeRate(date, Currency.getInstance(fromCurrency),
+                Currency.getInstance(toCurrency), rate);
+    }
+
+    /**
+     * Gets the date of the exchange rate.
+     *
+     * @return  The date.
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+
+    @Override
+    public Key getId() {
+        return new Key(date, fromCurrency, toCurrency);
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        isNew = false;
+    }
+
+    /**
+     * Composite primary key of a {@link StoredExchangeRate}.
+     */
+    public static class Key implements Serializable {
+
+        private LocalDate date;
+        private String fromCurrency;
+        private String toCurrency;
+
+        /**
+         * Constructor for JPA.
+         */
+        protected Key() {
+        }
+
+        /**
+         * Creates a new key.
+         *
+         * @param   date
+         *          The date of the exchange rate.
+         * @param   fromCurrency
+         *          The code of the base currency.
+         * @param   toCurrency
+         *          The code of the converted currency.
+         */
+        public Key(LocalDate date, String fromCurrency, String toCurrency) {
+            this.date = date;
+            this.fromCurrency = fromCurrency;
+            this.toCurrency = toCurrency;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key key))
+                return false;
+            return Objects.equals(date, key.date)
+                    && Objects.equals(fromCurrency, key.fromCurrency)
+                    && Objects.equals(toCurrency, key.toCurrency);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(date, fromCurrency, toCurrency);
+        }
+    }
+}
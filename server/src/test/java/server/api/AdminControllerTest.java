@@ -7,6 +7,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import server.database.EventRepository;
+import server.financial.BalanceLedger;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -19,6 +20,8 @@ class AdminControllerTest {
     EventRepository eventRepo;
     @Mock
     SimpMessagingTemplate messagingTemplate;
+    @Mock
+    BalanceLedger balanceLedger;
 
     List<Event> allEvents;
 
@@ -26,7 +29,7 @@ class AdminControllerTest {
     void setup() {
         MockitoAnnotations.openMocks(this);
         eventRepo = new TestEventRepository();
-        sut = new AdminController(eventRepo, messagingTemplate);
+        sut = new AdminController(eventRepo, balanceLedger, messagingTemplate);
         allEvents = List.of(new Event("testEvent1"), new Event("testEvent2"));
     }
 
@@ -7,6 +7,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import server.database.EventRepository;
+import server.financial.BalanceLedger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,13 +21,15 @@ class AdminWebSocketControllerTest {
     EventController eventController;
     @Mock
     SimpMessagingTemplate messagingTemplate;
+    @Mock
+    BalanceLedger balanceLedger;
 
     @BeforeEach
     void setup() {
         MockitoAnnotations.openMocks(this);
         eventRepository = new TestEventRepository();
-        adminController = new AdminController(eventRepository, messagingTemplate);
-        eventController = new EventController(eventRepository, null, messagingTemplate);
+        adminController = new AdminController(eventRepository, balanceLedger, messagingTemplate);
+        eventController = new EventController(eventRepository, null, balanceLedger, messagingTemplate);
 
         sut = new AdminWebSocketController(eventController, adminController);
 
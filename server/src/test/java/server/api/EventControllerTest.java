@@ -8,9 +8,11 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import server.database.EventRepository;
+import server.financial.BalanceLedger;
 import server.financial.DebtSimplifier;
 import server.financial.ExchangeRate;
 import server.financial.ExchangeRateFactory;
@@ -22,6 +24,9 @@ import java.time.LocalDateTime;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -41,6 +46,9 @@ public class EventControllerTest {
     @Mock
     private DebtSimplifier ds;
 
+    @Mock
+    private BalanceLedger ledger;
+
     @Mock
     private Event event;
 
@@ -66,8 +74,9 @@ public class EventControllerTest {
 
         exchangeRateFactory = Mockito.mock(ExchangeRateFactory.class);
         ds = Mockito.mock(DebtSimplifier.class);
+        ledger = Mockito.mock(BalanceLedger.class);
 
-        sut = new EventController(eventRepository, null, sim);
+        sut = new EventController(eventRepository, null, ledger, sim);
         testEvent1 = new Event("testEvent1");
         testEvent1.setId(100L);
         testEvent1.setInviteCode("43fabbfca0644e5db1d0c1e3cb0d5416");
@@ -150,7 +159,7 @@ public class EventControllerTest {
     @Test
     public void testSaveEvent() {
         EventRepository db = Mockito.mock(EventRepository.class);
-        EventController sut = new EventController(db, null, sim);
+        EventController sut = new EventController(db, null, ledger, sim);
         Event event = Mockito.mock(Event.class);
         when(event.getEventName()).thenReturn("Test Event");
 
@@ -177,71 +186,107 @@ public class EventControllerTest {
 
         assertEquals(ResponseEntity.ok(event), result);
         verify(sim, times(1)).convertAndSend("/topic/admin", event);
+        verify(ledger).eventChanged(event.getId());
     }
 
     @Test
     public void testGetCurrencies() {
-        EventController sut = new EventController(eventRepository, ds, sim);
+        EventController sut = new EventController(eventRepository, ds, ledger, sim);
         Set<Currency> expectedCurrencies = new HashSet<>();
         expectedCurrencies.add(Currency.getInstance("USD"));
         expectedCurrencies.add(Currency.getInstance("EUR"));
         when(exchangeRateFactory.getKnownCurrencies()).thenReturn(expectedCurrencies);
-        ResponseEntity<Set<Currency>> result = sut.getCurrencies();
-        assertEquals(ResponseEntity.ok(expectedCurrencies), result);
+        ResponseEntity<Set<Currency>> result = sut.getCurrencies(null);
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(expectedCurrencies, result.getBody());
+        assertNotNull(result.getHeaders().getETag());
+        assertNotNull(result.getHeaders().getCacheControl());
+        verify(exchangeRateFactory, never()).retrieveExchangeRates();
+    }
+
+    @Test
+    public void testGetCurrenciesNotModified() {
+        EventController sut = new EventController(eventRepository, ds, ledger, sim);
+        when(exchangeRateFactory.getKnownCurrencies())
+                .thenReturn(Set.of(Currency.getInstance("USD"), Currency.getInstance("EUR")));
+        String eTag = sut.getCurrencies(null).getHeaders().getETag();
+
+        // the order of the set doesn't matter
+        when(exchangeRateFactory.getKnownCurrencies())
+                .thenReturn(new LinkedHashSet<>(List.of(Currency.getInstance("EUR"), Currency.getInstance("USD"))));
+        ResponseEntity<Set<Currency>> result = sut.getCurrencies(eTag);
+        assertEquals(HttpStatus.NOT_MODIFIED, result.getStatusCode());
+        assertNull(result.getBody());
+        assertEquals(HttpStatus.NOT_MODIFIED, sut.getCurrencies("\"0\", W/" + eTag).getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED, sut.getCurrencies("*").getStatusCode());
+
+        when(exchangeRateFactory.getKnownCurrencies())
+                .thenReturn(Set.of(Currency.getInstance("USD")));
+        result = sut.getCurrencies(eTag);
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertNotEquals(eTag, result.getHeaders().getETag());
     }
 
     @Test
     public void testGetSumOfExpenses() {
         EventRepository eventRepository = Mockito.mock(EventRepository.class);
-        EventController sut = new EventController(eventRepository, ds, sim);
+        EventController sut = new EventController(eventRepository, ds, ledger, sim);
 
         when(eventRepository.findById(eventId)).thenReturn(Optional.of(event));
 
         BigDecimal amount = new BigDecimal(100);
         Money expected = new Money(amount, currency);
-        when(ds.sumOfExpenses(event, currency)).thenReturn(expected);
+        when(ledger.sumOfExpenses(eventId, currency)).thenReturn(Optional.of(new BalanceLedger.Cached<>(expected, "\"1\"")));
 
         Set<Currency> knownCurrencies = new HashSet<>();
         knownCurrencies.add(currency);
         when(exchangeRateFactory.getKnownCurrencies()).thenReturn(knownCurrencies);
 
-        ResponseEntity<Money> result = sut.getSumOfExpenses(eventId, currency);
-        assertEquals(ResponseEntity.ok(expected), result);
+        ResponseEntity<Money> result = sut.getSumOfExpenses(eventId, currency, null);
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(expected, result.getBody());
+        assertEquals("\"1\"", result.getHeaders().getETag());
+
+        result = sut.getSumOfExpenses(eventId, currency, "\"1\"");
+        assertEquals(HttpStatus.NOT_MODIFIED, result.getStatusCode());
+        assertNull(result.getBody());
+        assertEquals(HttpStatus.NOT_MODIFIED, sut.getSumOfExpenses(eventId, currency, "\"0\", W/\"1\"").getStatusCode());
+        assertEquals(HttpStatus.OK, sut.getSumOfExpenses(eventId, currency, "\"2\"").getStatusCode());
     }
 
     @Test
     public void testGetSumOfExpensesErrorCases() {
         EventRepository eventRepositoryMock = Mockito.mock(EventRepository.class);
-        EventController sut = new EventController(eventRepositoryMock, ds, null);
+        EventController sut = new EventController(eventRepositoryMock, ds, ledger, null);
 
         Currency invalid = null;
 
-        ResponseEntity<Money> result = sut.getSumOfExpenses(eventId, invalid);
+        ResponseEntity<Money> result = sut.getSumOfExpenses(eventId, invalid, null);
         assertEquals(ResponseEntity.badRequest().build(), result);
 
         when(eventRepositoryMock.findById(eventId)).thenReturn(Optional.empty());
-        ResponseEntity<Money> result2 = sut.getSumOfExpenses(eventId, invalid);
+        ResponseEntity<Money> result2 = sut.getSumOfExpenses(eventId, invalid, null);
         assertEquals(ResponseEntity.badRequest().build(), result2);
 
         when(eventRepositoryMock.findById(eventId)).thenReturn(Optional.of(Mockito.mock(Event.class)));
         when(ds.getExchangeRateFactory().getKnownCurrencies()).thenReturn(new HashSet<>());
-        ResponseEntity<Money> result3 = sut.getSumOfExpenses(eventId, currency);
+        ResponseEntity<Money> result3 = sut.getSumOfExpenses(eventId, currency, null);
         assertEquals(ResponseEntity.badRequest().build(), result3);
     }
 
     @Test
     public void testGetSimplification() {
         EventRepository eventRepository = Mockito.mock(EventRepository.class);
-        EventController sut = new EventController(eventRepository, ds, null);
+        EventController sut = new EventController(eventRepository, ds, ledger, null);
         when(eventRepository.findById(eventId)).thenReturn(Optional.of(event));
 
         Currency currency2 = null;
 
         ResponseEntity<Set<Debt>> intResult = ResponseEntity.badRequest().build();
-        assertEquals(sut.getSimplification(eventId, currency2), intResult);
+        assertEquals(sut.getSimplification(eventId, currency2, false, null), intResult);
 
-        ResponseEntity<Set<Debt>> intResult2 = ResponseEntity.ok(new HashSet<>());
-        assertEquals(sut.getSimplification(eventId, currency), intResult2);
+        ResponseEntity<Set<Debt>> intResult2 = ResponseEntity.notFound().build();
+        assertEquals(sut.getSimplification(eventId, currency, false, null), intResult2);
         when(event.getParticipants()).thenReturn(participants);
 
         when(ds.getExchangeRateFactory().getKnownCurrencies()).thenReturn(new HashSet<>(List.of(currency)));
@@ -249,22 +294,28 @@ public class EventControllerTest {
         Set<Debt> expectedDebts = new HashSet<>();
         Debt debt = Mockito.mock(Debt.class);
         expectedDebts.add(debt);
-        when(ds.simplify()).thenReturn(expectedDebts);
+        when(ledger.simplify(eventId, currency, false)).thenReturn(Optional.of(new BalanceLedger.Cached<>(expectedDebts, "\"1\"")));
 
-        ResponseEntity<Set<Debt>> result = sut.getSimplification(eventId, currency);
-        assertEquals(ResponseEntity.ok(expectedDebts), result);
+        ResponseEntity<Set<Debt>> result = sut.getSimplification(eventId, currency, false, null);
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(expectedDebts, result.getBody());
+        assertEquals(HttpStatus.NOT_MODIFIED, sut.getSimplification(eventId, currency, false, "\"1\"").getStatusCode());
+
+        Set<Debt> optimalDebts = new HashSet<>();
+        when(ledger.simplify(eventId, currency, true)).thenReturn(Optional.of(new BalanceLedger.Cached<>(optimalDebts, "\"1\"")));
+        assertEquals(optimalDebts, sut.getSimplification(eventId, currency, true, null).getBody());
     }
 
     @Test
     public void testConvertMoney() {
-        EventController sut = new EventController(null, ds, null);
+        EventController sut = new EventController(null, ds, ledger, null);
 
         Money money = Mockito.mock(Money.class);
         LocalDate date = LocalDate.now();
 
         Money expectedMoney = Mockito.mock(Money.class);
         ExchangeRate exchangeRate = Mockito.mock(ExchangeRate.class);
-        when(exchangeRateFactory.getExchangeRate(date, money.getCurrency(), currency)).thenReturn(exchangeRate);
+        when(exchangeRateFactory.getExchangeRateOrClosest(date, money.getCurrency(), currency)).thenReturn(exchangeRate);
         when(exchangeRate.convert(money)).thenReturn(expectedMoney);
         ResponseEntity<Set<Debt>> intResult = ResponseEntity.badRequest().build();
         assertEquals(sut.convertMoney(null, currency, date), intResult);
@@ -281,10 +332,10 @@ public class EventControllerTest {
     @Test
     public void testGetBalanceOfParticipants() {
         EventRepository eventRepository = Mockito.mock(EventRepository.class);
-        EventController sut = new EventController(eventRepository, ds, null);
+        EventController sut = new EventController(eventRepository, ds, ledger, null);
 
         ResponseEntity<Set<Debt>> intResult = ResponseEntity.notFound().build();
-        assertEquals(sut.getSimplification(eventId, currency), intResult);
+        assertEquals(sut.getSimplification(eventId, currency, false, null), intResult);
         when(eventRepository.findById(eventId)).thenReturn(Optional.of(event));
 
         when(event.getParticipants()).thenReturn(participants);
@@ -292,19 +343,21 @@ public class EventControllerTest {
         Set<ParticipantValuePair> expectedBalances = new HashSet<>();
         ParticipantValuePair participantValuePair = Mockito.mock(ParticipantValuePair.class);
         expectedBalances.add(participantValuePair);
-        when(ds.toBalances()).thenReturn(expectedBalances);
+        when(ledger.toBalances(eventId, currency)).thenReturn(Optional.of(new BalanceLedger.Cached<>(expectedBalances, "\"1\"")));
 
         intResult = ResponseEntity.badRequest().build();
-        assertEquals(sut.getSimplification(eventId, null), intResult);
+        assertEquals(sut.getSimplification(eventId, null, false, null), intResult);
 
-        ResponseEntity<Set<ParticipantValuePair>> result = sut.getBalanceOfParticipants(eventId, currency);
-        assertEquals(ResponseEntity.ok(expectedBalances), result);
+        ResponseEntity<Set<ParticipantValuePair>> result = sut.getBalanceOfParticipants(eventId, currency, null);
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(expectedBalances, result.getBody());
+        assertEquals(HttpStatus.NOT_MODIFIED, sut.getBalanceOfParticipants(eventId, currency, "*").getStatusCode());
     }
 
     @Test
     public void testGetShareOfParticipants() {
         EventRepository eventRepositoryMock = Mockito.mock(EventRepository.class);
-        EventController eventController = new EventController(eventRepositoryMock, ds, null);
+        EventController eventController = new EventController(eventRepositoryMock, ds, ledger, null);
         when(eventRepositoryMock.findById(eventId)).thenReturn(Optional.of(event));
 
         when(ds.getExchangeRateFactory().getKnownCurrencies()).thenReturn(new HashSet<>(List.of(currency)));
@@ -313,10 +366,32 @@ public class EventControllerTest {
         Set<ParticipantValuePair> expectedShares = new HashSet<>();
         ParticipantValuePair participantValuePair = Mockito.mock(ParticipantValuePair.class);
         expectedShares.add(participantValuePair);
-        when(ds.shareOfExpenses(event, currency)).thenReturn(expectedShares);
+        when(ledger.shareOfExpenses(eventId, currency)).thenReturn(Optional.of(new BalanceLedger.Cached<>(expectedShares, "\"1\"")));
+
+        ResponseEntity<Set<ParticipantValuePair>> result = eventController.getShareOfParticipants(eventId, currency, null);
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(expectedShares, result.getBody());
+        assertEquals("\"1\"", result.getHeaders().getETag());
+    }
 
-        ResponseEntity<Set<ParticipantValuePair>> result = eventController.getShareOfParticipants(eventId, currency);
-        assertEquals(ResponseEntity.ok(expectedShares), result);
+    @Test
+    public void testGetSummary() {
+        EventController sut = new EventController(null, ds, ledger, null);
+        assertEquals(ResponseEntity.badRequest().build(), sut.getSummary(eventId, null, null));
+
+        when(ds.getExchangeRateFactory().getKnownCurrencies()).thenReturn(new HashSet<>(List.of(currency)));
+        when(ledger.summary(eventId, currency)).thenReturn(Optional.empty());
+        assertEquals(ResponseEntity.notFound().build(), sut.getSummary(eventId, currency, null));
+
+        EventSummary expectedSummary = new EventSummary(Mockito.mock(Money.class),
+                Set.of(), Set.of(), Set.of(Mockito.mock(Debt.class)));
+        when(ledger.summary(eventId, currency)).thenReturn(Optional.of(new BalanceLedger.Cached<>(expectedSummary, "\"1\"")));
+
+        ResponseEntity<EventSummary> result = sut.getSummary(eventId, currency, null);
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(expectedSummary, result.getBody());
+        assertEquals("\"1\"", result.getHeaders().getETag());
+        assertEquals(HttpStatus.NOT_MODIFIED, sut.getSummary(eventId, currency, "\"1\"").getStatusCode());
     }
 
 }
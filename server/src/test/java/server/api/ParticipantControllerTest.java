@@ -10,6 +10,7 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import server.financial.BalanceLedger;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
@@ -33,6 +34,8 @@ class ParticipantControllerTest {
 
     @Mock
     SimpMessagingTemplate sim;
+    @Mock
+    BalanceLedger balanceLedger;
 
 
 
@@ -41,7 +44,7 @@ class ParticipantControllerTest {
         MockitoAnnotations.openMocks(this);
         eventRepo = new TestEventRepository();
         partRepo = new TestParticipantRepository();
-        sut = new ParticipantController(partRepo, eventRepo, transactionController, sim);
+        sut = new ParticipantController(partRepo, eventRepo, transactionController, balanceLedger, sim);
 
         testEvent1 = new Event("testEvent1");
         testEvent1.setId(100L);
@@ -60,7 +63,7 @@ class ParticipantControllerTest {
 
     @Test
     void constructorTest() {
-        ParticipantController pc = new ParticipantController(partRepo, eventRepo, transactionController, null);
+        ParticipantController pc = new ParticipantController(partRepo, eventRepo, transactionController, balanceLedger, null);
         assertNotNull(pc);
     }
 
@@ -268,7 +268,10 @@ public class TestEventRepository implements EventRepository {
      */
     @Override
     public boolean existsById(Long aLong) {
-        // TODO Auto-generated method stub
+        for (Event e : added) {
+            if (e.getId().equals(aLong))
+                return true;
+        }
         return false;
     }
 
@@ -403,4 +403,13 @@ public class TestParticipantRepository implements ParticipantRepository {
         }
         return Optional.empty();
     }
+
+    /**
+     * @param eventId
+     * @return
+     */
+    @Override
+    public List<Participant> findByEventId(Long eventId) {
+        return new ArrayList<>();
+    }
 }
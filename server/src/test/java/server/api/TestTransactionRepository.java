@@ -9,9 +9,11 @@ import org.springframework.data.domain.Sort;
 import org.springframework.data.repository.query.FluentQuery;
 import server.database.TransactionRepository;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class TestTransactionRepository implements TransactionRepository {
@@ -331,5 +333,23 @@ public class TestTransactionRepository implements TransactionRepository {
         }
         return Optional.empty();
     }
-}
 
+    /**
+     * @param eventId
+     * @param action
+     * @return
+     */
+    @Override
+    public long forEachOfEvent(Long eventId, Consumer<Transaction> action) {
+        return 0;
+    }
+
+    /**
+     * @param eventId
+     * @return
+     */
+    @Override
+    public List<LocalDate> findDatesByEventId(Long eventId) {
+        return new ArrayList<>();
+    }
+}
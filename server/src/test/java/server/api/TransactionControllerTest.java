@@ -10,6 +10,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import server.financial.BalanceLedger;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
@@ -17,6 +18,7 @@ import java.util.Currency;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.verify;
 
 public class TransactionControllerTest {
 
@@ -36,13 +38,15 @@ public class TransactionControllerTest {
     private List<Participant> group;
     @Mock
     private SimpMessagingTemplate simpMessagingTemplate;
+    @Mock
+    private BalanceLedger balanceLedger;
 
     @BeforeEach
     void setup() {
         MockitoAnnotations.openMocks(this);
         eventRepo = new TestEventRepository();
         transactionRepo = new TestTransactionRepository();
-        sut = new TransactionController(transactionRepo, eventRepo, null, simpMessagingTemplate);
+        sut = new TransactionController(transactionRepo, eventRepo, null, balanceLedger, simpMessagingTemplate);
         testEvent1 = new Event("testEvent1");
         testEvent1.setId(100L);
         testEvent1.addParticipant("testP1");
@@ -62,6 +66,7 @@ public class TransactionControllerTest {
         eventRepo.save(testEvent1);
         var retPart = sut.addTransaction(testEvent1.getId(), transaction);
         assertEquals(retPart.getBody(), transaction);
+        verify(balanceLedger).transactionAdded(testEvent1.getId(), transaction);
     }
 
     @Test
@@ -70,6 +75,7 @@ public class TransactionControllerTest {
         sut.addTransaction(testEvent1.getId(), transaction);
         var retPart = sut.deleteTransaction(testEvent1.getId(), transaction.getTransactionId());
         assertEquals(retPart.getBody(), transaction);
+        verify(balanceLedger).eventChanged(testEvent1.getId());
     }
 
     @Test
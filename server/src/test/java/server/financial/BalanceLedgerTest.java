@@ -0,0 +1,361 @@
+package server.financial;
+
+import commons.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import server.api.TestEventRepository;
+import server.api.TestParticipantRepository;
+import server.api.TestTransactionRepository;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceLedgerTest {
+
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final LocalDate today = LocalDate.of(2024, 3, 1);
+
+    private ExchangeRateFactory exchangeRateFactory;
+    private DebtSimplifier debtSimplifier;
+    private AtomicInteger loads;
+    private BalanceLedger ledger;
+
+    private Event event;
+    private List<Participant> participants;
+    private long nextTransactionId;
+
+    @BeforeEach
+    void setup() {
+        exchangeRateFactory = new ExchangeRateFactory(null, null);
+        exchangeRateFactory.addExchangeRate(new ExchangeRate(today, USD, EUR, 0.9));
+        exchangeRateFactory.addExchangeRate(new ExchangeRate(today, EUR, USD, 1 / 0.9));
+        debtSimplifier = new DebtSimplifier(exchangeRateFactory);
+
+        loads = new AtomicInteger();
+        TestEventRepository repository = new TestEventRepository() {
+            @Override
+            public Optional<Event> findById(Long id) {
+                loads.incrementAndGet();
+                return super.findById(id);
+            }
+        };
+        ledger = new BalanceLedger(debtSimplifier, repository);
+
+        event = new Event("trip");
+        event.setId(1L);
+        for (int i = 0; i < 4; i++)
+            event.addParticipant("participant " + i).setParticipantId((long) i);
+        participants = event.getParticipants();
+        repository.save(event);
+
+        nextTransactionId = 0;
+        addExpense(0, "10.00", EUR, participants);
+        addExpense(1, "7.01", USD, participants.subList(1, 4));
+        Transaction payoff = Transaction.createPayoff(participants.get(2),
+                new Money(new BigDecimal("3.00"), EUR), participants.get(0), event, today);
+        payoff.setTransactionId(nextTransactionId++);
+        event.addTransaction(payoff);
+    }
+
+    private Transaction addExpense(int payer, String amount, Currency currency, List<Participant> debtors) {
+        Transaction transaction = Transaction.createDebt(participants.get(payer), "expense",
+                new Money(new BigDecimal(amount), currency), new ArrayList<>(debtors), event, today, null);
+        transaction.setTransactionId(nextTransactionId++);
+        event.addTransaction(transaction);
+        return transaction;
+    }
+
+    private void assertUpToDate(Currency currency) {
+        assertEquals(debtSimplifier.toBalances(event, currency), ledger.toBalances(1L, currency).get().value());
+        assertEquals(debtSimplifier.simplify(event, currency), ledger.simplify(1L, currency).get().value());
+        assertEquals(debtSimplifier.sumOfExpenses(event, currency), ledger.sumOfExpenses(1L, currency).get().value());
+        assertEquals(debtSimplifier.shareOfExpenses(event, currency),
+                ledger.shareOfExpenses(1L, currency).get().value());
+    }
+
+    private String eTag(Currency currency) {
+        return ledger.simplify(1L, currency).get().eTag();
+    }
+
+    @Test
+    void constructor() {
+        assertThrows(NullPointerException.class, () -> new BalanceLedger(null, new TestEventRepository()));
+        assertThrows(NullPointerException.class, () -> new BalanceLedger(debtSimplifier, null));
+        assertThrows(IllegalArgumentException.class, () -> new BalanceLedger(debtSimplifier, new TestEventRepository(), 0));
+        assertEquals(BalanceLedger.DEFAULT_MAX_EVENTS, ledger.getMaxEvents());
+    }
+
+    @Test
+    void readsLoadOnce() {
+        assertUpToDate(EUR);
+        assertEquals(1, loads.get());
+        assertUpToDate(USD);
+        assertEquals(2, loads.get());
+        assertUpToDate(EUR);
+        assertEquals(2, loads.get());
+
+        BalanceLedger.Statistics statistics = ledger.getStatistics();
+        assertEquals(2, statistics.misses());
+        assertEquals(10, statistics.hits());
+        assertEquals(1, statistics.events());
+    }
+
+    @Test
+    void evictsLeastRecentlyRead() {
+        TestEventRepository repository = new TestEventRepository();
+        for (long id = 1; id <= 3; id++) {
+            Event other = new Event("event " + id);
+            other.setId(id);
+            repository.save(other);
+        }
+        BalanceLedger small = new BalanceLedger(debtSimplifier, repository, 2);
+
+        small.toBalances(1L, EUR);
+        small.toBalances(2L, EUR);
+        small.toBalances(1L, EUR);
+        small.toBalances(3L, EUR);
+        assertEquals(new BalanceLedger.Statistics(1, 3, 1, 2), small.getStatistics());
+
+        // 2 was read least recently
+        small.toBalances(1L, EUR);
+        small.toBalances(2L, EUR);
+        assertEquals(new BalanceLedger.Statistics(2, 4, 2, 2), small.getStatistics());
+    }
+
+    @Test
+    void eTags() {
+        String eur = eTag(EUR);
+        assertEquals(eur, eTag(EUR));
+        assertEquals(eur, ledger.toBalances(1L, EUR).get().eTag());
+        assertNotEquals(eur, eTag(USD));
+
+        ledger.transactionAdded(1L, addExpense(0, "1.00", EUR, participants));
+        String added = eTag(EUR);
+        assertNotEquals(eur, added);
+
+        ledger.eventChanged(1L);
+        String changed = eTag(EUR);
+        assertNotEquals(eur, changed);
+        assertNotEquals(added, changed);
+
+        exchangeRateFactory.addExchangeRate(new ExchangeRate(today, USD, EUR, 0.8));
+        assertNotEquals(changed, eTag(EUR));
+    }
+
+    @Test
+    void concurrentReadsBuildOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<BalanceLedger.Cached<Set<Debt>>>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return ledger.simplify(1L, EUR).get();
+                }));
+            }
+            start.countDown();
+
+            Set<Debt> expected = debtSimplifier.simplify(event, EUR);
+            String eTag = eTag(EUR);
+            for (Future<BalanceLedger.Cached<Set<Debt>>> result : results) {
+                assertEquals(expected, result.get(10, TimeUnit.SECONDS).value());
+                assertEquals(eTag, result.get().eTag());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void summary() {
+        EventSummary summary = ledger.summary(1L, EUR).get().value();
+        assertEquals(debtSimplifier.sumOfExpenses(event, EUR), summary.sum());
+        assertEquals(debtSimplifier.shareOfExpenses(event, EUR), summary.shares());
+        assertEquals(debtSimplifier.toBalances(event, EUR), summary.balances());
+        assertEquals(debtSimplifier.simplify(event, EUR), summary.settlement());
+        assertEquals(eTag(EUR), ledger.summary(1L, EUR).get().eTag());
+        assertEquals(1, loads.get());
+        // the summary shares the results that are read separately
+        assertSame(summary.settlement(), ledger.simplify(1L, EUR).get().value());
+        assertSame(summary.balances(), ledger.toBalances(1L, EUR).get().value());
+
+        ledger.transactionAdded(1L, addExpense(2, "4.44", USD, participants));
+        summary = ledger.summary(1L, EUR).get().value();
+        assertEquals(debtSimplifier.toBalances(event, EUR), summary.balances());
+        assertEquals(debtSimplifier.simplify(event, EUR), summary.settlement());
+        assertEquals(1, loads.get());
+
+        assertEquals(Optional.empty(), ledger.summary(2L, EUR));
+    }
+
+    private BalanceLedger streamingLedger(AtomicInteger streams, int knownParticipants) {
+        TestEventRepository events = new TestEventRepository() {
+            @Override
+            public Optional<Event> findById(Long id) {
+                loads.incrementAndGet();
+                return super.findById(id);
+            }
+        };
+        events.save(event);
+        TestParticipantRepository participantRepository = new TestParticipantRepository() {
+            @Override
+            public List<Participant> findByEventId(Long eventId) {
+                return new ArrayList<>(participants.subList(0, knownParticipants));
+            }
+        };
+        TestTransactionRepository transactionRepository = new TestTransactionRepository() {
+            @Override
+            public long forEachOfEvent(Long eventId, Consumer<Transaction> action) {
+                streams.incrementAndGet();
+                List<Transaction> transactions = new ArrayList<>(event.getTransactions());
+                transactions.sort(Comparator.comparing(Transaction::getTransactionId));
+                transactions.forEach(action);
+                return transactions.size();
+            }
+        };
+        return new BalanceLedger(debtSimplifier, events, transactionRepository, participantRepository, 16);
+    }
+
+    @Test
+    void streamsTransactions() {
+        AtomicInteger streams = new AtomicInteger();
+        ledger = streamingLedger(streams, participants.size());
+
+        assertUpToDate(EUR);
+        assertEquals(1, streams.get());
+        assertEquals(0, loads.get());
+
+        ledger.transactionAdded(1L, addExpense(3, "2.50", USD, participants));
+        assertUpToDate(EUR);
+        assertEquals(1, streams.get());
+
+        assertEquals(Optional.empty(), ledger.simplify(2L, EUR));
+        assertEquals(1, streams.get());
+    }
+
+    @Test
+    void streamFallsBackToEvent() {
+        // participant 3 was added after the participants were read
+        AtomicInteger streams = new AtomicInteger();
+        ledger = streamingLedger(streams, 3);
+
+        assertUpToDate(EUR);
+        assertEquals(1, streams.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void ratesFetchedOnDemand() {
+        TestExchangeRateAPI api = new TestExchangeRateAPI(EUR);
+        api.setRates(today, Map.of(USD, 1 / 0.9));
+        api.setRates(today.minusDays(100), Map.of(USD, 1.2));
+        ExchangeRateFactory factory = new ExchangeRateFactory((File) null, api, false);
+        debtSimplifier = new DebtSimplifier(factory);
+        TestEventRepository repository = new TestEventRepository();
+        repository.save(event);
+        ledger = new BalanceLedger(debtSimplifier, repository);
+
+        // fetching the days of the event doesn't outdate the result right away
+        String eTag = eTag(EUR);
+        assertEquals(1, api.getRequests());
+        assertUpToDate(EUR);
+        assertEquals(eTag, eTag(EUR));
+        assertEquals(1, ledger.getStatistics().misses());
+
+        // neither does loading other days
+        factory.retrieveExchangeRates(today.minusDays(100));
+        assertEquals(2, api.getRequests());
+        assertEquals(eTag, eTag(EUR));
+        assertEquals(1, ledger.getStatistics().misses());
+
+        // but changing a day that is loaded does
+        factory.generateExchangeRates(EUR, new HashMap<>(Map.of(USD, 1.25)), today);
+        assertNotEquals(eTag, eTag(EUR));
+        assertUpToDate(EUR);
+    }
+
+    @Test
+    void ratesLoadedAfterFallback() {
+        TestExchangeRateAPI api = new TestExchangeRateAPI(EUR);
+        api.setRates(today, Map.of(USD, 1 / 0.9));
+        api.setRates(today.minusDays(100), Map.of(USD, 1.2));
+        ExchangeRateFactory factory = new ExchangeRateFactory((File) null, api, false);
+        factory.retrieveExchangeRates(today.minusDays(100));
+        debtSimplifier = new DebtSimplifier(factory);
+        TestEventRepository repository = new TestEventRepository();
+        repository.save(event);
+        ledger = new BalanceLedger(debtSimplifier, repository);
+
+        // the day of the event can't be fetched, so the old rate is used
+        api.setUnavailable(true);
+        String eTag = eTag(EUR);
+        assertEquals(eTag, eTag(EUR));
+        assertEquals(1, ledger.getStatistics().misses());
+
+        // once the day is loaded, the result is outdated
+        api.setUnavailable(false);
+        factory.retrieveExchangeRates(today);
+        assertNotEquals(eTag, eTag(EUR));
+        assertUpToDate(EUR);
+        assertEquals(2, ledger.getStatistics().misses());
+    }
+
+    @Test
+    void unknownEvent() {
+        assertEquals(Optional.empty(), ledger.toBalances(2L, EUR));
+        assertEquals(Optional.empty(), ledger.simplify(2L, EUR));
+        assertThrows(NullPointerException.class, () -> ledger.simplify(null, EUR));
+        assertThrows(NullPointerException.class, () -> ledger.simplify(1L, null));
+    }
+
+    @Test
+    void transactionAdded() {
+        assertUpToDate(EUR);
+        for (int i = 0; i < 5; i++) {
+            Transaction transaction = addExpense(i % 4, "1.0" + i, i % 2 == 0 ? USD : EUR, participants);
+            ledger.transactionAdded(1L, transaction);
+            assertUpToDate(EUR);
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void transactionAddedOutOfOrder() {
+        assertUpToDate(EUR);
+        Transaction transaction = addExpense(0, "5.00", EUR, participants);
+        transaction.setTransactionId(-1L);
+        ledger.transactionAdded(1L, transaction);
+
+        assertUpToDate(EUR);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void eventChanged() {
+        assertUpToDate(EUR);
+        event.removeTransaction(event.getTransactions().iterator().next());
+        ledger.eventChanged(1L);
+
+        assertUpToDate(EUR);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void ratesChanged() {
+        assertUpToDate(EUR);
+        exchangeRateFactory.addExchangeRate(new ExchangeRate(today, USD, EUR, 0.8));
+
+        assertUpToDate(EUR);
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,100 @@
+package server.financial;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DailyFileExchangeRateStoreTest {
+
+    private final static Currency EUR = Currency.getInstance("EUR");
+    private final static Currency USD = Currency.getInstance("USD");
+    private final static LocalDate date = LocalDate.ofYearDay(2010, 26);
+
+    private File directory;
+    private DailyFileExchangeRateStore store;
+    private List<ExchangeRate> table;
+
+    @BeforeEach
+    void setup() throws IOException {
+        directory = Files.createTempDirectory("DFERSRates").toFile();
+        store = new DailyFileExchangeRateStore(directory);
+        table = List.of(
+                new ExchangeRate(date, EUR, EUR, 1),
+                new ExchangeRate(date, EUR, USD, 1.1),
+                new ExchangeRate(date, USD, EUR, 1 / 1.1),
+                new ExchangeRate(date, USD, USD, 1));
+    }
+
+    @Test
+    void writeAndRead() throws IOException {
+        assertEquals(List.of(), store.read(date));
+        assertTrue(store.getDates().isEmpty());
+
+        store.write(date, table);
+
+        List<ExchangeRate> read = store.read(date);
+        assertEquals(table, read);
+        assertEquals(1.1, read.get(1).getRate());
+        assertEquals(1 / 1.1, read.get(2).getRate());
+        assertEquals(new TreeSet<>(Set.of(date)), store.getDates());
+        assertEquals(1, Objects.requireNonNull(directory.listFiles()).length);
+    }
+
+    @Test
+    void writeReplaces() throws IOException {
+        store.write(date, table);
+        store.write(date, List.of(new ExchangeRate(date, EUR, USD, 1.2)));
+
+        List<ExchangeRate> read = store.read(date);
+        assertEquals(1, read.size());
+        assertEquals(1.2, read.getFirst().getRate());
+    }
+
+    @Test
+    void writeOtherDay() {
+        assertThrows(IllegalArgumentException.class, () -> store.write(date.plusDays(1), table));
+        assertEquals(0, Objects.requireNonNull(directory.listFiles()).length);
+    }
+
+    @Test
+    void malformed() throws IOException {
+        Files.writeString(directory.toPath().resolve(DailyFileExchangeRateStore.generateFileName(date)), "EUR;USD;1.1\n");
+        assertThrows(IOException.class, () -> store.read(date));
+    }
+
+    @Test
+    void migrateLegacyFiles() throws IOException {
+        Files.writeString(directory.toPath().resolve("2010-01-26.EUR.USD.txt"), "1.1");
+        Files.writeString(directory.toPath().resolve("2010-01-26.USD.EUR.txt"), "0.9");
+        Files.writeString(directory.toPath().resolve("2010-01-27.EUR.USD.txt"), "1.2");
+        Files.writeString(directory.toPath().resolve("unrelated.txt"), "hi");
+        // the new format wins over the old one
+        store.write(date, List.of(new ExchangeRate(date, USD, EUR, 0.8)));
+
+        assertEquals(new TreeSet<>(Set.of(date, date.plusDays(1))), store.getDates());
+
+        Map<ExchangeRate, Double> rates = new HashMap<>();
+        for (ExchangeRate exchangeRate : store.read(date))
+            rates.put(exchangeRate, exchangeRate.getRate());
+        assertEquals(Map.of(
+                new ExchangeRate(date, EUR, USD, 1.1), 1.1,
+                new ExchangeRate(date, USD, EUR, 0.8), 0.8), rates);
+        assertEquals(1.2, store.read(date.plusDays(1)).getFirst().getRate());
+
+        Set<String> files = new HashSet<>(List.of(Objects.requireNonNull(directory.list())));
+        assertEquals(Set.of("2010-01-26.csv", "2010-01-27.csv", "unrelated.txt"), files);
+        assertEquals(0, store.migrateLegacyFiles());
+    }
+
+    @Test
+    void generateFileName() {
+        assertEquals("2010-01-26.csv", DailyFileExchangeRateStore.generateFileName(date));
+    }
+}
@@ -0,0 +1,107 @@
+package server.financial;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseExchangeRateStoreTest {
+
+    private final static Currency EUR = Currency.getInstance("EUR");
+    private final static Currency USD = Currency.getInstance("USD");
+    private final static Currency JPY = Currency.getInstance("JPY");
+    private final static LocalDate date = LocalDate.ofYearDay(2010, 26);
+
+    private TestExchangeRateRepository repository;
+    private DatabaseExchangeRateStore store;
+    private List<ExchangeRate> table;
+
+    @BeforeEach
+    void setup() {
+        repository = new TestExchangeRateRepository();
+        store = new DatabaseExchangeRateStore(repository);
+        table = List.of(
+                new ExchangeRate(date, EUR, EUR, 1),
+                new ExchangeRate(date, EUR, USD, 1.1),
+                new ExchangeRate(date, USD, EUR, 1 / 1.1),
+                new ExchangeRate(date, USD, USD, 1));
+    }
+
+    @Test
+    void writeAndRead() throws IOException {
+        assertTrue(store.isEmpty());
+        assertEquals(List.of(), store.read(date));
+
+        store.write(date, table);
+
+        List<ExchangeRate> read = store.read(date);
+        assertEquals(table, read);
+        assertEquals(1.1, read.get(1).getRate());
+        assertEquals(1 / 1.1, read.get(2).getRate());
+        assertEquals(new TreeSet<>(Set.of(date)), store.getDates());
+        assertEquals(Set.of(EUR, USD), store.getCurrencies());
+        assertFalse(store.isEmpty());
+    }
+
+    @Test
+    void writeReplaces() throws IOException {
+        store.write(date, table);
+        store.write(date, List.of(new ExchangeRate(date, EUR, USD, 1.2)));
+
+        List<ExchangeRate> read = store.read(date);
+        assertEquals(1, read.size());
+        assertEquals(1.2, read.getFirst().getRate());
+    }
+
+    @Test
+    void writeOtherDay() {
+        assertThrows(IllegalArgumentException.class, () -> store.write(date.plusDays(1), table));
+        assertTrue(repository.findAll().isEmpty());
+    }
+
+    @Test
+    void readDates() throws IOException {
+        store.write(date, table);
+        store.write(date.plusDays(1), List.of(new ExchangeRate(date.plusDays(1), EUR, JPY, 160)));
+        store.write(date.plusDays(2), List.of(new ExchangeRate(date.plusDays(2), EUR, JPY, 161)));
+
+        int queries = repository.getQueries();
+        Collection<ExchangeRate> read = store.read(List.of(date, date.plusDays(1)));
+        assertEquals(queries + 1, repository.getQueries());
+        assertEquals(5, read.size());
+        assertEquals(List.of(), store.read(List.of()));
+    }
+
+    @Test
+    void importFrom() throws IOException {
+        File directory = Files.createTempDirectory("DBERSRates").toFile();
+        DailyFileExchangeRateStore files = new DailyFileExchangeRateStore(directory);
+        files.write(date, table);
+
+        store.importFrom(files);
+        assertEquals(table, store.read(date));
+    }
+
+    @Test
+    void warmsFactory() throws IOException {
+        for (int day = 0; day < ExchangeRateFactory.LOAD_BATCH_SIZE + 1; day++) {
+            LocalDate d = date.plusDays(day);
+            store.write(d, List.of(new ExchangeRate(d, EUR, USD, 1.1)));
+        }
+
+        int queries = repository.getQueries();
+        ExchangeRateFactory factory = new ExchangeRateFactory(store, null, false);
+        factory.loadInBackground().join();
+
+        // the dates, the currencies and a query per batch of days
+        assertEquals(queries + 5, repository.getQueries());
+        assertEquals(ExchangeRateFactory.LOAD_BATCH_SIZE + 1, factory.getExchangeRates().size());
+        assertEquals(Set.of(EUR, USD), factory.getKnownCurrencies());
+    }
+}
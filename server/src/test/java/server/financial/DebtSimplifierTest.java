@@ -7,9 +7,12 @@ import server.financial.DebtSimplifier;
 import server.financial.ExchangeRate;
 import server.financial.ExchangeRateFactory;
 
+import java.io.File;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -19,6 +22,7 @@ class DebtSimplifierTest {
     private static final Currency USD = Currency.getInstance("USD");
 
     private DebtSimplifier debtSimplifier;
+    private DebtSimplifier.Session session;
     private Event event;
     private LinkedList<Participant> participants;
     private ExchangeRateFactory exchangeRateFactory;
@@ -48,7 +52,7 @@ class DebtSimplifierTest {
         exchangeRateFactory.addExchangeRate(new ExchangeRate(today, USD, USD, 1d));
 
         debtSimplifier = new DebtSimplifier(exchangeRateFactory);
-        debtSimplifier.setup(EUR, participants);
+        session = debtSimplifier.newSession(EUR, participants);
 
         invalidParticipant = event.addParticipant("Hannah");
 
@@ -63,8 +67,8 @@ class DebtSimplifierTest {
     @Test
     void constructor() {
         assertThrows(NullPointerException.class, () -> new DebtSimplifier(null));
-        assertThrows(NullPointerException.class, () -> debtSimplifier.setup(null, participants));
-        assertThrows(NullPointerException.class, () -> debtSimplifier.setup(EUR, null));
+        assertThrows(NullPointerException.class, () -> debtSimplifier.newSession(null, participants));
+        assertThrows(NullPointerException.class, () -> debtSimplifier.newSession(EUR, null));
     }
 
     @Test
@@ -91,52 +95,52 @@ class DebtSimplifierTest {
 
     @Test
     void addDebt() {
-        assertDoesNotThrow(() -> debtSimplifier.addDebt(debt1, today));
-        assertDoesNotThrow(() -> debtSimplifier.addDebt(debt2, today));
-        assertDoesNotThrow(() -> debtSimplifier.addDebt(debt3, today));
+        assertDoesNotThrow(() -> session.addDebt(debt1, today));
+        assertDoesNotThrow(() -> session.addDebt(debt2, today));
+        assertDoesNotThrow(() -> session.addDebt(debt3, today));
 
-        assertThrows(NullPointerException.class, () -> debtSimplifier.addDebt((Debt) null, today));
+        assertThrows(NullPointerException.class, () -> session.addDebt((Debt) null, today));
 
-        assertThrows(IllegalArgumentException.class, () -> debtSimplifier.addDebt(new Debt(invalidParticipant, participants.get(4), money2), today));
-        assertThrows(IllegalArgumentException.class, () -> debtSimplifier.addDebt(new Debt(participants.get(4), invalidParticipant, money2), today));
+        assertThrows(IllegalArgumentException.class, () -> session.addDebt(new Debt(invalidParticipant, participants.get(4), money2), today));
+        assertThrows(IllegalArgumentException.class, () -> session.addDebt(new Debt(participants.get(4), invalidParticipant, money2), today));
     }
 
     @Test
     void divideDebtsAdding() {
-        assertThrows(NullPointerException.class, () -> debtSimplifier.divideDebts(null, participants, new Money(new BigDecimal(participants.size()), EUR), today));
-        assertThrows(NullPointerException.class, () -> debtSimplifier.divideDebts(participants.getFirst(), null, new Money(new BigDecimal(participants.size()), EUR), today));
-        assertThrows(NullPointerException.class, () -> debtSimplifier.divideDebts(participants.getFirst(), participants, null, today));
-        assertThrows(IllegalArgumentException.class, () -> debtSimplifier.divideDebts(participants.getFirst(), new LinkedList<>(), new Money(new BigDecimal(participants.size()), EUR), today));
+        assertThrows(NullPointerException.class, () -> session.divideDebts(null, participants, new Money(new BigDecimal(participants.size()), EUR), today));
+        assertThrows(NullPointerException.class, () -> session.divideDebts(participants.getFirst(), null, new Money(new BigDecimal(participants.size()), EUR), today));
+        assertThrows(NullPointerException.class, () -> session.divideDebts(participants.getFirst(), participants, null, today));
+        assertThrows(IllegalArgumentException.class, () -> session.divideDebts(participants.getFirst(), new LinkedList<>(), new Money(new BigDecimal(participants.size()), EUR), today));
 
         List<Participant> invalidParticipants = new LinkedList<>(participants);
         invalidParticipants.add(invalidParticipant);
 
-        assertThrows(IllegalArgumentException.class, () -> debtSimplifier.divideDebts(participants.getFirst(), invalidParticipants, new Money(new BigDecimal(participants.size()), EUR), today));
-        assertThrows(IllegalArgumentException.class, () -> debtSimplifier.divideDebts(invalidParticipant, participants, new Money(new BigDecimal(participants.size()), EUR), today));
+        assertThrows(IllegalArgumentException.class, () -> session.divideDebts(participants.getFirst(), invalidParticipants, new Money(new BigDecimal(participants.size()), EUR), today));
+        assertThrows(IllegalArgumentException.class, () -> session.divideDebts(invalidParticipant, participants, new Money(new BigDecimal(participants.size()), EUR), today));
 
         List<Participant> invalidParticipants2 = new LinkedList<>(participants);
         invalidParticipants2.add(participants.getFirst());
 
-        assertThrows(IllegalArgumentException.class, () -> debtSimplifier.divideDebts(participants.getFirst(), invalidParticipants2, new Money(new BigDecimal(participants.size()), EUR), today));
+        assertThrows(IllegalArgumentException.class, () -> session.divideDebts(participants.getFirst(), invalidParticipants2, new Money(new BigDecimal(participants.size()), EUR), today));
 
 
-        assertDoesNotThrow(() -> debtSimplifier.divideDebts(participants.getFirst(), participants, new Money(new BigDecimal(participants.size()), EUR), today));
-        assertDoesNotThrow(() -> debtSimplifier.divideDebts(participants.getFirst(), participants, new Money(new BigDecimal(101), EUR), today));
-        assertDoesNotThrow(() -> debtSimplifier.divideDebts(participants.getFirst(), participants, new Money(new BigDecimal(24.49), EUR), today));
+        assertDoesNotThrow(() -> session.divideDebts(participants.getFirst(), participants, new Money(new BigDecimal(participants.size()), EUR), today));
+        assertDoesNotThrow(() -> session.divideDebts(participants.getFirst(), participants, new Money(new BigDecimal(101), EUR), today));
+        assertDoesNotThrow(() -> session.divideDebts(participants.getFirst(), participants, new Money(new BigDecimal(24.49), EUR), today));
 
         exchangeRateFactory.addExchangeRate(new ExchangeRate(today, USD, EUR, 2));
-        assertDoesNotThrow(() -> debtSimplifier.divideDebts(participants.getFirst(), participants, new Money(new BigDecimal(24.49), USD), today));
+        assertDoesNotThrow(() -> session.divideDebts(participants.getFirst(), participants, new Money(new BigDecimal(24.49), USD), today));
 
         List<Participant> debtors = new LinkedList<>();
         debtors.add(participants.get(1));
-        assertDoesNotThrow(() -> debtSimplifier.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(101), EUR), today));
+        assertDoesNotThrow(() -> session.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(101), EUR), today));
         debtors.add(participants.get(2));
-        assertDoesNotThrow(() -> debtSimplifier.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(42), EUR), today));
+        assertDoesNotThrow(() -> session.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(42), EUR), today));
         debtors.add(participants.get(0));
-        assertDoesNotThrow(() -> debtSimplifier.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(8), EUR), today));
+        assertDoesNotThrow(() -> session.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(8), EUR), today));
         debtors.clear();
         debtors.add(participants.get(0));
-        assertDoesNotThrow(() -> debtSimplifier.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(5364), EUR), today));
+        assertDoesNotThrow(() -> session.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(5364), EUR), today));
     }
 
     @Test
@@ -151,8 +155,8 @@ class DebtSimplifierTest {
                 new Money(new BigDecimal(10), EUR)
         ));
 
-        debtSimplifier.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(10), EUR), today);
-        assertEquals(expected, debtSimplifier.simplify());
+        session.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(10), EUR), today);
+        assertEquals(expected, session.simplify());
     }
 
     @Test
@@ -174,8 +178,8 @@ class DebtSimplifierTest {
                 new Money(new BigDecimal(5), EUR)
         ));
 
-        debtSimplifier.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(10), EUR), today);
-        assertEquals(expected, debtSimplifier.simplify());
+        session.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(10), EUR), today);
+        assertEquals(expected, session.simplify());
     }
 
     @Test
@@ -204,8 +208,8 @@ class DebtSimplifierTest {
         ));
 
 
-        debtSimplifier.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(10), EUR), today);
-        assertEquals(expected, debtSimplifier.simplify());
+        session.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(10), EUR), today);
+        assertEquals(expected, session.simplify());
     }
 
     @Test
@@ -235,8 +239,8 @@ class DebtSimplifierTest {
                 new Money(new BigDecimal(3.67), EUR)
         ));
 
-        debtSimplifier.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(10), USD), today);
-        assertEquals(expected, debtSimplifier.simplify());
+        session.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(10), USD), today);
+        assertEquals(expected, session.simplify());
     }
 
     @Test
@@ -266,34 +270,86 @@ class DebtSimplifierTest {
                 new Money(new BigDecimal(7d), EUR)
         ));
 
-        debtSimplifier.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(10), EUR), today);
-        debtSimplifier.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(10), USD), today);
-        assertEquals(expected, debtSimplifier.simplify());
+        session.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(10), EUR), today);
+        session.divideDebts(participants.getFirst(), debtors, new Money(new BigDecimal(10), USD), today);
+        assertEquals(expected, session.simplify());
+    }
+
+    private record CentsPayedExtra(Participant participant, int cents) implements Comparable<CentsPayedExtra> {
+        @Override
+        public int compareTo(CentsPayedExtra other) {
+            return Integer.compare(cents, other.cents);
+        }
+    }
+
+    @Test
+    void divideDebtsExtraCents() {
+        // the extra cents used to be handed out through a PriorityQueue of the debtors in order of id
+        Random random = new Random(42);
+        Map<Participant, Integer> history = new HashMap<>();
+        Map<Participant, Long> expected = new HashMap<>();
+        for (Participant participant : participants) {
+            history.put(participant, 0);
+            expected.put(participant, 0L);
+        }
+
+        for (int i = 0; i < 500; i++) {
+            List<Participant> shuffled = new ArrayList<>(participants);
+            Collections.shuffle(shuffled, random);
+            Participant creditor = shuffled.getFirst();
+            List<Participant> debtors = shuffled.subList(random.nextInt(2), 2 + random.nextInt(shuffled.size() - 1));
+            long cents = 100 + random.nextInt(1_000);
+            session.divideDebts(creditor, debtors, new Money(BigDecimal.valueOf(cents, 2), EUR), today);
+
+            PriorityQueue<CentsPayedExtra> queue = new PriorityQueue<>(debtors.stream()
+                    .sorted(Comparator.comparingLong(Participant::getParticipantId))
+                    .map(debtor -> new CentsPayedExtra(debtor, history.get(debtor)))
+                    .toList());
+            Set<Participant> extra = new HashSet<>();
+            for (long j = 0; j < cents % debtors.size(); j++) {
+                Participant debtor = queue.poll().participant();
+                history.merge(debtor, 1, Integer::sum);
+                extra.add(debtor);
+            }
+            for (Participant debtor : debtors) {
+                if (debtor.equals(creditor))
+                    continue;
+                long share = cents / debtors.size() + (extra.contains(debtor) ? 1 : 0);
+                expected.merge(debtor, -share, Long::sum);
+                expected.merge(creditor, share, Long::sum);
+            }
+
+            Set<ParticipantValuePair> balances = new HashSet<>();
+            for (Map.Entry<Participant, Long> balance : expected.entrySet())
+                balances.add(new ParticipantValuePair(balance.getKey(),
+                        new Money(BigDecimal.valueOf(balance.getValue(), 2), EUR)));
+            assertEquals(balances, session.toBalances());
+        }
     }
 
     @Test
     void simplify0() {
         Set<Debt> expected = new HashSet<>();
 
-        assertEquals(expected, debtSimplifier.simplify());
+        assertEquals(expected, session.simplify());
     }
 
     @Test
     void simplify1() {
-        debtSimplifier.addDebt(debt1, today);
+        session.addDebt(debt1, today);
 
         Set<Debt> expected = new HashSet<>();
 
         expected.add(debt1);
 
-        assertEquals(expected, debtSimplifier.simplify());
+        assertEquals(expected, session.simplify());
     }
 
     @Test
     void simplify2() {
-        debtSimplifier.addDebt(debt1, today);
-        debtSimplifier.addDebt(debt2, today);
-        debtSimplifier.addDebt(debt3, today);
+        session.addDebt(debt1, today);
+        session.addDebt(debt2, today);
+        session.addDebt(debt3, today);
 
         Set<Debt> expected = new HashSet<>();
 
@@ -303,7 +359,7 @@ class DebtSimplifierTest {
                 money2
         ));
 
-        assertEquals(expected, debtSimplifier.simplify());
+        assertEquals(expected, session.simplify());
     }
 
     @Test
@@ -312,11 +368,11 @@ class DebtSimplifierTest {
         exchangeRateFactory.addExchangeRate(new ExchangeRate(today, EUR, USD, eur_to_usd));
 
         debtSimplifier = new DebtSimplifier(exchangeRateFactory);
-        debtSimplifier.setup(USD, event.getParticipants());
+        session = debtSimplifier.newSession(USD, event.getParticipants());
 
-        debtSimplifier.addDebt(debt1, today);
-        debtSimplifier.addDebt(debt2, today);
-        debtSimplifier.addDebt(debt3, today);
+        session.addDebt(debt1, today);
+        session.addDebt(debt2, today);
+        session.addDebt(debt3, today);
 
         Set<Debt> expected = new HashSet<>();
 
@@ -326,16 +382,16 @@ class DebtSimplifierTest {
                 exchangeRateFactory.getMostRecent(EUR, USD).convert(money2)
         ));
 
-        assertEquals(expected, debtSimplifier.simplify());
+        assertEquals(expected, session.simplify());
     }
 
     @Test
     void simplify4() {
-        debtSimplifier.addDebt(new Debt(participants.get(0), participants.get(1), money1), today);
-        debtSimplifier.addDebt(new Debt(participants.get(1), participants.get(2), money1), today);
-        debtSimplifier.addDebt(new Debt(participants.get(2), participants.get(3), money1), today);
-        debtSimplifier.addDebt(new Debt(participants.get(3), participants.get(4), money1), today);
-        debtSimplifier.addDebt(new Debt(participants.get(4), participants.get(5), money1), today);
+        session.addDebt(new Debt(participants.get(0), participants.get(1), money1), today);
+        session.addDebt(new Debt(participants.get(1), participants.get(2), money1), today);
+        session.addDebt(new Debt(participants.get(2), participants.get(3), money1), today);
+        session.addDebt(new Debt(participants.get(3), participants.get(4), money1), today);
+        session.addDebt(new Debt(participants.get(4), participants.get(5), money1), today);
 
         Set<Debt> expected = new HashSet<>();
 
@@ -345,18 +401,18 @@ class DebtSimplifierTest {
                 money1
         ));
 
-        assertEquals(expected, debtSimplifier.simplify());
+        assertEquals(expected, session.simplify());
     }
 
     @Test
     void simplify5() {
-        debtSimplifier.addDebt(new Debt(participants.get(0), participants.get(1), money1), today);
-        debtSimplifier.addDebt(new Debt(participants.get(1), participants.get(2), money1), today);
-        debtSimplifier.addDebt(new Debt(participants.get(2), participants.get(3), money1), today);
-        debtSimplifier.addDebt(new Debt(participants.get(3), participants.get(4), money1), today);
-        debtSimplifier.addDebt(new Debt(participants.get(4), participants.get(5), money1), today);
+        session.addDebt(new Debt(participants.get(0), participants.get(1), money1), today);
+        session.addDebt(new Debt(participants.get(1), participants.get(2), money1), today);
+        session.addDebt(new Debt(participants.get(2), participants.get(3), money1), today);
+        session.addDebt(new Debt(participants.get(3), participants.get(4), money1), today);
+        session.addDebt(new Debt(participants.get(4), participants.get(5), money1), today);
 
-        debtSimplifier.addDebt(new Debt(participants.get(1), participants.get(4), money2), today);
+        session.addDebt(new Debt(participants.get(1), participants.get(4), money2), today);
 
         Set<Debt> expected = new HashSet<>();
 
@@ -372,18 +428,18 @@ class DebtSimplifierTest {
                 money2
         ));
 
-        assertEquals(expected, debtSimplifier.simplify());
+        assertEquals(expected, session.simplify());
     }
 
     @Test
     void simplify6() {
-        debtSimplifier.addDebt(new Debt(participants.get(0), participants.get(1), money1), today);
-        debtSimplifier.addDebt(new Debt(participants.get(1), participants.get(2), money1), today);
+        session.addDebt(new Debt(participants.get(0), participants.get(1), money1), today);
+        session.addDebt(new Debt(participants.get(1), participants.get(2), money1), today);
 
-        debtSimplifier.addDebt(new Debt(participants.get(2), participants.get(3), money2), today);
+        session.addDebt(new Debt(participants.get(2), participants.get(3), money2), today);
 
-        debtSimplifier.addDebt(new Debt(participants.get(3), participants.get(4), money1), today);
-        debtSimplifier.addDebt(new Debt(participants.get(4), participants.get(5), money1), today);
+        session.addDebt(new Debt(participants.get(3), participants.get(4), money1), today);
+        session.addDebt(new Debt(participants.get(4), participants.get(5), money1), today);
 
 
         Set<Debt> expected = new HashSet<>();
@@ -400,13 +456,13 @@ class DebtSimplifierTest {
                 money1
         ));
 
-        assertEquals(expected, debtSimplifier.simplify());
+        assertEquals(expected, session.simplify());
     }
 
     @Test
     void simplify7() {
-        debtSimplifier.addDebt(new Debt(participants.get(0), participants.get(1), money2), today);
-        debtSimplifier.addDebt(new Debt(participants.get(1), participants.get(2), money1), today);
+        session.addDebt(new Debt(participants.get(0), participants.get(1), money2), today);
+        session.addDebt(new Debt(participants.get(1), participants.get(2), money1), today);
 
         Set<Debt> expected = new HashSet<>();
 
@@ -422,13 +478,13 @@ class DebtSimplifierTest {
                 money1
         ));
 
-        assertEquals(expected, debtSimplifier.simplify());
+        assertEquals(expected, session.simplify());
     }
 
     @Test
     void simplify8() {
-        debtSimplifier.addDebt(new Debt(participants.get(0), participants.get(1), money1), today);
-        debtSimplifier.addDebt(new Debt(participants.get(1), participants.get(2), money2), today);
+        session.addDebt(new Debt(participants.get(0), participants.get(1), money1), today);
+        session.addDebt(new Debt(participants.get(1), participants.get(2), money2), today);
 
         Set<Debt> expected = new HashSet<>();
 
@@ -444,17 +500,17 @@ class DebtSimplifierTest {
                 money1
         ));
 
-        assertEquals(expected, debtSimplifier.simplify());
+        assertEquals(expected, session.simplify());
     }
 
     @Test
     void simplify9() {
-        debtSimplifier.addDebt(new Debt(participants.get(0), participants.get(1), new Money(new BigDecimal(10), EUR)), today);
-        debtSimplifier.addDebt(new Debt(participants.get(1), participants.get(2), new Money(new BigDecimal(20), EUR)), today);
-        debtSimplifier.addDebt(new Debt(participants.get(3), participants.get(2), new Money(new BigDecimal(30), EUR)), today);
-        debtSimplifier.addDebt(new Debt(participants.get(1), participants.get(0), new Money(new BigDecimal(20), EUR)), today);
-        debtSimplifier.addDebt(new Debt(participants.get(6), participants.get(3), new Money(new BigDecimal(15), EUR)), today);
-        debtSimplifier.addDebt(new Debt(participants.get(0), participants.get(6), new Money(new BigDecimal( 5), EUR)), today);
+        session.addDebt(new Debt(participants.get(0), participants.get(1), new Money(new BigDecimal(10), EUR)), today);
+        session.addDebt(new Debt(participants.get(1), participants.get(2), new Money(new BigDecimal(20), EUR)), today);
+        session.addDebt(new Debt(participants.get(3), participants.get(2), new Money(new BigDecimal(30), EUR)), today);
+        session.addDebt(new Debt(participants.get(1), participants.get(0), new Money(new BigDecimal(20), EUR)), today);
+        session.addDebt(new Debt(participants.get(6), participants.get(3), new Money(new BigDecimal(15), EUR)), today);
+        session.addDebt(new Debt(participants.get(0), participants.get(6), new Money(new BigDecimal( 5), EUR)), today);
 
         Set<Debt> expected = new HashSet<>();
 
@@ -482,22 +538,22 @@ class DebtSimplifierTest {
                 new Money(new BigDecimal(30), EUR)
         ));
 
-        assertEquals(expected, debtSimplifier.simplify());
+        assertEquals(expected, session.simplify());
     }
 
     @Test
     void simplifyCycle0() {
-        debtSimplifier.addDebt(new Debt(participants.get(0), participants.get(1), money1), today);
-        debtSimplifier.addDebt(new Debt(participants.get(1), participants.get(0), money1), today);
-        assertEquals(new HashSet<>(), debtSimplifier.simplify());
+        session.addDebt(new Debt(participants.get(0), participants.get(1), money1), today);
+        session.addDebt(new Debt(participants.get(1), participants.get(0), money1), today);
+        assertEquals(new HashSet<>(), session.simplify());
     }
 
     @Test
     void simplifyCycle1() {
-        debtSimplifier.addDebt(new Debt(participants.get(0), participants.get(1), money1), today);
-        debtSimplifier.addDebt(new Debt(participants.get(1), participants.get(2), money1), today);
-        debtSimplifier.addDebt(new Debt(participants.get(2), participants.get(0), money1), today);
-        assertEquals(new HashSet<>(), debtSimplifier.simplify());
+        session.addDebt(new Debt(participants.get(0), participants.get(1), money1), today);
+        session.addDebt(new Debt(participants.get(1), participants.get(2), money1), today);
+        session.addDebt(new Debt(participants.get(2), participants.get(0), money1), today);
+        assertEquals(new HashSet<>(), session.simplify());
     }
 
     @Test
@@ -507,17 +563,17 @@ class DebtSimplifierTest {
         exchangeRateFactory.addExchangeRate(new ExchangeRate(today, EUR, USD, eur_to_usd));
         exchangeRateFactory.addExchangeRate(new ExchangeRate(today, USD, EUR, 1/eur_to_usd));
 
-        debtSimplifier.addDebt(new Debt(participants.get(0), participants.get(1), new Money(new BigDecimal(2), EUR)), today);
-        debtSimplifier.addDebt(new Debt(participants.get(1), participants.get(2), new Money(new BigDecimal(3), USD)), today);
-        debtSimplifier.addDebt(new Debt(participants.get(2), participants.get(0), new Money(new BigDecimal(2), EUR)), today);
+        session.addDebt(new Debt(participants.get(0), participants.get(1), new Money(new BigDecimal(2), EUR)), today);
+        session.addDebt(new Debt(participants.get(1), participants.get(2), new Money(new BigDecimal(3), USD)), today);
+        session.addDebt(new Debt(participants.get(2), participants.get(0), new Money(new BigDecimal(2), EUR)), today);
 
-        assertEquals(new HashSet<>(), debtSimplifier.simplify());
+        assertEquals(new HashSet<>(), session.simplify());
     }
 
     @Test
     void simplifyCycle2_1() {
         debtSimplifier = new DebtSimplifier(exchangeRateFactory);
-        debtSimplifier.setup(USD, event.getParticipants());
+        session = debtSimplifier.newSession(USD, event.getParticipants());
 
 
         final double eur_to_usd = 1.5;
@@ -525,19 +581,19 @@ class DebtSimplifierTest {
         exchangeRateFactory.addExchangeRate(new ExchangeRate(today, EUR, USD, eur_to_usd));
         exchangeRateFactory.addExchangeRate(new ExchangeRate(today, USD, EUR, 1/eur_to_usd));
 
-        debtSimplifier.addDebt(new Debt(participants.get(0), participants.get(1), new Money(new BigDecimal(2), EUR)), today);
-        debtSimplifier.addDebt(new Debt(participants.get(1), participants.get(2), new Money(new BigDecimal(3), USD)), today);
-        debtSimplifier.addDebt(new Debt(participants.get(2), participants.get(0), new Money(new BigDecimal(2), EUR)), today);
+        session.addDebt(new Debt(participants.get(0), participants.get(1), new Money(new BigDecimal(2), EUR)), today);
+        session.addDebt(new Debt(participants.get(1), participants.get(2), new Money(new BigDecimal(3), USD)), today);
+        session.addDebt(new Debt(participants.get(2), participants.get(0), new Money(new BigDecimal(2), EUR)), today);
 
-        assertEquals(new HashSet<>(), debtSimplifier.simplify());
+        assertEquals(new HashSet<>(), session.simplify());
     }
 
 
     @Test
     void simplifyCycle3() {
-        debtSimplifier.addDebt(new Debt(participants.get(0), participants.get(1), new Money(new BigDecimal(30), EUR)), today);
-        debtSimplifier.addDebt(new Debt(participants.get(1), participants.get(2), new Money(new BigDecimal(20), EUR)), today);
-        debtSimplifier.addDebt(new Debt(participants.get(2), participants.get(0), new Money(new BigDecimal(30), EUR)), today);
+        session.addDebt(new Debt(participants.get(0), participants.get(1), new Money(new BigDecimal(30), EUR)), today);
+        session.addDebt(new Debt(participants.get(1), participants.get(2), new Money(new BigDecimal(20), EUR)), today);
+        session.addDebt(new Debt(participants.get(2), participants.get(0), new Money(new BigDecimal(30), EUR)), today);
 
 
         Set<Debt> expected = new HashSet<>();
@@ -547,7 +603,7 @@ class DebtSimplifierTest {
                 participants.get(1),
                 new Money(new BigDecimal(10), EUR)
         ));
-        assertEquals(expected, debtSimplifier.simplify());
+        assertEquals(expected, session.simplify());
     }
 
     @Test
@@ -574,4 +630,200 @@ class DebtSimplifierTest {
         assertThrows(NullPointerException.class, () -> debtSimplifier.sumOfExpenses(event, EUR));
     }
 
+    @Test
+    void addDebtsRetrievesRatesAtOnce() {
+        TestExchangeRateAPI api = new TestExchangeRateAPI(EUR);
+        LocalDate monday = LocalDate.of(2024, 1, 8);
+        for (int i = 0; i < 3; i++)
+            api.setRates(monday.plusDays(i), Map.of(USD, 1d + i));
+
+        DebtSimplifier simplifier = new DebtSimplifier(new ExchangeRateFactory((File) null, api, true));
+        DebtSimplifier.Session session = simplifier.newSession(EUR, participants);
+
+        for (int i = 0; i < 3; i++) {
+            Transaction transaction = Transaction.createDebt(participants.get(0), "thee",
+                    new Money(new BigDecimal(6), USD), List.of(participants.get(1)), event, monday.plusDays(i), null);
+            transaction.setTransactionId((long) i);
+            event.addTransaction(transaction);
+        }
+        session.addDebts(event);
+
+        assertEquals(1, api.getRequests());
+        // 6 + 3 + 2 EUR
+        assertEquals(Set.of(new Debt(participants.get(1), participants.get(0), new Money(new BigDecimal(11), EUR))),
+                session.simplify());
+    }
+
+    @Test
+    void convertsOncePerDateAndCurrency() {
+        AtomicInteger lookups = new AtomicInteger();
+        ExchangeRateFactory factory = new ExchangeRateFactory(null, null) {
+            @Override
+            public ExchangeRate getExchangeRateOrClosest(LocalDate date, Currency from, Currency to) {
+                lookups.incrementAndGet();
+                return super.getExchangeRateOrClosest(date, from, to);
+            }
+        };
+        factory.addExchangeRate(new ExchangeRate(today, USD, EUR, 0.5));
+        DebtSimplifier simplifier = new DebtSimplifier(factory);
+        DebtSimplifier.Session session = simplifier.newSession(EUR, participants);
+
+        for (int i = 0; i < 3; i++)
+            session.divideDebts(participants.get(0), participants.subList(0, 3), new Money(new BigDecimal(6), USD), today);
+        // no rate is needed, not even one from EUR to EUR
+        session.divideDebts(participants.get(0), participants.subList(0, 3), new Money(new BigDecimal(6), EUR),
+                today.minusDays(1));
+
+        assertEquals(1, lookups.get());
+        assertEquals(Set.of(new Debt(participants.get(1), participants.get(0), new Money(new BigDecimal(5), EUR)),
+                        new Debt(participants.get(2), participants.get(0), new Money(new BigDecimal(5), EUR))),
+                session.simplify());
+    }
+
+    @Test
+    void toBalances() {
+        List<Participant> withDuplicate = new ArrayList<>(participants.subList(0, 3));
+        withDuplicate.add(participants.get(0));
+        session = debtSimplifier.newSession(EUR, withDuplicate);
+
+        session.divideDebts(participants.get(0), participants.subList(0, 3), new Money(new BigDecimal(10), EUR), today);
+        session.addDebt(debt3, today);
+
+        assertEquals(Set.of(
+                new ParticipantValuePair(participants.get(0), new Money(new BigDecimal("6.66"), EUR)),
+                new ParticipantValuePair(participants.get(1), new Money(new BigDecimal("-23.33"), EUR)),
+                new ParticipantValuePair(participants.get(2), new Money(new BigDecimal("16.67"), EUR))),
+                session.toBalances());
+    }
+
+    @Test
+    void simplifyOptimal() {
+        Money two = new Money(new BigDecimal("2.00"), EUR);
+        Money four = new Money(new BigDecimal("4.00"), EUR);
+        Money five = new Money(new BigDecimal("5.00"), EUR);
+        session.addDebt(new Debt(participants.get(2), participants.get(1), two), today);
+        session.addDebt(new Debt(participants.get(3), participants.get(1), four), today);
+        session.addDebt(new Debt(participants.get(4), participants.get(0), five), today);
+
+        // greedy matches 5 with 2 first and needs a fourth transfer
+        assertEquals(4, session.simplify().size());
+        assertEquals(Set.of(
+                new Debt(participants.get(2), participants.get(1), two),
+                new Debt(participants.get(3), participants.get(1), four),
+                new Debt(participants.get(4), participants.get(0), five)),
+                session.simplify(DebtSimplifier.SETTLEMENT_BUDGET));
+        assertThrows(NullPointerException.class, () -> session.simplify(null));
+    }
+
+    @Test
+    void simplifyOptimalSettlesBalances() {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            DebtSimplifier.Session session = debtSimplifier.newSession(EUR, participants);
+            for (int i = 0; i < 6; i++) {
+                Collections.shuffle(participants, random);
+                session.addDebt(new Debt(participants.get(0), participants.get(1),
+                        new Money(BigDecimal.valueOf(1 + random.nextInt(5), 0), EUR)), today);
+            }
+
+            Set<Debt> greedy = session.simplify();
+            Set<Debt> optimal = session.simplify(DebtSimplifier.SETTLEMENT_BUDGET);
+            assertTrue(optimal.size() <= greedy.size());
+
+            Map<Participant, BigDecimal> settled = new HashMap<>();
+            for (ParticipantValuePair balance : session.toBalances())
+                settled.put(balance.participant(), balance.money().getAmount());
+            for (Debt debt : optimal) {
+                settled.merge(debt.from(), debt.amount().getAmount(), BigDecimal::add);
+                settled.merge(debt.to(), debt.amount().getAmount(), BigDecimal::subtract);
+            }
+            for (BigDecimal remainder : settled.values())
+                assertEquals(0, remainder.signum());
+        }
+    }
+
+    private void addRandomTransactions(int amount, Random random) {
+        List<Currency> currencies = List.of(EUR, USD, Currency.getInstance("GBP"));
+        for (int day = 0; day < 5; day++) {
+            for (Currency currency : currencies)
+                exchangeRateFactory.addExchangeRate(new ExchangeRate(today.minusDays(day), currency, EUR,
+                        currency.equals(EUR) ? 1d : 0.5 + random.nextDouble()));
+        }
+        for (int i = 0; i < amount; i++) {
+            List<Participant> shuffled = new ArrayList<>(participants);
+            Collections.shuffle(shuffled, random);
+            Money money = new Money(BigDecimal.valueOf(100 + random.nextInt(10_000), 2),
+                    currencies.get(random.nextInt(3)));
+            LocalDate date = today.minusDays(random.nextInt(5));
+            Transaction transaction = i % 10 == 0
+                    ? Transaction.createPayoff(shuffled.get(0), money, shuffled.get(1), event, date)
+                    : Transaction.createDebt(shuffled.getFirst(), "expense", money,
+                            new ArrayList<>(shuffled.subList(0, 1 + random.nextInt(shuffled.size()))),
+                            event, date, null);
+            transaction.setTransactionId((long) i);
+            event.addTransaction(transaction);
+        }
+    }
+
+    @Test
+    void addDebtsInParallel() {
+        addRandomTransactions(5_000, new Random(42));
+
+        DebtSimplifier.Session parallel = debtSimplifier.newSession(EUR, participants);
+        parallel.addDebts(event, true);
+        session.addDebts(event, false);
+
+        assertEquals(session.toBalances(), parallel.toBalances());
+        assertEquals(session.simplify(), parallel.simplify());
+        assertEquals(session.sumOfExpenses(), parallel.sumOfExpenses());
+        assertEquals(session.shareOfExpenses(), parallel.shareOfExpenses());
+
+        // the extra cents were handed out in the same order
+        Transaction next = Transaction.createDebt(participants.get(0), "expense",
+                new Money(new BigDecimal("0.10"), EUR), new ArrayList<>(participants), event, today, null);
+        session.addDebt(next);
+        parallel.addDebt(next);
+        assertEquals(session.toBalances(), parallel.toBalances());
+    }
+
+    @Test
+    void addDebtsInParallelInvalid() {
+        addRandomTransactions(3_000, new Random(7));
+        Transaction invalid = Transaction.createDebt(participants.get(0), "expense",
+                new Money(new BigDecimal("0.01"), EUR), new ArrayList<>(participants.subList(0, 3)), event, today, null);
+        invalid.setTransactionId(1_500L);
+        event.addTransaction(invalid);
+        event.getTransactions().removeIf(t -> t != invalid && t.getTransactionId() == 1_500L);
+
+        Set<ParticipantValuePair> before = session.toBalances();
+        assertThrows(IllegalArgumentException.class, () -> session.addDebts(event, true));
+        assertEquals(before, session.toBalances());
+    }
+
+    @Test
+    void concurrentSessionsAreDeterministic() throws Exception {
+        addRandomTransactions(200, new Random(42));
+
+        Set<Debt> expectedDebts = debtSimplifier.simplify(event, EUR);
+        Set<ParticipantValuePair> expectedBalances = debtSimplifier.toBalances(event, EUR);
+        assertFalse(expectedDebts.isEmpty());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            CountDownLatch start = new CountDownLatch(1);
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return expectedDebts.equals(debtSimplifier.simplify(event, EUR))
+                            && expectedBalances.equals(debtSimplifier.toBalances(event, EUR));
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> result : results)
+                assertTrue(result.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -4,11 +4,17 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.time.LocalDate;
-import java.util.Currency;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
+import java.time.Period;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -23,8 +29,8 @@ class ExchangeRateFactoryTest {
     private final static LocalDate date = LocalDate.ofYearDay(2010, 26);
 
     @BeforeEach
-    void setup() {
-        exchangeRateFactory = new ExchangeRateFactory(new File("ERFTRates"), null);
+    void setup() throws IOException {
+        exchangeRateFactory = new ExchangeRateFactory(Files.createTempDirectory("ERFTRates").toFile(), null);
         exchangeRates = new HashSet<>();
 
         exchangeRates.add(new ExchangeRate(date, USD, USD,  1));
@@ -105,6 +111,60 @@ class ExchangeRateFactoryTest {
         assertNull(exchangeRateFactory.getMostRecent(EUR, JPY));
     }
 
+    @Test
+    void getClosest() {
+        ExchangeRate older = new ExchangeRate(date.minusDays(5), EUR, USD, 1.2);
+        ExchangeRate newer = new ExchangeRate(date.plusDays(5), EUR, USD, 1.0);
+        exchangeRateFactory.addExchangeRate(older);
+        exchangeRateFactory.addExchangeRate(newer);
+
+        assertEquals(exchangeRate1, exchangeRateFactory.getClosest(date, EUR, USD));
+        assertEquals(exchangeRate1, exchangeRateFactory.getClosest(date.plusDays(2), EUR, USD));
+        assertEquals(older, exchangeRateFactory.getClosest(date.minusDays(1), EUR, USD));
+        assertEquals(older, exchangeRateFactory.getClosest(date.minusDays(10), EUR, USD));
+        assertEquals(newer, exchangeRateFactory.getClosest(date.plusDays(10), EUR, USD));
+        assertNull(exchangeRateFactory.getClosest(date, EUR, JPY));
+    }
+
+    @Test
+    void getClosestAcrossYears() {
+        ExchangeRate newer = new ExchangeRate(LocalDate.of(2011, 1, 3), EUR, JPY, 160);
+        exchangeRateFactory.addExchangeRate(newer);
+        assertEquals(newer, exchangeRateFactory.getClosest(LocalDate.of(2009, 6, 1), EUR, JPY));
+
+        ExchangeRate older = new ExchangeRate(LocalDate.of(2009, 12, 30), EUR, JPY, 130);
+        exchangeRateFactory.addExchangeRate(older);
+        assertEquals(older, exchangeRateFactory.getClosest(LocalDate.of(2009, 6, 1), EUR, JPY));
+        assertEquals(older, exchangeRateFactory.getClosest(LocalDate.of(2010, 12, 31), EUR, JPY));
+        assertEquals(newer, exchangeRateFactory.getClosest(LocalDate.of(2012, 6, 1), EUR, JPY));
+        assertEquals(newer, exchangeRateFactory.getMostRecent(EUR, JPY));
+        assertEquals(Set.of(older, newer), exchangeRateFactory.getExchangeRates(EUR, JPY));
+        assertTrue(exchangeRateFactory.getExchangeRates().containsAll(List.of(older, newer)));
+    }
+
+    @Test
+    void getClosestMaxStaleness() {
+        ExchangeRate older = new ExchangeRate(date.minusDays(5), EUR, USD, 1.2);
+        exchangeRateFactory.addExchangeRate(older);
+        assertThrows(IllegalArgumentException.class, () -> exchangeRateFactory.setMaxStaleness(Period.ofDays(-1)));
+
+        exchangeRateFactory.setMaxStaleness(Period.ofDays(3));
+        assertEquals(Period.ofDays(3), exchangeRateFactory.getMaxStaleness());
+        assertEquals(exchangeRate1, exchangeRateFactory.getClosest(date.plusDays(3), EUR, USD));
+        assertNull(exchangeRateFactory.getClosest(date.plusDays(4), EUR, USD));
+        // too far before, but the later rate is close enough
+        assertEquals(exchangeRate1, exchangeRateFactory.getClosest(date.minusDays(1), EUR, USD));
+        assertEquals(older, exchangeRateFactory.getClosest(date.minusDays(8), EUR, USD));
+        assertNull(exchangeRateFactory.getClosest(date.minusDays(9), EUR, USD));
+
+        // retired currencies are still derived from their last rate
+        ExchangeRate generated = exchangeRateFactory.generate(EUR, Map.of(EUR, 1d), EUR, USD, date.plusDays(30));
+        assertEquals(exchangeRate1.getRate(), generated.getRate());
+
+        exchangeRateFactory.setMaxStaleness(null);
+        assertEquals(exchangeRate1, exchangeRateFactory.getClosest(date.plusDays(30), EUR, USD));
+    }
+
     @Test
     void generateExchangeRates() {
         HashMap<Currency, Double> rates = new HashMap<>();
@@ -113,6 +173,168 @@ class ExchangeRateFactoryTest {
         
     }
 
+    @Test
+    void crossRatesOnDemand() throws IOException {
+        File directory = Files.createTempDirectory("ERFTRates").toFile();
+        TestExchangeRateAPI api = new TestExchangeRateAPI(EUR);
+        api.setRates(date, Map.of(USD, 1.1, JPY, 160d));
+        ExchangeRateFactory factory = new ExchangeRateFactory(directory, api, true);
+
+        ExchangeRate cross = factory.getExchangeRate(date, USD, JPY);
+        assertEquals(160d / 1.1, cross.getRate());
+        assertEquals(1d, factory.getExchangeRate(date, JPY, JPY).getRate());
+        assertEquals(1 / 1.1, factory.getExchangeRate(date, USD, EUR).getRate());
+        assertNull(factory.getExchangeRate(date, USD, Currency.getInstance("GBP")));
+
+        // only the rates against the base currency are stored
+        assertEquals(3, factory.getExchangeRates().size());
+        assertEquals(3, new DailyFileExchangeRateStore(directory).read(date).size());
+        assertEquals(Set.of(EUR, USD, JPY), factory.getKnownCurrencies());
+
+        assertEquals(cross, factory.getClosest(date.plusDays(3), USD, JPY));
+        assertEquals(cross, factory.getMostRecent(USD, JPY));
+        assertTrue(api.getRequestDates().contains(date));
+    }
+
+    @Test
+    void refresh() {
+        TestExchangeRateAPI api = new TestExchangeRateAPI(EUR);
+        api.setRates(LocalDate.now(), Map.of(USD, 1.1));
+        ExchangeRateFactory factory = new ExchangeRateFactory((File) null, api, true);
+
+        factory.refresh();
+        assertEquals(Set.of(EUR, USD), factory.getKnownCurrencies());
+
+        // already loaded rates are requested again
+        api.setRates(LocalDate.now(), Map.of(USD, 1.2, JPY, 160d));
+        factory.refresh();
+        assertEquals(Set.of(EUR, USD, JPY), factory.getKnownCurrencies());
+        assertEquals(1.2, factory.getExchangeRate(LocalDate.now(), EUR, USD).getRate());
+        assertEquals(2, api.getRequests());
+    }
+
+    @Test
+    void knownCurrenciesWithoutRates() {
+        TestExchangeRateAPI api = new TestExchangeRateAPI(EUR);
+        ExchangeRateFactory factory = new ExchangeRateFactory((File) null, api, true);
+
+        // the failed attempt isn't repeated right away
+        assertEquals(Set.of(), factory.getKnownCurrencies());
+        assertEquals(Set.of(), factory.getKnownCurrencies());
+        assertEquals(1, api.getRequests());
+
+        factory = new ExchangeRateFactory((File) null, api, true);
+        api.setRates(LocalDate.now(), Map.of(USD, 1.1));
+        assertEquals(Set.of(EUR, USD), factory.getKnownCurrencies());
+        assertEquals(Set.of(EUR, USD), factory.getKnownCurrencies());
+        assertEquals(2, api.getRequests());
+    }
+
+    @Test
+    void retrieveExchangeRatesRange() throws IOException {
+        LocalDate friday = LocalDate.of(2024, 1, 5);
+        LocalDate monday = LocalDate.of(2024, 1, 8);
+        try (TestFrankfurterServer server = new TestFrankfurterServer()) {
+            server.respond("2023-12-29..2024-01-08", """
+                    {"amount":1.0,"base":"EUR","start_date":"2024-01-02","end_date":"2024-01-08",
+                     "rates":{"2024-01-05":{"USD":1.0921},"2024-01-08":{"USD":1.0946}}}""");
+            ExchangeRateFactory factory = new ExchangeRateFactory((File) null,
+                    new FrankfurterExchangeRateAPI(null, server.getUrl()), true);
+            factory.addExchangeRate(new ExchangeRate(friday.minusDays(1), EUR, USD, 1.09));
+
+            assertEquals(4, factory.retrieveExchangeRates(friday.minusDays(1), monday));
+            assertEquals(1, server.getRequests().size());
+
+            // the weekend gets friday's rates
+            assertEquals(1.09, factory.getExchangeRate(friday.minusDays(1), EUR, USD).getRate());
+            assertEquals(1.0921, factory.getExchangeRate(friday, EUR, USD).getRate());
+            assertEquals(1.0921, factory.getExchangeRate(friday.plusDays(2), EUR, USD).getRate());
+            assertEquals(1.0946, factory.getExchangeRate(monday, EUR, USD).getRate());
+
+            // everything is loaded now
+            assertEquals(0, factory.retrieveExchangeRates(friday.minusDays(1), monday));
+            assertEquals(1, server.getRequests().size());
+        }
+    }
+
+    @Test
+    void retrieveExchangeRatesLeavesUnpublishedDays() {
+        TestExchangeRateAPI api = new TestExchangeRateAPI(EUR);
+        LocalDate published = LocalDate.of(2020, 3, 2);
+        api.setRates(published, Map.of(USD, 1.1));
+        ExchangeRateFactory factory = new ExchangeRateFactory((File) null, api, false);
+
+        LocalDate lastFilled = published.plusDays(ExchangeRateFactory.MAX_DAYS_WITHOUT_RATES);
+        assertEquals(ExchangeRateFactory.MAX_DAYS_WITHOUT_RATES + 1,
+                factory.retrieveExchangeRates(published, lastFilled.plusDays(3)));
+        assertEquals(1.1, factory.getExchangeRate(lastFilled, EUR, USD).getRate());
+        // too far from the last published day to take its rates
+        assertFalse(factory.hasExchangeRate(new ExchangeRate(lastFilled.plusDays(1), EUR, USD, 1.1)));
+    }
+
+    @Test
+    void retrieveExchangeRatesSplitsGaps() {
+        TestExchangeRateAPI api = new TestExchangeRateAPI(EUR);
+        LocalDate first = LocalDate.of(2020, 3, 2);
+        LocalDate second = first.plusDays(ExchangeRateFactory.MAX_RANGE_GAP);
+        LocalDate third = LocalDate.of(2023, 3, 1);
+        for (LocalDate day : List.of(first, second, third))
+            api.setRates(day, Map.of(USD, 1.1));
+        ExchangeRateFactory factory = new ExchangeRateFactory((File) null, api, false);
+
+        assertEquals(3, factory.retrieveExchangeRates(List.of(third, second, first)));
+        assertEquals(2, api.getRequests());
+        // the days between the runs aren't requested
+        assertFalse(api.getRequestDates().contains(second.plusDays(1)));
+        assertFalse(api.getRequestDates().contains(third.minusDays(ExchangeRateFactory.MAX_DAYS_WITHOUT_RATES + 1)));
+        assertEquals(2 * ExchangeRateFactory.MAX_DAYS_WITHOUT_RATES + ExchangeRateFactory.MAX_RANGE_GAP + 2,
+                api.getRequestDates().size());
+    }
+
+    @Test
+    void retrieveExchangeRatesBoundsRanges() {
+        TestExchangeRateAPI api = new TestExchangeRateAPI(EUR);
+        ExchangeRateFactory factory = new ExchangeRateFactory((File) null, api, false);
+        LocalDate start = LocalDate.of(2020, 1, 1);
+
+        factory.retrieveExchangeRates(start, start.plusDays(2 * ExchangeRateFactory.MAX_RANGE_DAYS));
+        assertEquals(3, api.getRequests());
+    }
+
+    @Test
+    void retrieveExchangeRatesSharesFetches() throws Exception {
+        TestExchangeRateAPI api = new TestExchangeRateAPI(EUR);
+        for (int i = 0; i < 3; i++)
+            api.setRates(date.plusDays(i), Map.of(USD, 1.1));
+        CountDownLatch latch = new CountDownLatch(1);
+        api.setLatch(latch);
+        ExchangeRateFactory factory = new ExchangeRateFactory((File) null, api, false);
+
+        List<LocalDate> dates = List.of(date, date.plusDays(1), date.plusDays(2));
+        List<CompletableFuture<Integer>> retrievals = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            retrievals.add(CompletableFuture.supplyAsync(() -> factory.retrieveExchangeRates(dates)));
+
+        // give the other retrievals time to pile up behind the first one
+        while (api.getRequests() == 0)
+            Thread.sleep(1);
+        Thread.sleep(50);
+        latch.countDown();
+
+        int added = 0;
+        for (CompletableFuture<Integer> retrieval : retrievals)
+            added += retrieval.get();
+        assertEquals(3, added);
+        assertEquals(1, api.getRequests());
+        for (LocalDate day : dates)
+            assertEquals(1.1, factory.getExchangeRate(day, EUR, USD).getRate());
+    }
+
+    @Test
+    void crossRatesOnDemandWithoutApi() {
+        assertThrows(NullPointerException.class, () -> new ExchangeRateFactory((File) null, null, true));
+    }
+
     @Test
     void hasExchangeRate() {
         assertTrue(exchangeRateFactory.hasExchangeRate(exchangeRate1));
@@ -120,8 +342,200 @@ class ExchangeRateFactoryTest {
     }
 
     @Test
-    void generateFileName() {
-        assertEquals("2010-01-26.EUR.USD.txt", ExchangeRateFactory.generateFileName(date, EUR, USD));
-        assertEquals("2010-01-26.EUR.USD.txt", ExchangeRateFactory.generateFileName(exchangeRate1));
+    void loadAll() throws IOException {
+        File directory = Files.createTempDirectory("ERFTRates").toFile();
+        ExchangeRateFactory factory = new ExchangeRateFactory(directory, null);
+        for (ExchangeRate exchangeRate : exchangeRates)
+            factory.addExchangeRate(exchangeRate);
+        factory.write(date);
+
+        ExchangeRateFactory loaded = new ExchangeRateFactory(directory, null);
+        loaded.loadAll();
+        assertEquals(exchangeRates, loaded.getExchangeRates());
+        assertEquals(1.1, loaded.getExchangeRate(date, EUR, USD).getRate());
+    }
+
+    @Test
+    void loadInBackground() throws Exception {
+        List<LocalDate> reads = Collections.synchronizedList(new ArrayList<>());
+        ExchangeRateFactory factory = new ExchangeRateFactory(
+                new DayStore(reads, false), null, false);
+
+        assertFalse(factory.isReady());
+        factory.loadInBackground().get();
+
+        assertTrue(factory.isReady());
+        assertEquals(List.of(date.plusDays(1), date), reads);
+        assertEquals(1.1, factory.getExchangeRate(date, EUR, USD).getRate());
+        assertEquals(Set.of(EUR, USD), factory.getKnownCurrencies());
+    }
+
+    @Test
+    void loadInBackgroundFailure() {
+        List<LocalDate> reads = Collections.synchronizedList(new ArrayList<>());
+        ExchangeRateFactory factory = new ExchangeRateFactory(
+                new DayStore(reads, true), null, false);
+
+        CompletableFuture<Void> loading = factory.loadInBackground();
+        assertThrows(ExecutionException.class, loading::get);
+        assertFalse(factory.isReady());
+
+        // the day is still loaded when it is requested
+        assertEquals(1.1, factory.getExchangeRate(date, EUR, USD).getRate());
+        assertEquals(List.of(date), reads);
+    }
+
+    @Test
+    void retrieveExchangeRatesReadsStoreInBatches() {
+        List<LocalDate> reads = Collections.synchronizedList(new ArrayList<>());
+        DayStore store = new DayStore(reads, false);
+        TestExchangeRateAPI api = new TestExchangeRateAPI(EUR);
+        ExchangeRateFactory factory = new ExchangeRateFactory(store, api, false);
+
+        assertEquals(0, factory.retrieveExchangeRates(date, date.plusDays(2)));
+        assertEquals(List.of(List.of(date, date.plusDays(1), date.plusDays(2))), store.batches);
+        assertEquals(1.1, factory.getExchangeRate(date.plusDays(1), EUR, USD).getRate());
+        // only the day that isn't stored is requested
+        assertEquals(1, api.getRequests());
+        assertTrue(api.getRequestDates().contains(date.plusDays(2)));
+    }
+
+    @Test
+    void concurrentLookups() throws Exception {
+        ExchangeRateFactory factory = new ExchangeRateFactory((File) null, null);
+        factory.addExchangeRates(exchangeRates);
+
+        int days = 500;
+        AtomicBoolean done = new AtomicBoolean();
+        Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(new Thread(() -> {
+                Random random = new Random();
+                try {
+                    while (!done.get()) {
+                        assertEquals(1.1, factory.getExchangeRate(date, EUR, USD).getRate());
+                        assertNotNull(factory.getClosest(date.plusDays(random.nextInt(days)), EUR, USD));
+
+                        // a day is visible completely or not at all
+                        int size = factory.getExchangeRates(date.plusDays(1 + random.nextInt(days))).size();
+                        assertTrue(size == 0 || size == 9, "torn day of size " + size);
+                    }
+                } catch (Throwable t) {
+                    errors.add(t);
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+
+        try {
+            for (int day = 1; day <= days; day++) {
+                HashMap<Currency, Double> rates = new HashMap<>();
+                rates.put(USD, 1.1);
+                rates.put(JPY, 150.0 + day);
+                factory.generateExchangeRates(EUR, rates, date.plusDays(day));
+            }
+        } finally {
+            done.set(true);
+            for (Thread reader : readers)
+                reader.join();
+        }
+
+        assertTrue(errors.isEmpty(), () -> "lookup failed: " + errors.peek());
+        assertEquals(9 * days + exchangeRates.size(), factory.getExchangeRates().size());
+    }
+
+    @Test
+    void singleFetchPerDate() throws Exception {
+        TestExchangeRateAPI api = new TestExchangeRateAPI(EUR);
+        api.setRates(date, Map.of(USD, 1.1));
+        CountDownLatch latch = new CountDownLatch(1);
+        api.setLatch(latch);
+
+        AtomicInteger writes = new AtomicInteger();
+        ExchangeRateFactory factory = new ExchangeRateFactory(new ExchangeRateStore() {
+            @Override
+            public NavigableSet<LocalDate> getDates() {
+                return new TreeSet<>();
+            }
+
+            @Override
+            public Collection<ExchangeRate> read(LocalDate day) {
+                return List.of();
+            }
+
+            @Override
+            public void write(LocalDate day, Collection<ExchangeRate> exchangeRates) {
+                writes.incrementAndGet();
+            }
+        }, api, false);
+
+        List<CompletableFuture<ExchangeRate>> lookups = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            lookups.add(CompletableFuture.supplyAsync(() -> factory.getExchangeRate(date, EUR, USD)));
+
+        // give the other lookups time to pile up behind the first one
+        while (api.getRequests() == 0)
+            Thread.sleep(1);
+        Thread.sleep(50);
+        latch.countDown();
+
+        for (CompletableFuture<ExchangeRate> lookup : lookups)
+            assertEquals(1.1, lookup.get().getRate());
+        assertEquals(1, api.getRequests());
+        assertEquals(1, writes.get());
+    }
+
+    /**
+     * Store holding the rates between EUR and USD on {@code date} and the day
+     * after, recording the order in which the days are read and the batches
+     * they are read in.
+     */
+    private static class DayStore implements ExchangeRateStore {
+
+        private final List<LocalDate> reads;
+        private final List<List<LocalDate>> batches =
+                Collections.synchronizedList(new ArrayList<>());
+        private final boolean failListing;
+
+        DayStore(List<LocalDate> reads, boolean failListing) {
+            this.reads = reads;
+            this.failListing = failListing;
+        }
+
+        @Override
+        public NavigableSet<LocalDate> getDates() throws IOException {
+            if (failListing)
+                throw new IOException("test");
+            return new TreeSet<>(List.of(date, date.plusDays(1)));
+        }
+
+        @Override
+        public Collection<ExchangeRate> read(Collection<LocalDate> days)
+                throws IOException {
+            batches.add(List.copyOf(days));
+            return ExchangeRateStore.super.read(days);
+        }
+
+        @Override
+        public Set<Currency> getCurrencies() {
+            return Set.of(EUR, USD);
+        }
+
+        @Override
+        public Collection<ExchangeRate> read(LocalDate day) {
+            reads.add(day);
+            if (day.isAfter(date.plusDays(1)))
+                return List.of();
+            return List.of(new ExchangeRate(day, EUR, USD, 1.1),
+                    new ExchangeRate(day, USD, EUR, 1 / 1.1));
+        }
+
+        @Override
+        public void write(LocalDate day,
+                          Collection<ExchangeRate> exchangeRates) {
+            throw new UnsupportedOperationException();
+        }
     }
-}
\ No newline at end of file
+}
@@ -2,9 +2,12 @@ package server.financial;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.time.LocalDate;
-import java.util.Currency;
-import java.util.HashSet;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -22,4 +25,97 @@ class FrankfurterExchangeRateAPITest {
         assertNotNull(api.getRequestDates());
         assertEquals(new HashSet<LocalDate>(), api.getRequestDates());
     }
-}
\ No newline at end of file
+
+    @Test
+    void getExchangeRatesOnDate() throws IOException {
+        try (TestFrankfurterServer server = new TestFrankfurterServer()) {
+            server.respond("2024-01-05", """
+                    {"amount":1.0,"base":"EUR","date":"2024-01-05",
+                     "rates":{"USD":1.0921,"JPY":158.2}}""");
+            ExchangeRateAPI api = new FrankfurterExchangeRateAPI(null, server.getUrl());
+
+            Map<Currency, Double> rates = api.getExchangeRates(LocalDate.of(2024, 1, 5)).orElseThrow();
+            assertEquals(Map.of(Currency.getInstance("USD"), 1.0921, Currency.getInstance("JPY"), 158.2), rates);
+            assertEquals(List.of("/2024-01-05?from=EUR"), server.getRequests());
+
+            assertTrue(api.getExchangeRates(LocalDate.of(2024, 1, 6)).isEmpty());
+        }
+    }
+
+    @Test
+    void getExchangeRatesRange() throws IOException {
+        try (TestFrankfurterServer server = new TestFrankfurterServer()) {
+            server.respond("2024-01-05..2024-01-08", """
+                    {"amount":1.0,"base":"EUR","start_date":"2024-01-05","end_date":"2024-01-08",
+                     "rates":{"2024-01-05":{"USD":1.0921,"ABC":1.0},"2024-01-08":{"USD":1.0946}}}""");
+            ExchangeRateAPI api = new FrankfurterExchangeRateAPI(null, server.getUrl());
+
+            NavigableMap<LocalDate, Map<Currency, Double>> rates =
+                    api.getExchangeRates(LocalDate.of(2024, 1, 5), LocalDate.of(2024, 1, 8)).orElseThrow();
+            assertEquals(List.of(LocalDate.of(2024, 1, 5), LocalDate.of(2024, 1, 8)), List.copyOf(rates.keySet()));
+            assertEquals(Map.of(Currency.getInstance("USD"), 1.0921), rates.get(LocalDate.of(2024, 1, 5)));
+            assertEquals(1, server.getRequests().size());
+            assertEquals(4, api.getRequestDates().size());
+
+            server.respond("2024-01-05..2024-01-08", "{\"rates\":[1.0921]}");
+            assertTrue(api.getExchangeRates(LocalDate.of(2024, 1, 5), LocalDate.of(2024, 1, 8)).isEmpty());
+        }
+    }
+
+    @Test
+    void getExchangeRatesUnavailable() throws IOException {
+        String url;
+        try (TestFrankfurterServer server = new TestFrankfurterServer()) {
+            server.fail("2024-01-05", 503);
+            server.fail("2024-01-06", 429);
+            server.fail("2024-01-07", 400);
+            url = server.getUrl();
+            ExchangeRateAPI api = new FrankfurterExchangeRateAPI(null, url);
+
+            assertThrows(ExchangeRateAPI.UnavailableException.class,
+                    () -> api.getExchangeRates(LocalDate.of(2024, 1, 5)));
+            assertThrows(ExchangeRateAPI.UnavailableException.class,
+                    () -> api.getExchangeRates(LocalDate.of(2024, 1, 6)));
+            assertTrue(api.getExchangeRates(LocalDate.of(2024, 1, 7)).isEmpty());
+        }
+
+        // nothing listens anymore
+        ExchangeRateAPI api = new FrankfurterExchangeRateAPI(null, url, HttpClient.newHttpClient());
+        assertThrows(ExchangeRateAPI.UnavailableException.class,
+                () -> api.getExchangeRates(LocalDate.of(2024, 1, 5)));
+    }
+
+    @Test
+    void getExchangeRatesStalled() throws IOException {
+        try (TestFrankfurterServer server = new TestFrankfurterServer()) {
+            server.respond("2024-01-05", """
+                    {"amount":1.0,"base":"EUR","date":"2024-01-05","rates":{"USD":1.0921}}""");
+            server.stall("2024-01-05");
+            ExchangeRateAPI api = new FrankfurterExchangeRateAPI(null, server.getUrl(),
+                    HttpClient.newHttpClient(), Duration.ofMillis(200));
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertThrows(
+                    ExchangeRateAPI.UnavailableException.class,
+                    () -> api.getExchangeRates(LocalDate.of(2024, 1, 5))));
+        }
+    }
+
+    @Test
+    void getExchangeRatesAsync() throws IOException {
+        try (TestFrankfurterServer server = new TestFrankfurterServer()) {
+            server.respond("2024-01-05", """
+                    {"amount":1.0,"base":"EUR","date":"2024-01-05","rates":{"USD":1.0921}}""");
+            HttpClient client = HttpClient.newHttpClient();
+            FrankfurterExchangeRateAPI api = new FrankfurterExchangeRateAPI(null, server.getUrl(), client);
+
+            CompletableFuture<Optional<Map<Currency, Double>>> first =
+                    api.getExchangeRatesAsync(LocalDate.of(2024, 1, 5));
+            CompletableFuture<Optional<Map<Currency, Double>>> second =
+                    api.getExchangeRatesAsync(LocalDate.of(2024, 1, 6));
+            assertEquals(Map.of(Currency.getInstance("USD"), 1.0921), first.join().orElseThrow());
+            assertTrue(second.join().isEmpty());
+            assertEquals(2, server.getRequests().size());
+            assertEquals(2, api.getRequestDates().size());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package server.financial;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedExchangeRateArchiveTest {
+
+    private final static Currency EUR = Currency.getInstance("EUR");
+    private final static Currency USD = Currency.getInstance("USD");
+    private final static Currency JPY = Currency.getInstance("JPY");
+    private final static LocalDate date = LocalDate.ofYearDay(2010, 26);
+
+    private File file;
+    private MappedExchangeRateArchive archive;
+    private List<ExchangeRate> table;
+
+    @BeforeEach
+    void setup() throws IOException {
+        file = new File(Files.createTempDirectory("MERARates").toFile(), "rates.bin");
+        table = List.of(
+                new ExchangeRate(date, EUR, EUR, 1),
+                new ExchangeRate(date, EUR, USD, 1.1),
+                new ExchangeRate(date, EUR, JPY, 160));
+        writeArchive(file, EUR, List.of(EUR, USD, JPY), Map.of(
+                date, new double[] {1, 1.1, 160},
+                date.plusYears(10), new double[] {Double.NaN, 1.3, Double.NaN}));
+        archive = new MappedExchangeRateArchive(file, EUR);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        archive.close();
+    }
+
+    @Test
+    void read() {
+        assertEquals(EUR, archive.getBase());
+        assertEquals(table, archive.read(date));
+        assertEquals(List.of(new ExchangeRate(date.plusYears(10), EUR, USD, 1.3)),
+                archive.read(date.plusYears(10)));
+        assertEquals(List.of(), archive.read(date.minusDays(1)));
+        assertEquals(List.of(), archive.read(date.plusYears(20)));
+        assertEquals(List.of(), archive.read(MappedExchangeRateArchive.FIRST_DAY.minusDays(1)));
+        assertEquals(new TreeSet<>(Set.of(date, date.plusYears(10))), archive.getDates());
+        assertEquals(Set.of(EUR, USD, JPY), archive.getCurrencies());
+    }
+
+    @Test
+    void readOnly() {
+        assertThrows(UnsupportedOperationException.class, () -> archive.write(date, table));
+    }
+
+    @Test
+    void incompatible() throws IOException {
+        assertThrows(IOException.class, () -> new MappedExchangeRateArchive(file, USD));
+
+        File other = new File(file.getParentFile(), "other.bin");
+        Files.writeString(other.toPath(), "not an archive at all");
+        assertThrows(IOException.class, () -> new MappedExchangeRateArchive(other, EUR));
+
+        File missing = new File(file.getParentFile(), "missing.bin");
+        assertThrows(IOException.class, () -> new MappedExchangeRateArchive(missing, EUR));
+        assertFalse(missing.exists());
+    }
+
+    @Test
+    void importIntoDatabase() throws IOException {
+        DatabaseExchangeRateStore store = new DatabaseExchangeRateStore(new TestExchangeRateRepository());
+        store.importFrom(archive);
+
+        assertEquals(Set.copyOf(table), Set.copyOf(store.read(date)));
+        assertEquals(1.3, store.read(date.plusYears(10)).getFirst().getRate());
+    }
+
+    /**
+     * Writes an archive in the format older versions saved the rates in.
+     */
+    private static void writeArchive(File file, Currency base, List<Currency> currencies,
+                                     Map<LocalDate, double[]> rows) throws IOException {
+        int capacity = 4;
+        int rowSize = Long.BYTES + capacity * Double.BYTES;
+        int count = (int) (Collections.max(rows.keySet()).toEpochDay()
+                - MappedExchangeRateArchive.FIRST_DAY.toEpochDay()) + 1;
+
+        ByteBuffer buffer = ByteBuffer.allocate(4096 + count * rowSize);
+        buffer.putInt(0, 0x53524154);
+        buffer.putInt(4, 1);
+        buffer.putInt(8, capacity);
+        buffer.putInt(12, currencies.size());
+        buffer.putInt(16, count);
+        buffer.put(20, base.getCurrencyCode().getBytes(StandardCharsets.US_ASCII));
+        for (int i = 0; i < currencies.size(); i++)
+            buffer.put(32 + i * 3, currencies.get(i).getCurrencyCode().getBytes(StandardCharsets.US_ASCII));
+
+        for (int row = 0; row < count; row++) {
+            double[] rates = rows.get(MappedExchangeRateArchive.FIRST_DAY.plusDays(row));
+            int offset = 4096 + row * rowSize;
+            buffer.putLong(offset, rates == null ? 0 : 1);
+            for (int i = 0; i < capacity; i++)
+                buffer.putDouble(offset + Long.BYTES + i * Double.BYTES,
+                        rates == null || i >= rates.length ? Double.NaN : rates[i]);
+        }
+        Files.write(file.toPath(), buffer.array());
+    }
+}
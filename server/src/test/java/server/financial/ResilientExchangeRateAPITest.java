@@ -0,0 +1,168 @@
+package server.financial;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.time.*;
+import java.util.Currency;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResilientExchangeRateAPITest {
+
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final LocalDate date = LocalDate.of(2024, 1, 8);
+
+    private TestExchangeRateAPI delegate;
+    private TestClock clock;
+    private ResilientExchangeRateAPI api;
+
+    @BeforeEach
+    void setup() {
+        delegate = new TestExchangeRateAPI(EUR);
+        delegate.setRates(date, Map.of(USD, 1.1));
+        clock = new TestClock();
+        api = new ResilientExchangeRateAPI(delegate, clock, Duration.ofMinutes(10), 3,
+                Duration.ofSeconds(30), Duration.ofMinutes(1));
+    }
+
+    @Test
+    void constructor() {
+        assertThrows(NullPointerException.class, () -> new ResilientExchangeRateAPI(null));
+        assertThrows(IllegalArgumentException.class, () -> new ResilientExchangeRateAPI(delegate, clock,
+                Duration.ofMinutes(10), 0, Duration.ofSeconds(30), Duration.ofMinutes(1)));
+        assertThrows(IllegalArgumentException.class, () -> new ResilientExchangeRateAPI(delegate, clock,
+                Duration.ofMinutes(10), 3, Duration.ofMinutes(2), Duration.ofMinutes(1)));
+        assertEquals(EUR, api.getBase());
+    }
+
+    @Test
+    void negativeCache() {
+        assertTrue(api.getExchangeRates(date.minusDays(1)).isEmpty());
+        assertTrue(api.getExchangeRates(date.minusDays(1)).isEmpty());
+        assertEquals(1, delegate.getRequests());
+
+        // other requests are still made
+        assertEquals(Map.of(USD, 1.1), api.getExchangeRates(date).orElseThrow());
+        assertEquals(2, delegate.getRequests());
+
+        clock.advance(Duration.ofMinutes(10));
+        delegate.setRates(date.minusDays(1), Map.of(USD, 1.2));
+        assertEquals(Map.of(USD, 1.2), api.getExchangeRates(date.minusDays(1)).orElseThrow());
+        assertEquals(3, delegate.getRequests());
+    }
+
+    @Test
+    void circuitBreaker() {
+        delegate.setUnavailable(true);
+        for (int i = 1; i <= 3; i++)
+            assertTrue(api.getExchangeRates(date.minusDays(i)).isEmpty());
+        assertTrue(api.isOpen());
+
+        // not even requests that would succeed are made
+        assertTrue(api.getExchangeRates(date).isEmpty());
+        assertTrue(api.getExchangeRates(date, date).isEmpty());
+        assertEquals(3, delegate.getRequests());
+
+        clock.advance(Duration.ofSeconds(30));
+        delegate.setUnavailable(false);
+        assertEquals(Map.of(USD, 1.1), api.getExchangeRates(date).orElseThrow());
+        assertFalse(api.isOpen());
+        assertEquals(4, delegate.getRequests());
+    }
+
+    @Test
+    void missingRatesKeepCircuitClosed() {
+        for (int i = 1; i <= 5; i++)
+            assertTrue(api.getExchangeRates(date.minusDays(i)).isEmpty());
+        assertFalse(api.isOpen());
+        assertEquals(5, delegate.getRequests());
+
+        // but they are still not requested again for a while
+        assertTrue(api.getExchangeRates(date.minusDays(1)).isEmpty());
+        assertEquals(5, delegate.getRequests());
+        assertEquals(Map.of(USD, 1.1), api.getExchangeRates(date).orElseThrow());
+        assertEquals(6, delegate.getRequests());
+    }
+
+    @Test
+    void unavailableRequestsAreNotRepeated() {
+        delegate.setUnavailable(true);
+        assertTrue(api.getExchangeRates(date).isEmpty());
+        delegate.setUnavailable(false);
+        assertTrue(api.getExchangeRates(date).isEmpty());
+        assertEquals(1, delegate.getRequests());
+    }
+
+    @Test
+    void backoff() {
+        delegate.setUnavailable(true);
+        for (int i = 1; i <= 3; i++)
+            api.getExchangeRates(date.minusDays(i));
+
+        // the retry fails, so the backoff doubles
+        clock.advance(Duration.ofSeconds(30));
+        assertTrue(api.getExchangeRates(date.minusDays(4)).isEmpty());
+        assertEquals(4, delegate.getRequests());
+
+        clock.advance(Duration.ofSeconds(59));
+        assertTrue(api.getExchangeRates(date).isEmpty());
+        assertEquals(4, delegate.getRequests());
+
+        // up to the maximum
+        clock.advance(Duration.ofSeconds(1));
+        assertTrue(api.getExchangeRates(date.minusDays(5)).isEmpty());
+        clock.advance(Duration.ofMinutes(1));
+        assertTrue(api.getExchangeRates(date.minusDays(6)).isEmpty());
+        assertEquals(6, delegate.getRequests());
+
+        clock.advance(Duration.ofMinutes(1));
+        delegate.setUnavailable(false);
+        assertTrue(api.getExchangeRates(date).isPresent());
+        assertFalse(api.isOpen());
+    }
+
+    @Test
+    void degradesToClosestRate() {
+        ExchangeRateFactory factory = new ExchangeRateFactory((File) null, api, true);
+        factory.retrieveExchangeRates(date);
+        delegate.setUnavailable(true);
+        for (int i = 1; i <= 3; i++)
+            api.getExchangeRates(date.plusDays(i));
+
+        assertNull(factory.getExchangeRate(date.plusDays(7), EUR, USD));
+        assertEquals(1.1, factory.getExchangeRateOrClosest(date.plusDays(7), EUR, USD).getRate());
+        assertEquals(1 / 1.1, factory.getExchangeRateOrClosest(date.plusDays(7), USD, EUR).getRate());
+        assertEquals(4, delegate.getRequests());
+    }
+
+    /**
+     * Clock that only moves when it is told to.
+     */
+    private static class TestClock extends Clock {
+
+        private Instant instant = Instant.parse("2024-01-08T12:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
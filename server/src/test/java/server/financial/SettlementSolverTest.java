@@ -0,0 +1,76 @@
+package server.financial;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SettlementSolverTest {
+
+    private static final long NO_DEADLINE = System.nanoTime() + 60_000_000_000L;
+
+    private static int groups(int[] partition) {
+        return Arrays.stream(partition).max().orElse(-1) + 1;
+    }
+
+    private static void assertZeroSum(long[] balances, int[] partition) {
+        long[] sums = new long[groups(partition)];
+        for (int i = 0; i < balances.length; i++)
+            sums[partition[i]] += balances[i];
+        for (long sum : sums)
+            assertEquals(0, sum);
+    }
+
+    @Test
+    void empty() {
+        assertArrayEquals(new int[0], SettlementSolver.partition(new long[0], NO_DEADLINE));
+        assertThrows(NullPointerException.class, () -> SettlementSolver.partition(null, NO_DEADLINE));
+    }
+
+    @Test
+    void notZeroSum() {
+        assertThrows(IllegalArgumentException.class,
+                () -> SettlementSolver.partition(new long[] {1, -2}, NO_DEADLINE));
+    }
+
+    @Test
+    void singleGroup() {
+        assertArrayEquals(new int[] {0, 0, 0}, SettlementSolver.partition(new long[] {1, 1, -2}, NO_DEADLINE));
+    }
+
+    @Test
+    void mostGroups() {
+        long[] balances = {500, 600, -200, -400, -500};
+        int[] partition = SettlementSolver.partition(balances, NO_DEADLINE);
+        assertEquals(2, groups(partition));
+        assertZeroSum(balances, partition);
+        assertEquals(partition[0], partition[4]);
+        assertEquals(partition[1], partition[2]);
+        assertEquals(partition[1], partition[3]);
+
+        balances = new long[] {3, -3, 7, -7, 1, 2, -3, 0};
+        partition = SettlementSolver.partition(balances, NO_DEADLINE);
+        assertEquals(4, groups(partition));
+        assertZeroSum(balances, partition);
+    }
+
+    @Test
+    void largest() {
+        long[] balances = new long[SettlementSolver.MAX_BALANCES];
+        for (int i = 0; i < balances.length; i += 2) {
+            balances[i] = i + 1;
+            balances[i + 1] = -(i + 1);
+        }
+        int[] partition = SettlementSolver.partition(balances, NO_DEADLINE);
+        assertEquals(balances.length / 2, groups(partition));
+        assertZeroSum(balances, partition);
+    }
+
+    @Test
+    void givesUp() {
+        assertNull(SettlementSolver.partition(new long[SettlementSolver.MAX_BALANCES + 1], NO_DEADLINE));
+        assertNull(SettlementSolver.partition(new long[16], System.nanoTime() - 1));
+        assertNull(SettlementSolver.partition(new long[] {Long.MAX_VALUE, Long.MAX_VALUE, 2}, NO_DEADLINE));
+    }
+}
@@ -0,0 +1,137 @@
+package server.financial;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ExchangeRateAPI} that serves fixed rates from memory and counts the
+ * requests made to it. Can be called from multiple threads.
+ */
+public class TestExchangeRateAPI implements ExchangeRateAPI {
+
+    private final Currency base;
+    private final Map<LocalDate, Map<Currency, Double>> rates =
+            new ConcurrentHashMap<>();
+    private final Set<LocalDate> requestedDates = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile CountDownLatch latch;
+    private volatile boolean unavailable;
+
+    /**
+     * Creates a new {@code TestExchangeRateAPI}.
+     *
+     * @param   base
+     *          The base currency of the rates.
+     */
+    public TestExchangeRateAPI(Currency base) {
+        this.base = base;
+    }
+
+    /**
+     * Sets the rates that are served for a specific date.
+     *
+     * @param   date
+     *          The date.
+     * @param   rates
+     *          The rates relative to the base currency.
+     */
+    public void setRates(LocalDate date, Map<Currency, Double> rates) {
+        this.rates.put(date, new HashMap<>(rates));
+    }
+
+    /**
+     * Makes requests wait until {@code latch} is counted down.
+     *
+     * @param   latch
+     *          The latch to wait for, {@code null} to not wait.
+     */
+    public void setLatch(CountDownLatch latch) {
+        this.latch = latch;
+    }
+
+    /**
+     * Makes requests fail as if the api couldn't be reached. They are still
+     * counted.
+     *
+     * @param   unavailable
+     *          Whether the api is unavailable.
+     */
+    public void setUnavailable(boolean unavailable) {
+        this.unavailable = unavailable;
+    }
+
+    /**
+     * @return  The amount of requests made to this api.
+     */
+    public int getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public Currency getBase() {
+        return base;
+    }
+
+    @Override
+    public Optional<Map<Currency, Double>> getExchangeRates() {
+        return getExchangeRates(LocalDate.now());
+    }
+
+    @Override
+    public Optional<Map<Currency, Double>> getExchangeRates(LocalDate date) {
+        requests.incrementAndGet();
+        requestedDates.add(date);
+        await();
+        checkAvailable();
+
+        Map<Currency, Double> result = rates.get(date);
+        return result == null ? Optional.empty()
+                : Optional.of(new HashMap<>(result));
+    }
+
+    private void checkAvailable() {
+        if (unavailable)
+            throw new UnavailableException("The api is unavailable", null);
+    }
+
+    private void await() {
+        CountDownLatch current = latch;
+        if (current != null) {
+            try {
+                current.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Serves the rates of all days in the range that have rates, counting it
+     * as a single request.
+     */
+    @Override
+    public Optional<NavigableMap<LocalDate, Map<Currency, Double>>>
+            getExchangeRates(LocalDate start, LocalDate end) {
+        requests.incrementAndGet();
+
+        NavigableMap<LocalDate, Map<Currency, Double>> result = new TreeMap<>();
+        for (LocalDate date = start; !date.isAfter(end);
+             date = date.plusDays(1)) {
+            requestedDates.add(date);
+            Map<Currency, Double> day = rates.get(date);
+            if (day != null)
+                result.put(date, new HashMap<>(day));
+        }
+        await();
+        checkAvailable();
+        return Optional.of(result);
+    }
+
+    @Override
+    public Set<LocalDate> getRequestDates() {
+        return requestedDates;
+    }
+}
@@ -0,0 +1,238 @@
+package server.financial;
+
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.query.FluentQuery;
+import server.database.ExchangeRateRepository;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * In-memory {@link ExchangeRateRepository} that implements the methods used by
+ * {@link DatabaseExchangeRateStore} and counts the queries made.
+ */
+class TestExchangeRateRepository implements ExchangeRateRepository {
+
+    private final Map<StoredExchangeRate.Key, StoredExchangeRate> rows =
+            new LinkedHashMap<>();
+    private int queries;
+
+    int getQueries() {
+        return queries;
+    }
+
+    @Override
+    public List<LocalDate> findDates() {
+        queries++;
+        return rows.values().stream().map(StoredExchangeRate::getDate)
+                .distinct().sorted().toList();
+    }
+
+    @Override
+    public List<String> findFromCurrencies() {
+        queries++;
+        return rows.values().stream()
+                .map(r -> r.toExchangeRate().getFrom().getCurrencyCode())
+                .distinct().toList();
+    }
+
+    @Override
+    public List<String> findToCurrencies() {
+        queries++;
+        return rows.values().stream()
+                .map(r -> r.toExchangeRate().getTo().getCurrencyCode())
+                .distinct().toList();
+    }
+
+    @Override
+    public List<StoredExchangeRate> findByDate(LocalDate date) {
+        return findByDateIn(List.of(date));
+    }
+
+    @Override
+    public List<StoredExchangeRate> findByDateIn(Collection<LocalDate> dates) {
+        queries++;
+        return rows.values().stream().filter(r -> dates.contains(r.getDate()))
+                .toList();
+    }
+
+    @Override
+    public int deleteByDate(LocalDate date) {
+        queries++;
+        int size = rows.size();
+        rows.values().removeIf(r -> r.getDate().equals(date));
+        return size - rows.size();
+    }
+
+    @Override
+    public <S extends StoredExchangeRate> S save(S entity) {
+        if (entity.isNew() && rows.containsKey(entity.getId()))
+            throw new IllegalStateException("duplicate key " + entity.getId());
+        rows.put(entity.getId(), entity);
+        entity.markNotNew();
+        return entity;
+    }
+
+    @Override
+    public <S extends StoredExchangeRate> List<S> saveAll(
+            Iterable<S> entities) {
+        queries++;
+        List<S> result = new ArrayList<>();
+        for (S entity : entities)
+            result.add(save(entity));
+        return result;
+    }
+
+    @Override
+    public long count() {
+        queries++;
+        return rows.size();
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public <S extends StoredExchangeRate> S saveAndFlush(S entity) {
+        return save(entity);
+    }
+
+    @Override
+    public <S extends StoredExchangeRate> List<S> saveAllAndFlush(
+            Iterable<S> entities) {
+        return saveAll(entities);
+    }
+
+    @Override
+    public void deleteAllInBatch(Iterable<StoredExchangeRate> entities) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteAllByIdInBatch(Iterable<StoredExchangeRate.Key> keys) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteAllInBatch() {
+        rows.clear();
+    }
+
+    @Override
+    public StoredExchangeRate getOne(StoredExchangeRate.Key key) {
+        return rows.get(key);
+    }
+
+    @Override
+    public StoredExchangeRate getById(StoredExchangeRate.Key key) {
+        return rows.get(key);
+    }
+
+    @Override
+    public StoredExchangeRate getReferenceById(StoredExchangeRate.Key key) {
+        return rows.get(key);
+    }
+
+    @Override
+    public <S extends StoredExchangeRate> Optional<S> findOne(
+            Example<S> example) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends StoredExchangeRate> List<S> findAll(Example<S> example) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends StoredExchangeRate> List<S> findAll(
+            Example<S> example, Sort sort) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends StoredExchangeRate> Page<S> findAll(
+            Example<S> example, Pageable pageable) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends StoredExchangeRate> long count(Example<S> example) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends StoredExchangeRate> boolean exists(Example<S> example) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends StoredExchangeRate, R> R findBy(
+            Example<S> example,
+            Function<FluentQuery.FetchableFluentQuery<S>, R> queryFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<StoredExchangeRate> findAll() {
+        return new ArrayList<>(rows.values());
+    }
+
+    @Override
+    public List<StoredExchangeRate> findAllById(
+            Iterable<StoredExchangeRate.Key> keys) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteById(StoredExchangeRate.Key key) {
+        rows.remove(key);
+    }
+
+    @Override
+    public void delete(StoredExchangeRate entity) {
+        rows.remove(entity.getId());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends StoredExchangeRate.Key> keys) {
+        for (StoredExchangeRate.Key key : keys)
+            rows.remove(key);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends StoredExchangeRate> entities) {
+        for (StoredExchangeRate entity : entities)
+            rows.remove(entity.getId());
+    }
+
+    @Override
+    public void deleteAll() {
+        rows.clear();
+    }
+
+    @Override
+    public Optional<StoredExchangeRate> findById(StoredExchangeRate.Key key) {
+        return Optional.ofNullable(rows.get(key));
+    }
+
+    @Override
+    public boolean existsById(StoredExchangeRate.Key key) {
+        return rows.containsKey(key);
+    }
+
+    @Override
+    public List<StoredExchangeRate> findAll(Sort sort) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Page<StoredExchangeRate> findAll(Pageable pageable) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,134 @@
+package server.financial;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP server that stands in for the Frankfurter api. Serves fixed JSON
+ * responses by path and records the requests made to it.
+ */
+public class TestFrankfurterServer implements Closeable {
+
+    private final HttpServer server;
+    private final Map<String, String> responses = new ConcurrentHashMap<>();
+    private final Map<String, Integer> errors = new ConcurrentHashMap<>();
+    private final Set<String> stalls = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<String> requests =
+            Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Creates and starts a new {@code TestFrankfurterServer} on a free port.
+     *
+     * @throws  IOException
+     *          If the server couldn't be started.
+     */
+    public TestFrankfurterServer() throws IOException {
+        server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        // a stalled response mustn't block the others
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return  The url of the server, ending with a slash.
+     */
+    public String getUrl() {
+        return "http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Sets the response for a path. Requests to other paths get a 404.
+     *
+     * @param   path
+     *          The path without the leading slash and the query.
+     * @param   json
+     *          The response body.
+     */
+    public void respond(String path, String json) {
+        responses.put("/" + path, json);
+    }
+
+    /**
+     * Makes requests to a path fail with an error status.
+     *
+     * @param   path
+     *          The path without the leading slash and the query.
+     * @param   status
+     *          The status of the response.
+     */
+    public void fail(String path, int status) {
+        errors.put("/" + path, status);
+    }
+
+    /**
+     * Makes the server stop sending the response to a path halfway through
+     * its body, until the server is closed.
+     *
+     * @param   path
+     *          The path without the leading slash and the query.
+     */
+    public void stall(String path) {
+        stalls.add("/" + path);
+    }
+
+    /**
+     * @return  The paths and queries of all requests made so far.
+     */
+    public List<String> getRequests() {
+        return List.copyOf(requests);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.add(exchange.getRequestURI().toString());
+
+        String path = exchange.getRequestURI().getPath();
+        String json = responses.get(path);
+        byte[] body = json == null ? new byte[0]
+                : json.getBytes(StandardCharsets.UTF_8);
+        int status = errors.getOrDefault(path, json == null ? 404 : 200);
+
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status,
+                body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (stalls.contains(path)) {
+                out.write(body, 0, body.length / 2);
+                out.flush();
+                awaitClose();
+            }
+            out.write(body);
+        }
+    }
+
+    private void awaitClose() {
+        try {
+            closed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}